@@ -0,0 +1,223 @@
+package diskanalyzer;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 扫描代理 (ScanAgent) 的客户端。
+ * <p>
+ * 请求可以在任意线程发出，返回 CompletableFuture；一个后台线程读取所有回复，按请求号完成对应的 future，
+ * 进度事件交给订阅时传入的回调。回调和 future 都在读取线程上完成，界面代码需要自行切回 FX 线程。
+ * 回调抛出的异常只记录，不影响读取线程；单个回复解码失败只让对应的 future 失败。
+ */
+public class AgentClient implements Closeable {
+
+    /** 代理端的扫描进度；dirs 含根目录 */
+    public record Progress(byte state, long files, long dirs, long bytes, long elapsedMillis, String current) {
+        public boolean done() {
+            return state == AgentProtocol.STATE_DONE;
+        }
+
+        public boolean failed() {
+            return state == AgentProtocol.STATE_FAILED;
+        }
+    }
+
+    /** root 只在扫描完成后才有：只含根节点自身的汇总，子节点通过 children() 按需读取 */
+    public record Status(Progress progress, String rootPath, FileNode root) { }
+
+    private interface Reader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private record Pending<T>(Reader<T> reader, CompletableFuture<T> future) {
+        void complete(DataInputStream in) throws IOException {
+            future.complete(reader.read(in));
+        }
+    }
+
+    private final String address;
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final AtomicInteger nextRequestId = new AtomicInteger(1);
+    private final Map<Integer, Pending<?>> pending = new ConcurrentHashMap<>();
+    private final Map<Integer, Consumer<Progress>> progressListeners = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    private AgentClient(String address, SocketChannel channel) throws IOException {
+        this.address = address;
+        this.channel = channel;
+        this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    /** 连接并握手；会阻塞，应在后台线程调用 */
+    public static AgentClient connect(String address) throws IOException {
+        SocketChannel channel = SocketChannel.open(AgentProtocol.parseAddress(address));
+        AgentClient client = new AgentClient(address, channel);
+        try {
+            AgentProtocol.writeHandshake(client.out);
+            AgentProtocol.readHandshake(client.in);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        Thread reader = new Thread(client::readLoop, "agent-reader");
+        reader.setDaemon(true);
+        reader.start();
+        return client;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public CompletableFuture<Status> status() {
+        return request(AgentProtocol.OP_STATUS, body -> { }, in -> {
+            Progress progress = AgentProtocol.readProgress(in);
+            String rootPath = in.readUTF();
+            FileNode root = progress.done() ? AgentProtocol.readNode(in, null) : null;
+            return new Status(progress, rootPath, root);
+        });
+    }
+
+    /**
+     * 读取目录 path 的前 topN 个子节点（其余归并为 [Other Files]）。
+     * 返回的是一个独立的目录节点，带着代理端最新的汇总统计和子节点，由调用方用 FileNode.replaceWith 并入本地的树。
+     */
+    public CompletableFuture<FileNode> children(String path, int topN) {
+        return request(AgentProtocol.OP_CHILDREN, body -> {
+            body.writeUTF(path);
+            body.writeInt(topN);
+        }, AgentProtocol::readChildren);
+    }
+
+    /** 订阅进度：代理每 250ms 推送一次，扫描结束（或失败）时推送最后一次 */
+    public CompletableFuture<Void> subscribe(Consumer<Progress> listener) {
+        int requestId = nextRequestId.getAndIncrement();
+        progressListeners.put(requestId, listener);
+        return send(AgentProtocol.OP_SUBSCRIBE, requestId, body -> { }, in -> null);
+    }
+
+    private interface Writer {
+        void write(DataOutputStream body) throws IOException;
+    }
+
+    private <T> CompletableFuture<T> request(byte op, Writer params, Reader<T> reader) {
+        return send(op, nextRequestId.getAndIncrement(), params, reader);
+    }
+
+    private <T> CompletableFuture<T> send(byte op, int requestId, Writer params, Reader<T> reader) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IOException("与扫描代理的连接已关闭"));
+            return future;
+        }
+        pending.put(requestId, new Pending<>(reader, future));
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            params.write(new DataOutputStream(body));
+            AgentProtocol.writeFrame(out, op, requestId, body);
+        } catch (IOException e) {
+            pending.remove(requestId);
+            future.completeExceptionally(e);
+        }
+        if (closed) failAll(new IOException("与扫描代理的连接已关闭"));
+        return future;
+    }
+
+    private void readLoop() {
+        IOException failure;
+        try {
+            while (true) {
+                byte kind = in.readByte();
+                int requestId = in.readInt();
+                DataInputStream body = new DataInputStream(new ByteArrayInputStream(AgentProtocol.readBody(in)));
+                switch (kind) {
+                    case AgentProtocol.KIND_PROGRESS -> {
+                        Progress progress;
+                        try {
+                            progress = AgentProtocol.readProgress(body);
+                        } catch (IOException | RuntimeException e) {
+                            e.printStackTrace();
+                            continue;
+                        }
+                        Consumer<Progress> listener = progressListeners.get(requestId);
+                        if (listener != null) notify(listener, progress);
+                        if (progress.state() != AgentProtocol.STATE_SCANNING) progressListeners.remove(requestId);
+                    }
+                    case AgentProtocol.KIND_RESPONSE -> {
+                        Pending<?> p = pending.remove(requestId);
+                        if (p == null) {
+                            System.err.println("扫描代理回复了未知的请求号: " + requestId);
+                            continue;
+                        }
+                        try {
+                            p.complete(body);
+                        } catch (IOException | RuntimeException e) {
+                            p.future().completeExceptionally(e);
+                        }
+                    }
+                    case AgentProtocol.KIND_ERROR -> {
+                        Pending<?> p = pending.remove(requestId);
+                        if (p != null) p.future().completeExceptionally(new IOException(readMessage(body)));
+                    }
+                    default -> System.err.println("无法识别的回复类型: " + kind);
+                }
+            }
+        } catch (IOException e) {
+            failure = closed ? new IOException("与扫描代理的连接已关闭") : e;
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            failure = new IOException("读取扫描代理的回复失败", e);
+        }
+        closed = true;
+        failAll(failure);
+        // 连接断开时订阅者收不到最后一次进度，补发一次失败状态，界面不会停在等待中
+        for (Consumer<Progress> listener : progressListeners.values()) {
+            notify(listener, new Progress(AgentProtocol.STATE_FAILED, 0, 0, 0, 0, ""));
+        }
+        progressListeners.clear();
+    }
+
+    // 回调来自界面代码，它抛出的异常不能带走读取线程
+    private static void notify(Consumer<Progress> listener, Progress progress) {
+        try {
+            listener.accept(progress);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String readMessage(DataInputStream body) {
+        try {
+            return body.readUTF();
+        } catch (IOException e) {
+            return "扫描代理返回了无法解析的错误";
+        }
+    }
+
+    private void failAll(IOException e) {
+        for (Integer id : pending.keySet()) {
+            Pending<?> p = pending.remove(id);
+            if (p != null) p.future().completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
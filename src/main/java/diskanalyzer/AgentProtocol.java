@@ -0,0 +1,156 @@
+package diskanalyzer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 扫描代理 (ScanAgent) 与界面 (AgentClient) 之间的二进制协议。
+ * <p>
+ * 连接建立后双方各发一次 MAGIC + VERSION。之后客户端发请求帧：op(1) + 请求号(4) + 长度(4) + 参数；
+ * 服务端回复帧：类型(1) + 请求号(4) + 长度(4) + 内容，类型为 RESPONSE / ERROR，进度事件 (PROGRESS) 的请求号为订阅请求的请求号。
+ * 每帧先整帧读入再解码：一帧解码失败只影响这一个请求，不会让后面的帧错位。
+ * 节点复用快照的节点编码 (SnapshotIO.writeHeader)，前面加上完整路径、后面加一个「是否还有子节点可取」的标记。
+ * <p>
+ * 地址格式：host:port、:port（本机回环）或 unix:/path/to/socket。
+ */
+final class AgentProtocol {
+
+    static final int MAGIC = 0x44534147; // "DSAG"
+    static final int VERSION = 2;
+    static final int DEFAULT_PORT = 7878;
+    // 单帧内容的上限，超出说明流已错位
+    static final int MAX_FRAME_BYTES = 64 << 20;
+
+    // 请求
+    static final byte OP_STATUS = 1;    // -> 状态 + 进度 + 根路径 [+ 根节点]
+    static final byte OP_CHILDREN = 2;  // 路径, topN -> 目录节点 + 子节点数 + 子节点
+    static final byte OP_SUBSCRIBE = 3; // -> 立即确认，随后周期性推送进度直到扫描结束
+
+    // 回复
+    static final byte KIND_RESPONSE = 1;
+    static final byte KIND_ERROR = 2;
+    static final byte KIND_PROGRESS = 3;
+
+    // 扫描状态
+    static final byte STATE_SCANNING = 0;
+    static final byte STATE_DONE = 1;
+    static final byte STATE_FAILED = 2;
+
+    static final long PROGRESS_INTERVAL_MILLIS = 250;
+
+    private AgentProtocol() {
+    }
+
+    static SocketAddress parseAddress(String address) {
+        String a = address.trim();
+        if (a.startsWith("unix:")) return UnixDomainSocketAddress.of(Path.of(a.substring(5)));
+        int colon = a.lastIndexOf(':');
+        String host = colon > 0 ? a.substring(0, colon) : "127.0.0.1";
+        if (host.startsWith("[") && host.endsWith("]")) host = host.substring(1, host.length() - 1);
+        int port = colon >= 0 ? Integer.parseInt(a.substring(colon + 1)) : Integer.parseInt(a);
+        return new InetSocketAddress(host, port);
+    }
+
+    static void writeHandshake(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.flush();
+    }
+
+    static void readHandshake(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("对端不是 Disk Analyzer 扫描代理");
+        int version = in.readInt();
+        if (version != VERSION) throw new IOException("扫描代理协议版本不一致: " + version);
+    }
+
+    /** 整帧写出：帧头、内容长度和内容；回复、进度推送和请求可能来自不同线程，在 out 上同步 */
+    static void writeFrame(DataOutputStream out, byte type, int requestId, ByteArrayOutputStream body) throws IOException {
+        synchronized (out) {
+            out.writeByte(type);
+            out.writeInt(requestId);
+            out.writeInt(body.size());
+            body.writeTo(out);
+            out.flush();
+        }
+    }
+
+    /** 读取帧头之后的内容长度和内容 */
+    static byte[] readBody(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME_BYTES) throw new IOException("损坏的帧长度: " + length);
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return body;
+    }
+
+    /** 进度：已扫描的文件数、目录数（含根目录）、字节数、耗时和正在扫描的目录名 */
+    static void writeProgress(DataOutputStream out, byte state, long elapsedMillis) throws IOException {
+        out.writeByte(state);
+        out.writeLong(DiskScanner.scannedFileCount.get());
+        out.writeLong(DiskScanner.scannedDirCount.get());
+        out.writeLong(DiskScanner.scannedTotalSize.get());
+        out.writeLong(elapsedMillis);
+        out.writeUTF(DiskScanner.currentScanningPath.get());
+    }
+
+    static AgentClient.Progress readProgress(DataInputStream in) throws IOException {
+        return new AgentClient.Progress(in.readByte(), in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readUTF());
+    }
+
+    // 折叠的目录（在代理端按需重新扫描）和有子节点的目录都算「还有子节点可取」
+    static void writeNode(DataOutputStream out, FileNode node) throws IOException {
+        out.writeUTF(node.path);
+        SnapshotIO.writeHeader(out, node);
+        out.writeBoolean(node.isDir && !node.isOther && (node.isCollapsed || !node.children.isEmpty()));
+    }
+
+    /**
+     * 读取一个节点。客户端只持有访问过的目录的子节点：还有子节点可取的目录标记为 isCollapsed，
+     * 报告视图进入它时再向代理请求。路径由代理给出，不依赖本机的路径分隔符。
+     */
+    static FileNode readNode(DataInputStream in, FileNode parent) throws IOException {
+        String path = in.readUTF();
+        FileNode node = SnapshotIO.readHeader(in, parent, path);
+        node.isCollapsed = in.readBoolean();
+        return node;
+    }
+
+    /** 目录自身 + 最多 topN 个子节点，其余归并为一个 [Other Files] */
+    static void writeChildren(DataOutputStream out, FileNode dir, int topN) throws IOException {
+        List<FileNode> children = dir.children;
+        List<FileNode> sent = children;
+        if (children.size() > topN) {
+            sent = new ArrayList<>(children.subList(0, topN));
+            FileNode other = new FileNode("[Other Files]", dir.path, false);
+            other.isOther = true;
+            long entries = 0;
+            for (FileNode child : children.subList(topN, children.size())) {
+                other.size += child.size;
+                other.digest += child.digest;
+                entries += child.entryCount + 1;
+            }
+            other.entryCount = entries - 1;
+            sent.add(other);
+        }
+        writeNode(out, dir);
+        out.writeInt(sent.size());
+        for (FileNode child : sent) writeNode(out, child);
+    }
+
+    static FileNode readChildren(DataInputStream in) throws IOException {
+        FileNode dir = readNode(in, null);
+        int count = in.readInt();
+        dir.children = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) dir.children.add(readNode(in, dir));
+        dir.isCollapsed = false;
+        return dir;
+    }
+}
@@ -0,0 +1,133 @@
+package diskanalyzer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 扫描代理的端到端冒烟测试：在临时目录里造一棵已知大小的树，在本机回环的随机端口上启动 ScanAgent，
+ * 再通过 AgentClient 走一遍订阅进度、读取状态、按需读取子节点和错误回复。不依赖 JavaFX。
+ * <pre>
+ *   java -cp target/classes diskanalyzer.AgentSmoke
+ * </pre>
+ * 全部通过时打印 OK 并以 0 退出，否则打印第一处失败并以 1 退出。
+ */
+public class AgentSmoke {
+
+    private static final int BIG_FILES = 120;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("agent-smoke");
+        try {
+            run(dir);
+            System.out.println("OK");
+        } catch (AssertionError e) {
+            System.out.println("FAIL: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    private static void run(Path dir) throws Exception {
+        long expected = createTree(dir);
+        Path big = dir.resolve("big");
+
+        InetSocketAddress address = (InetSocketAddress) new ScanAgent(dir.toFile()).start(new InetSocketAddress("127.0.0.1", 0));
+        System.out.println("代理监听 " + address);
+
+        AgentClient client = AgentClient.connect("127.0.0.1:" + address.getPort());
+        try {
+            // 订阅：等到最后一次（完成）推送
+            CompletableFuture<AgentClient.Progress> finished = new CompletableFuture<>();
+            client.subscribe(p -> {
+                if (!p.done() && !p.failed()) return;
+                finished.complete(p);
+            }).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            AgentClient.Progress last = finished.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            check(last.done(), "扫描没有正常完成");
+            check(last.files() == BIG_FILES + 2, "进度中的文件数 " + last.files() + "，应为 " + (BIG_FILES + 2));
+            check(last.bytes() == expected, "进度中的字节数 " + last.bytes() + "，应为 " + expected);
+
+            AgentClient.Status status = client.status().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            check(status.root() != null, "完成后的状态没有根节点");
+            check(status.root().size == expected, "根节点大小 " + status.root().size + "，应为 " + expected);
+            check(status.root().isCollapsed, "根节点应标记为还有子节点可取");
+
+            FileNode root = client.children(status.root().path, ScanContext.KEEP_CHILDREN).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            check(root.children.size() == 3, "根目录下应有 3 项，实际 " + root.children.size());
+            check(sum(root) == expected, "根目录子节点大小之和 " + sum(root) + "，应为 " + expected);
+            FileNode bigNode = root.children.stream().filter(c -> c.name.equals("big")).findFirst().orElse(null);
+            check(bigNode != null && bigNode.isCollapsed, "big 目录缺失或没有标记为可展开");
+
+            FileNode bigDir = client.children(big.toString(), ScanContext.KEEP_CHILDREN).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            check(bigDir.children.size() == ScanContext.KEEP_CHILDREN + 1, "big 应返回前 50 项加 [Other Files]，实际 " + bigDir.children.size());
+            FileNode other = bigDir.children.get(bigDir.children.size() - 1);
+            check(other.isOther, "最后一项应为 [Other Files]");
+            check(other.entryCount + 1 == BIG_FILES - ScanContext.KEEP_CHILDREN, "[Other Files] 代表的条目数 " + (other.entryCount + 1));
+            check(sum(bigDir) == bigDir.size, "big 子节点大小之和与目录大小不一致");
+
+            // 不存在的目录：应收到错误回复，连接保持可用
+            check(failsWith(client.children(dir.resolve("missing").toString(), 10)), "不存在的目录应返回错误");
+            check(client.status().get(TIMEOUT_SECONDS, TimeUnit.SECONDS).progress().done(), "错误回复之后连接不可用");
+        } finally {
+            client.close();
+        }
+        check(failsWith(client.status()), "关闭后的请求应失败");
+    }
+
+    // root/big 下 BIG_FILES 个大小各不相同的文件，root/small/a/b/deep.bin，root/top.txt；返回总字节数
+    private static long createTree(Path dir) throws IOException {
+        long total = 0;
+        Path big = Files.createDirectories(dir.resolve("big"));
+        for (int i = 1; i <= BIG_FILES; i++) {
+            Files.write(big.resolve("f" + i + ".dat"), new byte[i * 100]);
+            total += i * 100L;
+        }
+        Path deep = Files.createDirectories(dir.resolve("small").resolve("a").resolve("b"));
+        Files.write(deep.resolve("deep.bin"), new byte[5000]);
+        Files.write(dir.resolve("top.txt"), new byte[777]);
+        return total + 5000 + 777;
+    }
+
+    private static long sum(FileNode dir) {
+        long s = 0;
+        for (FileNode c : dir.children) s += c.size;
+        return s;
+    }
+
+    private static boolean failsWith(CompletableFuture<?> future) throws InterruptedException {
+        try {
+            future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        } catch (java.util.concurrent.TimeoutException e) {
+            throw new AssertionError("等待回复超时");
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.delete(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package diskanalyzer;
+
+import java.io.IOException;
+import java.lang.module.ModuleReader;
+import java.lang.module.ResolvedModule;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 为 jlink 镜像生成类数据共享 (CDS) 归档时的「训练」入口。
+ * <p>
+ * 单独的 main 类：以 Application 子类为主类时启动器会先初始化 JavaFX 工具包，这里不需要也不能依赖显示环境。
+ * 只加载（不初始化）本程序和 JavaFX 各模块中的类，
+ * 配合 -XX:DumpLoadedClassList 得到类列表，再用 -Xshare:dump 写入镜像的默认归档，见 pom.xml 中的 cds-* 执行。
+ */
+public class CdsTraining {
+
+    private static final List<String> MODULES = List.of(
+            "diskanalyzer.diskanalyzer", "javafx.base", "javafx.graphics", "javafx.controls");
+
+    public static void main(String[] args) {
+        int loaded = 0;
+        for (String name : MODULES) {
+            ResolvedModule module = ModuleLayer.boot().configuration().findModule(name).orElse(null);
+            if (module == null) continue;
+            try (ModuleReader reader = module.reference().open(); Stream<String> entries = reader.list()) {
+                for (String entry : (Iterable<String>) entries::iterator) {
+                    if (!entry.endsWith(".class") || entry.equals("module-info.class")) continue;
+                    String className = entry.substring(0, entry.length() - 6).replace('/', '.');
+                    try {
+                        Class.forName(className, false, CdsTraining.class.getClassLoader());
+                        loaded++;
+                    } catch (LinkageError | ClassNotFoundException ignored) {
+                        // 平台相关的类在当前系统上可能无法链接，跳过
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        System.out.println("CDS training: loaded " + loaded + " classes");
+    }
+}
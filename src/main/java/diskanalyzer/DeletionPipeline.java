@@ -0,0 +1,310 @@
+package diskanalyzer;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 后台删除流水线：深度优先遍历目标子树，文件按批次并行删除，目录在所有文件删完后按后序删除。
+ * <p>
+ * 遍历只在内存中保留一条目录栈和尚未删除的批次（由信号量限流），不会像 Files.walk + sorted 那样把整棵子树的路径先装进内存。
+ * 删除进度按「最近的已知节点」累积成增量，在 FX 线程上沿 parent 链扣减，扫描树的大小随删除逐步更新。
+ * 取消通过 {@link #requestStop()} 协作完成：已提交的批次照常结束，结果中带上已释放的字节数和失败列表。
+ */
+public class DeletionPipeline extends Task<DeletionPipeline.Result> {
+
+    private static final int BATCH_SIZE = 256;
+    private static final int THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    private static final long FLUSH_INTERVAL_NANOS = 100_000_000L; // 树的增量最多每 100ms 同步一次
+    private static final int MAX_REPORTED_FAILURES = 1000;
+
+    public record Failure(String path, String reason) { }
+
+    public record Result(long freedBytes, long deletedEntries, boolean cancelled, boolean targetRemoved,
+                         List<Failure> failures, long failureCount) { }
+
+    // 一个待删除的条目及其对扫描树的贡献，在遍历线程上算好；fileOwner 是文件属主编号，目录和不统计属主时为 UNKNOWN；
+    // extension 是扩展名编号，目录和符号链接为 -1
+    private record Entry(Path path, FileNode owner, boolean exact, long size, long digest, int bucket, int fileOwner,
+                         int extension) { }
+
+    private final FileNode target;
+    private final Runnable onTreeChanged;
+    private final int scanMinutes;
+    private final boolean trackOwners; // 扫描树按属主统计时，删除的未单独记录的文件同样按属主扣减
+
+    // 子树中所有真实节点（不含 [Other Files]），按路径索引；删除的文件/目录据此找到要扣减的节点
+    private final Map<String, FileNode> nodesByPath = new HashMap<>();
+
+    private final AtomicBoolean stop = new AtomicBoolean(false);
+    private final AtomicLong freedBytes = new AtomicLong();
+    private final AtomicLong deletedEntries = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final List<Failure> failures = Collections.synchronizedList(new ArrayList<>());
+    // 有条目删除失败的目录（含其祖先），后序阶段跳过，不再逐级报告「目录非空」
+    private final Set<Path> blockedDirs = ConcurrentHashMap.newKeySet();
+
+    // 尚未同步到扫描树的增量，由 pendingLock 保护
+    private final Object pendingLock = new Object();
+    private Map<FileNode, FileNode> pendingDeltas = new HashMap<>();
+    private List<FileNode> pendingRemovals = new ArrayList<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile long lastFlushNanos = System.nanoTime();
+
+    /**
+     * @param onTreeChanged 每次把删除进度同步到扫描树之后在 FX 线程上调用，通常用于重绘
+     */
+    public DeletionPipeline(FileNode target, Runnable onTreeChanged) {
+        this.target = target;
+        this.onTreeChanged = onTreeChanged;
+        FileNode dir = target.isDir ? target : target.parent;
+        this.scanMinutes = dir != null && dir.scanMinutes != 0 ? dir.scanMinutes : FileNode.nowMinutes();
+        this.trackOwners = dir != null && dir.owners != null;
+        index(target);
+    }
+
+    private void index(FileNode node) {
+        if (node.isOther) return;
+        nodesByPath.put(node.path, node);
+        for (FileNode child : node.children) index(child);
+    }
+
+    /** 请求停止：不再提交新批次，已提交的批次完成后返回结果 */
+    public void requestStop() {
+        stop.set(true);
+    }
+
+    @Override
+    protected Result call() throws Exception {
+        Path root = Path.of(target.path);
+        ExecutorService workers = Executors.newFixedThreadPool(THREADS, r -> {
+            Thread t = new Thread(r, "delete-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        Semaphore inFlight = new Semaphore(THREADS * 2);
+        List<Entry> dirsPostOrder = new ArrayList<>();
+        long totalBytes = Math.max(1, target.size);
+        long totalEntries = target.entryCount + 1;
+
+        try {
+            Deque<FileNode> owners = new ArrayDeque<>();
+
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                private List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (stop.get()) return FileVisitResult.TERMINATE;
+                    // 目录中未被单独记录的文件计入它的 [Other Files]；未被记录的目录沿用上层的归属
+                    FileNode node = nodesByPath.get(dir.toString());
+                    FileNode owner;
+                    if (node != null) {
+                        owner = node;
+                        for (FileNode c : node.children) {
+                            if (c.isOther) { owner = c; break; }
+                        }
+                    } else {
+                        owner = owners.isEmpty() ? target : owners.peek();
+                    }
+                    owners.push(owner);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (stop.get()) return FileVisitResult.TERMINATE;
+                    batch.add(fileEntry(file, attrs, owners.peek()));
+                    // 目标本身是文件时 owners 为空，直接提交
+                    if (batch.size() >= BATCH_SIZE || owners.isEmpty()) {
+                        submit(workers, inFlight, batch);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    fail(file, exc);
+                    return stop.get() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                    owners.pop();
+                    // 遍历回到目标目录时提交最后一批
+                    if (!batch.isEmpty() && owners.isEmpty()) {
+                        submit(workers, inFlight, batch);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                    if (exc != null) {
+                        fail(dir, exc);
+                    } else {
+                        // 未被记录的目录本身计入上层目录的归属节点
+                        FileNode node = nodesByPath.get(dir.toString());
+                        FileNode owner = node != null ? node : owners.peek();
+                        String name = dir.getFileName() == null ? dir.toString() : dir.getFileName().toString();
+                        dirsPostOrder.add(new Entry(dir, owner, node != null, 0, FileNode.dirDigestSeed(name), -1, OwnerTable.UNKNOWN, -1));
+                    }
+                    return stop.get() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                }
+            });
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+
+        // 文件全部删完后再按后序删除目录
+        if (!stop.get()) {
+            for (Entry dir : dirsPostOrder) {
+                if (stop.get()) break;
+                if (blockedDirs.contains(dir.path())) continue;
+                try {
+                    Files.deleteIfExists(dir.path());
+                    deletedEntries.incrementAndGet();
+                    record(dir);
+                } catch (IOException e) {
+                    fail(dir.path(), e);
+                }
+                updateProgress(freedBytes.get(), totalBytes);
+            }
+        }
+
+        boolean removed = !Files.exists(root, LinkOption.NOFOLLOW_LINKS);
+        updateProgress(freedBytes.get(), totalBytes);
+        updateMessage(progressText(totalEntries));
+        // 最后一次同步排在 Task 状态变化之前执行，onSucceeded 中看到的已是最终的树
+        Platform.runLater(this::applyPending);
+        return new Result(freedBytes.get(), deletedEntries.get(), stop.get(), removed,
+                List.copyOf(failures), failureCount.get());
+    }
+
+    private Entry fileEntry(Path file, BasicFileAttributes attrs, FileNode dirOwner) {
+        FileNode node = nodesByPath.get(file.toString());
+        String name = file.getFileName().toString();
+        long size = attrs.isSymbolicLink() ? 0 : attrs.size(); // 与扫描器一致：链接记为 0 字节
+        int modified = FileNode.toMinutes(attrs.lastModifiedTime());
+        int accessed = FileNode.toMinutes(attrs.lastAccessTime());
+        return new Entry(file, node != null ? node : dirOwner, node != null, size,
+                FileNode.fileDigest(name, size, modified), FileNode.ageBucket(modified, accessed, scanMinutes),
+                node == null && trackOwners ? ownerOf(file) : OwnerTable.UNKNOWN,
+                attrs.isSymbolicLink() ? -1 : ExtensionTable.idOf(name));
+    }
+
+    // 单独记录的节点自带属主，只有归入 [Other Files] 等汇总节点的文件需要再读一次
+    private static int ownerOf(Path file) {
+        try {
+            return OwnerTable.ownerOf(OwnerTable.readAttributes(file));
+        } catch (IOException | SecurityException e) {
+            return OwnerTable.UNKNOWN;
+        }
+    }
+
+    private void submit(ExecutorService workers, Semaphore inFlight, List<Entry> entries) {
+        // 限制未完成的批次数，遍历不会跑到删除前面太远
+        inFlight.acquireUninterruptibly();
+        long totalBytes = Math.max(1, target.size);
+        long totalEntries = target.entryCount + 1;
+        workers.execute(() -> {
+            try {
+                for (Entry e : entries) {
+                    if (stop.get()) return;
+                    try {
+                        Files.deleteIfExists(e.path());
+                        freedBytes.addAndGet(e.size());
+                        deletedEntries.incrementAndGet();
+                        record(e);
+                    } catch (IOException ex) {
+                        fail(e.path(), ex);
+                    }
+                }
+            } finally {
+                inFlight.release();
+                updateProgress(freedBytes.get(), totalBytes);
+                updateMessage(progressText(totalEntries));
+            }
+        });
+    }
+
+    private String progressText(long totalEntries) {
+        String text = "已释放 " + FileNode.formatSize(freedBytes.get()) + " / " + FileNode.formatSize(target.size)
+                + " · 已删除 " + String.format("%,d", deletedEntries.get()) + " / " + String.format("%,d", totalEntries) + " 项";
+        long failed = failureCount.get();
+        return failed > 0 ? text + " · 失败 " + failed : text;
+    }
+
+    private void fail(Path path, IOException e) {
+        failureCount.incrementAndGet();
+        if (failures.size() < MAX_REPORTED_FAILURES) {
+            String reason = e.getClass().getSimpleName() + (e.getMessage() != null && !e.getMessage().equals(path.toString()) ? ": " + e.getMessage() : "");
+            failures.add(new Failure(path.toString(), reason));
+        }
+        Path root = Path.of(target.path);
+        for (Path p = path.getParent(); p != null && p.startsWith(root); p = p.getParent()) {
+            if (!blockedDirs.add(p)) break;
+        }
+    }
+
+    // --- 扫描树的增量同步 ---
+
+    private void record(Entry e) {
+        synchronized (pendingLock) {
+            if (e.exact()) {
+                // 节点本身被删除：移除时扣掉它剩余的全部统计
+                pendingRemovals.add(e.owner());
+            } else {
+                FileNode delta = pendingDeltas.computeIfAbsent(e.owner(), k -> {
+                    FileNode d = new FileNode("", "", true);
+                    d.entryCount = -1; // addStats 按 entryCount + 1 计条目数
+                    d.ageBytes = new long[FileNode.AGE_BUCKET_NAMES.length];
+                    d.owners = new OwnerTable.Usage();
+                    d.extensions = new ExtensionTable.Counts();
+                    return d;
+                });
+                delta.size += e.size();
+                delta.entryCount++;
+                delta.digest += e.digest();
+                if (e.bucket() >= 0) delta.ageBytes[e.bucket()] += e.size();
+                if (e.fileOwner() != OwnerTable.UNKNOWN) delta.owners.add(e.fileOwner(), e.size(), 1);
+                if (e.extension() >= 0) delta.extensions.add(e.extension(), e.size(), 1);
+            }
+        }
+        long now = System.nanoTime();
+        if (now - lastFlushNanos > FLUSH_INTERVAL_NANOS && flushScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::applyPending);
+        }
+    }
+
+    private void applyPending() {
+        Map<FileNode, FileNode> deltas;
+        List<FileNode> removals;
+        synchronized (pendingLock) {
+            deltas = pendingDeltas;
+            removals = pendingRemovals;
+            pendingDeltas = new HashMap<>();
+            pendingRemovals = new ArrayList<>();
+        }
+        lastFlushNanos = System.nanoTime();
+        flushScheduled.set(false);
+        if (deltas.isEmpty() && removals.isEmpty()) return;
+
+        deltas.forEach((owner, delta) -> {
+            for (FileNode p = owner; p != null; p = p.parent) p.addStats(delta, -1);
+        });
+        // removals 按删除顺序排列（文件先于目录，子目录先于父目录），依次摘除即可
+        for (FileNode node : removals) {
+            FileNode parent = node.parent;
+            if (parent == null) continue; // 扫描根本身由调用方处理
+            for (FileNode p = parent; p != null; p = p.parent) p.addStats(node, -1);
+            parent.children.remove(node);
+        }
+        onTreeChanged.run();
+    }
+}
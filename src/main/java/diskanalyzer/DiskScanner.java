@@ -2,8 +2,10 @@ package diskanalyzer;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
@@ -14,33 +16,61 @@ import java.util.concurrent.atomic.AtomicReference;
 
 public class DiskScanner extends RecursiveTask<FileNode> {
     private final Path dirPath; // 改用 Path，这是 NIO 的核心类
+    private final ScanContext ctx; // 整次扫描共享：扫描开始时刻（年龄分桶的基准）与内存预算
+    private BasicFileAttributes dirAttrs; // 父任务已读到的本目录属性，根目录为 null
+    private final String topLevel; // 所属的顶层目录名（诊断中按它汇总耗时），根目录为 null
+    private final boolean isRoot; // 由公共构造函数创建：一次扫描（或子树重扫）的起点
 
     // 全局统计指标
     public static final AtomicLong scannedFileCount = new AtomicLong(0);
     public static final AtomicLong scannedTotalSize = new AtomicLong(0);
+    public static final AtomicLong scannedDirCount = new AtomicLong(0); // 含根目录，用于按条目数估算进度
     public static final AtomicReference<String> currentScanningPath = new AtomicReference<>("");
 
     public static void resetStats() {
         scannedFileCount.set(0);
         scannedTotalSize.set(0);
+        scannedDirCount.set(0);
         currentScanningPath.set("Initializing...");
     }
 
     // 公共构造函数接收 File (兼容 MainApp)
     public DiskScanner(File dir) {
+        this(dir, new ScanContext());
+    }
+
+    public DiskScanner(File dir, ScanContext ctx) {
         this.dirPath = dir.toPath();
+        this.topLevel = null;
+        this.isRoot = true;
+        this.ctx = ctx;
     }
 
     // 私有构造函数接收 Path (用于内部递归，减少转换开销)
-    private DiskScanner(Path dirPath) {
+    private DiskScanner(Path dirPath, BasicFileAttributes dirAttrs, String topLevel, ScanContext ctx) {
         this.dirPath = dirPath;
+        this.topLevel = topLevel;
+        this.isRoot = false;
+        this.dirAttrs = dirAttrs;
+        this.ctx = ctx;
     }
 
     @Override
     protected FileNode compute() {
+        ScanTelemetry.ScanEvent scanEvent = null;
+        // 子树重扫 (ctx.primary 为 false) 不是一次新的扫描：不上报扫描级遥测，也不动全局进度计数
+        if (isRoot && ctx.primary) {
+            ScanTelemetry.scanStarted(ctx);
+            scanEvent = new ScanTelemetry.ScanEvent();
+            scanEvent.begin();
+        }
+
         // 更新 UI 状态 (仅获取文件名，避免 toString 全路径带来的字符串开销)
         Path fileName = dirPath.getFileName();
-        currentScanningPath.set(fileName == null ? dirPath.toString() : fileName.toString());
+        if (ctx.primary) {
+            currentScanningPath.set(fileName == null ? dirPath.toString() : fileName.toString());
+            scannedDirCount.incrementAndGet();
+        }
 
         // 创建当前节点
         FileNode node = new FileNode(
@@ -48,22 +78,82 @@ public class DiskScanner extends RecursiveTask<FileNode> {
                 dirPath.toString(),
                 true
         );
+        node.digest = FileNode.dirDigestSeed(node.name);
+        node.scanMinutes = ctx.nowMinutes;
+        node.ageBytes = new long[FileNode.AGE_BUCKET_NAMES.length];
+        if (ctx.owners) node.owners = new OwnerTable.Usage();
+        node.extensions = new ExtensionTable.Counts(); // 本任务独占，子目录完成后由父任务合并
+        ctx.tablesCreated(node);
+        try {
+            BasicFileAttributes own = dirAttrs != null ? dirAttrs : Files.readAttributes(dirPath, BasicFileAttributes.class);
+            node.modifiedMinutes = FileNode.toMinutes(own.lastModifiedTime());
+            node.accessMinutes = FileNode.toMinutes(own.lastAccessTime());
+            if (ctx.follow && isRoot) {
+                // 根目录：先登记自己和真实路径，指回根目录以内的链接不会再被跟随
+                ctx.rootRealPath = dirPath.toRealPath();
+                ctx.claimDirectory(ScanContext.directoryKey(dirPath, own));
+            }
+        } catch (IOException | SecurityException e) {
+            // 读不到目录自身的时间不影响扫描
+        }
+        dirAttrs = null; // 不再需要，尽早释放
+        ctx.nodesCreated(1);
 
         List<DiskScanner> subTasks = new ArrayList<>();
 
         // ★★★ 核心优化：使用 NIO DirectoryStream 流式读取 ★★★
         // try-with-resources 自动关闭流，防止文件句柄泄漏
+        // 列举耗时（读目录 + 逐项读属性，不含子目录）记入诊断，用来找出拖慢扫描的目录和挂载点
+        long listStart = System.nanoTime();
+        long entries = 0;
+        ScanTelemetry.DirectoryListingEvent listingEvent = new ScanTelemetry.DirectoryListingEvent();
+        listingEvent.begin();
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(dirPath)) {
             for (Path entry : stream) {
+                entries++;
                 try {
                     // 读取文件属性 (比 toFile().length() 更快且更准确)
-                    BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                    // ★★★ 不跟随符号链接：链接本身作为 0 字节的节点记录，指向目录的链接不会被当成子目录扫描 ★★★
+                    ScanTelemetry.SlowStatEvent statEvent = new ScanTelemetry.SlowStatEvent();
+                    statEvent.begin();
+                    // 统计属主时同一次 stat 顺带取得属主
+                    BasicFileAttributes linkAttrs = ctx.owners
+                            ? OwnerTable.readAttributes(entry)
+                            : Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    statEvent.end();
+                    if (statEvent.shouldCommit()) {
+                        statEvent.path = entry.toString();
+                        statEvent.commit();
+                    }
+                    BasicFileAttributes attrs = linkAttrs;
+                    if (linkAttrs.isSymbolicLink() && ctx.follow) {
+                        try {
+                            attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                        } catch (IOException e) {
+                            // 失效的链接：按链接本身记录
+                        }
+                    }
 
                     if (attrs.isDirectory()) {
+                        if (ctx.follow) {
+                            // ★★★ 真实路径优先：指向扫描根以内的链接只记录本身，目标按真实位置统计，不论谁先被列举到 ★★★
+                            if (linkAttrs.isSymbolicLink() && ctx.isInsideRoot(entry.toRealPath())) {
+                                addLink(node, entry, linkAttrs);
+                                continue;
+                            }
+                            if (!ctx.claimDirectory(ScanContext.directoryKey(entry, attrs))) {
+                                // 已经扫描过（或正在扫描）：链接只记录本身；真实目录（绑定挂载形成的环或重复挂载）直接跳过
+                                if (linkAttrs.isSymbolicLink()) addLink(node, entry, linkAttrs);
+                                continue;
+                            }
+                        }
                         // 如果是目录：创建子任务并 Fork
-                        DiskScanner task = new DiskScanner(entry);
+                        DiskScanner task = new DiskScanner(entry, attrs,
+                                topLevel != null ? topLevel : entry.getFileName().toString(), ctx);
                         task.fork();
                         subTasks.add(task);
+                    } else if (attrs.isSymbolicLink()) {
+                        addLink(node, entry, linkAttrs);
                     } else {
                         // 如果是文件：直接构建节点
                         // 注意：entry.toAbsolutePath().toString() 可能会有微小性能开销，但在 UI 展示中是必须的
@@ -73,59 +163,63 @@ public class DiskScanner extends RecursiveTask<FileNode> {
                                 false
                         );
                         fileNode.size = attrs.size();
-                        fileNode.parent = node; // 维护父子关系，用于删除功能
+                        fileNode.modifiedMinutes = FileNode.toMinutes(attrs.lastModifiedTime());
+                        fileNode.accessMinutes = FileNode.toMinutes(attrs.lastAccessTime());
+                        fileNode.digest = FileNode.fileDigest(fileNode.name, fileNode.size, fileNode.modifiedMinutes);
+                        // 跟随链接时记的是链接本身的属主
+                        if (ctx.owners) fileNode.owner = OwnerTable.ownerOf(linkAttrs);
 
-                        node.children.add(fileNode);
-                        node.size += fileNode.size;
+                        ctx.addFile(node, fileNode);
 
                         // 更新全局统计
-                        scannedFileCount.incrementAndGet();
-                        scannedTotalSize.addAndGet(fileNode.size);
+                        if (ctx.primary) {
+                            scannedFileCount.incrementAndGet();
+                            scannedTotalSize.addAndGet(fileNode.size);
+                        }
                     }
-                } catch (IOException e) {
-                    // 忽略单个文件的读取错误（如符号链接失效或权限不足）
-                    // continue;
+                } catch (IOException | SecurityException e) {
+                    // 跳过单个文件的读取错误（如权限不足），记入诊断
+                    ctx.diagnostics.recordError(entry.toString(), e);
                 }
             }
         } catch (IOException | SecurityException e) {
-            // 忽略整个目录的读取错误（如 System Volume Information 拒绝访问）
-            // System.err.println("Access Denied: " + dirPath);
+            // 跳过整个目录的读取错误（如 System Volume Information 拒绝访问），记入诊断
+            ctx.diagnostics.recordError(dirPath.toString(), e);
+        } catch (DirectoryIteratorException e) {
+            // 遍历中途出错：已读到的条目保留
+            ctx.diagnostics.recordError(dirPath.toString(), e.getCause());
+        }
+        ctx.diagnostics.recordListing(dirPath.toString(), topLevel, entries, System.nanoTime() - listStart);
+        listingEvent.end();
+        if (listingEvent.shouldCommit()) {
+            listingEvent.path = node.path;
+            listingEvent.entries = entries;
+            listingEvent.commit();
         }
 
-        // 等待所有子目录扫描完成并汇总大小
+        // 等待所有子目录扫描完成并汇总大小（年龄直方图同样自底向上合并）
         for (DiskScanner task : subTasks) {
             FileNode childDir = task.join();
             // 只有当子目录扫描成功（非 null）才添加
-            if (childDir != null) {
-                childDir.parent = node;
-                node.children.add(childDir);
-                node.size += childDir.size;
-            }
+            if (childDir != null) ctx.addDirectory(node, childDir);
         }
 
-        // --- 以下是原有的排序与截断逻辑 (保持不变) ---
-
-        // 排序：从大到小
-        node.children.sort((a, b) -> Long.compare(b.size, a.size));
-
-        // 截断逻辑：保留前 50 个，其余归并为 Other
-        if (node.children.size() > 50) {
-            long otherSize = 0;
-            List<FileNode> keep = new ArrayList<>();
-            for (int i = 0; i < 50; i++) keep.add(node.children.get(i));
-            for (int i = 50; i < node.children.size(); i++) otherSize += node.children.get(i).size;
-
-            if (otherSize > 0) {
-                // 创建 Other 节点
-                FileNode other = new FileNode("[Other Files]", node.path, false);
-                other.size = otherSize;
-                other.isOther = true;
-                // other.parent = node; // Other 节点通常不参与物理删除，parent 可设可不设
-                keep.add(other);
-            }
-            node.children = keep;
-        }
+        // 排序并截断（保留前 50 个，其余归并为 Other），再按内存预算折叠已完成的小子目录
+        ctx.finishDirectory(node);
 
+        if (scanEvent != null) ScanTelemetry.scanFinished(scanEvent, node, ctx);
         return node;
     }
+
+    // 符号链接节点：大小为 0，时间取链接本身的
+    private void addLink(FileNode dir, Path entry, BasicFileAttributes linkAttrs) {
+        FileNode link = new FileNode(entry.getFileName().toString(), entry.toAbsolutePath().toString(), false);
+        link.isSymlink = true;
+        link.modifiedMinutes = FileNode.toMinutes(linkAttrs.lastModifiedTime());
+        link.accessMinutes = FileNode.toMinutes(linkAttrs.lastAccessTime());
+        link.digest = FileNode.fileDigest(link.name, 0, link.modifiedMinutes);
+        if (ctx.owners) link.owner = OwnerTable.ownerOf(linkAttrs);
+        ctx.addFile(dir, link);
+        if (ctx.primary) scannedFileCount.incrementAndGet();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,219 @@
+package diskanalyzer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 扩展名的紧凑编号表：扩展名在整个进程内只存一份，按文件统计时以 int 编号引用。
+ * <p>
+ * 查找直接在文件名的字符区间上计算哈希、逐字符比较，不为每个文件创建子串；
+ * 只有第一次遇到某个扩展名时才生成它的字符串。查找读的是一份不可变的快照，无锁，插入时整体替换。
+ * <p>
+ * 压缩后缀与前一段合起来算一个扩展名（.log.gz、.tar.zst），便于区分「压缩的日志」和「压缩包」。
+ * 扩展名不超过 MAX_LENGTH 个字符，编号最多 MAX_EXTENSIONS 个，超出的都记为「其他扩展名」，
+ * 随机后缀的临时文件不会让表无限增长。
+ */
+final class ExtensionTable {
+
+    static final int NONE = 0;      // 没有扩展名
+    static final int OVERFLOW = 1;  // 扩展名过长或表已满
+
+    private static final int MAX_LENGTH = 12;
+    private static final int MAX_EXTENSIONS = 4096;
+    private static final int MAX_INNER_LENGTH = 5; // 压缩后缀前一段的最大长度
+    private static final Set<String> COMPRESSED = Set.of("gz", "bz2", "xz", "zst", "lz4", "z");
+
+    // 开放寻址：slots 存编号 + 1，0 为空槽；names 按编号存放小写扩展名（不含点）
+    private record Table(int[] slots, String[] names, int size) { }
+
+    private static volatile Table table = initial();
+
+    private ExtensionTable() {
+    }
+
+    private static Table initial() {
+        Table t = new Table(new int[256], new String[64], 0);
+        t = insert(t, "");  // NONE
+        return insert(t, "*"); // OVERFLOW
+    }
+
+    static String name(int id) {
+        Table t = table;
+        if (id == NONE) return "(无扩展名)";
+        if (id == OVERFLOW || id < 0 || id >= t.size) return "(其他扩展名)";
+        return "." + t.names[id];
+    }
+
+    /** 不带点的小写扩展名，供按扩展名归类使用；没有扩展名时为空串 */
+    static String bareName(int id) {
+        Table t = table;
+        return id > OVERFLOW && id < t.size ? t.names[id] : "";
+    }
+
+    // ★★★ 在 name 的字符区间上直接查找，命中时不分配任何对象 ★★★
+    static int idOf(String name) {
+        int end = name.length();
+        int dot = name.lastIndexOf('.');
+        // 以点开头的隐藏文件（.bashrc）和以点结尾的名称都算没有扩展名
+        if (dot <= 0 || dot == end - 1) return NONE;
+        int start = dot + 1;
+        if (end - start > MAX_LENGTH) return OVERFLOW;
+        if (isCompressed(name, start, end)) {
+            int prev = name.lastIndexOf('.', dot - 1);
+            if (prev > 0 && dot - prev - 1 >= 1 && dot - prev - 1 <= MAX_INNER_LENGTH) start = prev + 1;
+        }
+
+        int hash = hash(name, start, end);
+        Table t = table;
+        int id = find(t, name, start, end, hash);
+        if (id >= 0) return id;
+        return register(name, start, end);
+    }
+
+    private static boolean isCompressed(String name, int start, int end) {
+        int len = end - start;
+        if (len > 3) return false;
+        for (String s : COMPRESSED) {
+            if (s.length() == len && name.regionMatches(true, start, s, 0, len)) return true;
+        }
+        return false;
+    }
+
+    private static int hash(String s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + Character.toLowerCase(s.charAt(i));
+        return h ^ (h >>> 16);
+    }
+
+    private static int find(Table t, String s, int start, int end, int hash) {
+        int mask = t.slots.length - 1;
+        int len = end - start;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int slot = t.slots[i];
+            if (slot == 0) return -1;
+            String candidate = t.names[slot - 1];
+            if (candidate.length() == len && s.regionMatches(true, start, candidate, 0, len)) return slot - 1;
+        }
+    }
+
+    private static synchronized int register(String s, int start, int end) {
+        Table t = table;
+        int id = find(t, s, start, end, hash(s, start, end));
+        if (id >= 0) return id;
+        if (t.size >= MAX_EXTENSIONS) return OVERFLOW;
+        t = insert(t, s.substring(start, end).toLowerCase(Locale.ROOT));
+        table = t;
+        return t.size - 1;
+    }
+
+    // 复制一份加入新扩展名后的表；装载因子超过 1/2 时槽数翻倍
+    private static Table insert(Table t, String ext) {
+        int[] slots = t.slots;
+        String[] names = t.names;
+        int size = t.size;
+        if (size == names.length) names = Arrays.copyOf(names, size * 2);
+        else names = names.clone();
+        names[size] = ext;
+        size++;
+        if (size * 2 > slots.length) {
+            slots = new int[slots.length * 2];
+            for (int id = 0; id < size - 1; id++) place(slots, names[id], id);
+        } else {
+            slots = slots.clone();
+        }
+        place(slots, ext, size - 1);
+        return new Table(slots, names, size);
+    }
+
+    private static void place(int[] slots, String ext, int id) {
+        int mask = slots.length - 1;
+        int i = hash(ext, 0, ext.length()) & mask;
+        while (slots[i] != 0) i = (i + 1) & mask;
+        slots[i] = id + 1;
+    }
+
+    /**
+     * 一个目录（或 [Other Files]）子树中各扩展名的字节数和文件数：以扩展名编号为键的开放寻址表，
+     * 键、字节数、文件数各一个基本类型数组。每个扫描任务只写自己目录的表，子目录完成后合并进父目录，
+     * 不需要任何同步；根目录的表就是整次扫描的排行。
+     */
+    static final class Counts {
+        private int[] keys = new int[4];   // 编号 + 1，0 为空槽
+        private long[] bytes = new long[4];
+        private long[] files = new long[4];
+        private int size;
+
+        void add(int id, long size, long fileCount) {
+            int mask = keys.length - 1;
+            int i = mix(id) & mask;
+            while (true) {
+                int k = keys[i];
+                if (k == id + 1) {
+                    bytes[i] += size;
+                    files[i] += fileCount;
+                    return;
+                }
+                if (k == 0) break;
+                i = (i + 1) & mask;
+            }
+            keys[i] = id + 1;
+            bytes[i] = size;
+            files[i] = fileCount;
+            if (++this.size * 2 > keys.length) grow();
+        }
+
+        /** 估算的堆占用：对象头和字段，加上三个数组 */
+        long bytes() {
+            return 80 + 20L * keys.length;
+        }
+
+        /** 把一个节点（目录、Other 或单个文件）的扩展名统计按 sign 叠加进来 */
+        void addNode(FileNode node, int sign) {
+            if (node.extensions != null) {
+                Counts c = node.extensions;
+                for (int i = 0; i < c.keys.length; i++) {
+                    if (c.keys[i] != 0) add(c.keys[i] - 1, sign * c.bytes[i], sign * c.files[i]);
+                }
+            } else if (!node.isDir && !node.isOther && !node.isSymlink) {
+                add(idOf(node.name), sign * node.size, sign);
+            }
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            long[] oldBytes = bytes;
+            long[] oldFiles = files;
+            keys = new int[oldKeys.length * 2];
+            bytes = new long[oldKeys.length * 2];
+            files = new long[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] == 0) continue;
+                int i = mix(oldKeys[j] - 1) & mask;
+                while (keys[i] != 0) i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                bytes[i] = oldBytes[j];
+                files[i] = oldFiles[j];
+            }
+        }
+
+        private static int mix(int id) {
+            return id * 0x9E3779B9 >>> 16;
+        }
+
+        /** 按字节数从大到小的前 limit 项；字节数和文件数都为 0 的（删除后清零的）不计 */
+        List<Entry> top(int limit) {
+            List<Entry> all = new ArrayList<>(size);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && (bytes[i] > 0 || files[i] > 0)) all.add(new Entry(keys[i] - 1, bytes[i], files[i]));
+            }
+            all.sort((a, b) -> Long.compare(b.bytes(), a.bytes()));
+            return all.size() > limit ? all.subList(0, limit) : all;
+        }
+    }
+
+    record Entry(int id, long bytes, long files) { }
+}
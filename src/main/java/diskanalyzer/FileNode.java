@@ -1,5 +1,7 @@
 package diskanalyzer;
 
+import java.io.File;
+import java.nio.file.attribute.FileTime;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
@@ -10,24 +12,206 @@ public class FileNode {
     long size;
     boolean isDir;
     boolean isOther = false;
+    // 仅目录：扫描时因内存预算被折叠，只保留汇总统计，子节点在下钻时重新扫描
+    boolean isCollapsed;
+    // 符号链接本身（不跟随时）：大小记为 0，链接目标在详情中按需读取
+    boolean isSymlink;
 
     // ★★★ 新增：父节点引用，用于删除后向上更新大小 ★★★
     FileNode parent;
 
     List<FileNode> children = new ArrayList<>();
 
+    // ★★★ 时间戳：以「自 1970 年起的分钟数」存成 int，比 FileTime / long 毫秒省内存 ★★★
+    int modifiedMinutes;
+    int accessMinutes;
+
+    // 子树中的条目数（文件 + 目录，不含自身，包括被归并进 [Other Files] 的条目）
+    long entryCount;
+    // 子树指纹：文件由「名称 + 大小 + 修改时间」混合而成，目录为名称种子加上所有子节点指纹之和。
+    // 求和与顺序无关，因此可以像 size 一样沿 parent 链增量修正；两次扫描指纹相同即可跳过整棵子树
+    long digest;
+    // 仅用于对比视图：相对上次扫描的带符号大小变化
+    long delta;
+
+    // 目录专用：扫描时刻（分钟），文件的年龄分桶以其父目录的扫描时刻为准
+    int scanMinutes;
+    // 目录专用：按数据年龄分桶的字节数，扫描时自底向上合并
+    long[] ageBytes;
+    // 仅机群合并视图：该路径在各主机上的大小
+    FleetMerge.HostSizes hosts;
+    // 文件：属主编号 (OwnerTable)，不支持或未知时为 UNKNOWN
+    int owner = OwnerTable.UNKNOWN;
+    // 目录和 [Other Files]：子树中各属主的字节数与文件数，扫描时自底向上合并；没有属主信息时为 null
+    OwnerTable.Usage owners;
+    // 目录和 [Other Files]：子树中各扩展名的字节数与文件数，扫描 / 导入时自底向上合并；文件的扩展名由名称现算
+    ExtensionTable.Counts extensions;
+    // 仅扫描期间，由 ScanContext 维护：目录完成时子树中保留的节点数（含自身）和附加数据字节数，折叠时据此选择而不必遍历子树。0 表示没有统计
+    long retainedNodes;
+    long retainedBytes;
+
+    // 数据年龄分桶（按最近一次修改/访问时间距扫描时刻的间隔）
+    public static final String[] AGE_BUCKET_NAMES = {"一周内", "一个月内", "半年内", "一年内", "三年内", "三年以上"};
+    private static final int[] AGE_BUCKET_LIMITS = {
+            7 * 24 * 60, 30 * 24 * 60, 182 * 24 * 60, 365 * 24 * 60, 3 * 365 * 24 * 60
+    };
+
     public FileNode(String name, String path, boolean isDir) {
         this.name = name;
         this.path = path;
         this.isDir = isDir;
     }
 
+    private static final String[] SIZE_UNITS = { "B", "KB", "MB", "GB", "TB" };
+    // DecimalFormat 不是线程安全的，每个线程缓存一份，避免每次调用都新建
+    private static final ThreadLocal<DecimalFormat> SIZE_FORMAT = ThreadLocal.withInitial(() -> new DecimalFormat("#.##"));
+
     public static String formatSize(long size) {
         if (size <= 0) return "0 B";
-        final String[] units = new String[] { "B", "KB", "MB", "GB", "TB" };
-        int digitGroups = (int) (Math.log10(size) / Math.log10(1024));
+        // 1024 的幂次直接由最高位算出，代替 Math.log10
+        int digitGroups = (63 - Long.numberOfLeadingZeros(size)) / 10;
         if (digitGroups > 4) digitGroups = 4;
-        DecimalFormat df = new DecimalFormat("#.##");
-        return df.format(size / Math.pow(1024, digitGroups)) + " " + units[digitGroups];
+        return SIZE_FORMAT.get().format(size / (double) (1L << (10 * digitGroups))) + " " + SIZE_UNITS[digitGroups];
+    }
+
+    public static String formatDelta(long delta) {
+        if (delta == 0) return "0 B";
+        return (delta > 0 ? "+" : "-") + formatSize(Math.abs(delta));
+    }
+
+    public static long fileDigest(String name, long size, int modifiedMinutes) {
+        return mix(name.hashCode() * 0x9E3779B97F4A7C15L + size * 31 + modifiedMinutes);
+    }
+
+    public static long dirDigestSeed(String name) {
+        return mix(name.hashCode() ^ 0x5DEECE66DL);
+    }
+
+    // SplitMix64 终结函数，把弱哈希打散成 64 位
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static int toMinutes(FileTime time) {
+        return time == null ? 0 : (int) (time.toMillis() / 60_000L);
+    }
+
+    public static int nowMinutes() {
+        return (int) (System.currentTimeMillis() / 60_000L);
+    }
+
+    /**
+     * 取修改时间和访问时间中较新的一个作为「最后使用时间」，再按距 now 的间隔分桶。
+     * 很多系统关闭了 atime 更新（noatime / relatime），所以不能只看访问时间。
+     */
+    public static int ageBucket(int modifiedMinutes, int accessMinutes, int nowMinutes) {
+        int age = nowMinutes - Math.max(modifiedMinutes, accessMinutes);
+        for (int i = 0; i < AGE_BUCKET_LIMITS.length; i++) {
+            if (age < AGE_BUCKET_LIMITS[i]) return i;
+        }
+        return AGE_BUCKET_LIMITS.length;
+    }
+
+    /**
+     * 本节点对年龄直方图的贡献：目录直接返回已合并的直方图，文件按父目录的扫描时刻临时计算。
+     * [Other Files] 等没有时间信息的节点返回 null。
+     */
+    long[] ageHistogram() {
+        if (ageBytes != null) return ageBytes;
+        if (isOther || parent == null || parent.ageBytes == null) return null;
+        long[] h = new long[AGE_BUCKET_NAMES.length];
+        h[ageBucket(modifiedMinutes, accessMinutes, parent.scanMinutes)] = size;
+        return h;
+    }
+
+    /**
+     * 把 other 的汇总统计按 sign (+1 / -1) 叠加到本节点：大小、条目数、指纹、年龄直方图、属主和扩展名统计。
+     * 删除、刷新等修改树结构的操作都通过它沿 parent 链向上修正祖先。
+     */
+    void addStats(FileNode other, int sign) {
+        size += sign * other.size;
+        entryCount += sign * (other.entryCount + 1);
+        digest += sign * other.digest;
+        long[] h = other.ageHistogram();
+        if (h != null && ageBytes != null) {
+            for (int i = 0; i < ageBytes.length; i++) ageBytes[i] += sign * h[i];
+        }
+        if (owners != null) owners.addNode(other, sign);
+        if (extensions != null) extensions.addNode(other, sign);
+    }
+
+    /**
+     * 用同一路径新得到的子树 fresh 替换本节点的内容：祖先先减去旧的汇总、再加上新的，子节点改挂到本节点下。
+     * 本节点对象保持不变，历史栈、面包屑等处的引用继续有效。刷新子树和向扫描代理按需读取子节点都走这里。
+     */
+    void replaceWith(FileNode fresh) {
+        for (FileNode p = parent; p != null; p = p.parent) {
+            p.addStats(this, -1);
+            p.addStats(fresh, 1);
+        }
+        size = fresh.size;
+        entryCount = fresh.entryCount;
+        digest = fresh.digest;
+        ageBytes = fresh.ageBytes;
+        owners = fresh.owners;
+        extensions = fresh.extensions;
+        scanMinutes = fresh.scanMinutes;
+        modifiedMinutes = fresh.modifiedMinutes;
+        accessMinutes = fresh.accessMinutes;
+        children = fresh.children;
+        for (FileNode child : children) child.parent = this;
+        isCollapsed = fresh.isCollapsed;
+    }
+
+    /**
+     * 在 FX 线程上复制出一棵与界面脱钩的树，交给后台线程写快照、历史或导出文件。
+     * 界面之后的删除、刷新只修改原树，副本的大小和指纹始终自洽。
+     * 只复制这些文件格式用到的字段；属主、扩展名、机群统计不复制。
+     */
+    FileNode frozenCopy() {
+        FileNode copy = new FileNode(name, path, isDir);
+        copy.isOther = isOther;
+        copy.isCollapsed = isCollapsed;
+        copy.isSymlink = isSymlink;
+        copy.size = size;
+        copy.entryCount = entryCount;
+        copy.digest = digest;
+        copy.modifiedMinutes = modifiedMinutes;
+        copy.accessMinutes = accessMinutes;
+        copy.scanMinutes = scanMinutes;
+        // 删除时 addStats 原地修改直方图，数组也要复制
+        copy.ageBytes = ageBytes == null ? null : ageBytes.clone();
+        copy.children = new ArrayList<>(children.size());
+        for (FileNode child : children) {
+            FileNode c = child.frozenCopy();
+            c.parent = copy;
+            copy.children.add(c);
+        }
+        return copy;
+    }
+
+    static boolean isSameOrAncestor(FileNode ancestor, FileNode node) {
+        for (FileNode p = node; p != null; p = p.parent) {
+            if (p == ancestor) return true;
+        }
+        return false;
+    }
+
+    /** 从 root 沿路径前缀向下查找目录，找不到（已被删除、归入 Other）返回 null */
+    static FileNode findByPath(FileNode root, String path) {
+        FileNode node = root;
+        while (node != null && !node.path.equals(path)) {
+            FileNode next = null;
+            for (FileNode child : node.children) {
+                if (child.isDir && !child.isOther && (path.startsWith(child.path + File.separator) || path.equals(child.path))) {
+                    next = child;
+                    break;
+                }
+            }
+            node = next;
+        }
+        return node;
     }
 }
\ No newline at end of file
@@ -0,0 +1,302 @@
+package diskanalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 机群合并：把多台主机上同一布局的扫描结果合并成一棵树，回答「哪个目录在整个机群里最占空间」。
+ * <p>
+ * 输入是一个目录下的 ncdu 导出 (*.json / *.json.gz) 和本程序的快照 (*.snap)，每个文件算一台主机，
+ * 主机名取文件名去掉扩展名。各主机按相对根目录的路径对齐：大小、条目数等按求和合并，
+ * 每个节点另外记录各主机各自的大小 (HostSizes)，详情对话框据此给出最大值和逐台明细。
+ * <p>
+ * 内存：同时只有 WORKERS 棵主机树在内存中，每棵按 ScanContext 的预算分摊构建；合并树本身也受预算约束，
+ * 每个节点的 HostSizes 随主机数增长，按 bytes() 计入预算，超过高水位时折叠最小的目录，
+ * 之后合入的主机在这些目录上只累加汇总。
+ * 读取和解析并行进行，合并到共享树这一步很快，串行执行。
+ * <p>
+ * 条目数是各主机之和：同一路径在 k 台主机上算 k 份，因此父子之间不满足扫描树「父 = 子之和」的条目数约定；
+ * 合并视图只读，不做删除和刷新，不受影响。大小满足该约定。
+ */
+public class FleetMerge {
+
+    private static final String[] SUFFIXES = {".ncdu.json.gz", ".ncdu.json", ".json.gz", ".json", ".snap"};
+    private static final int WORKERS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final String OTHER_NAME = "[Other Files]";
+
+    /**
+     * 一个节点在各主机上的大小：只记录出现过该路径的主机，按合入顺序存放。
+     * 主机名表整棵合并树共享一份。每台主机约 12 字节，上千台主机的机群里比节点本身还大。
+     */
+    static final class HostSizes {
+        final List<String> hostNames;
+        int count;
+        int[] hostIds = new int[4];
+        long[] sizes = new long[4];
+
+        HostSizes(List<String> hostNames) {
+            this.hostNames = hostNames;
+        }
+
+        void add(int host, long size) {
+            // 同一主机的 [Other Files] 可能由多处归并而来，累加到已有的记录上
+            if (count > 0 && hostIds[count - 1] == host) {
+                sizes[count - 1] += size;
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                if (hostIds[i] == host) {
+                    sizes[i] += size;
+                    return;
+                }
+            }
+            if (count == hostIds.length) {
+                hostIds = Arrays.copyOf(hostIds, count * 2);
+                sizes = Arrays.copyOf(sizes, count * 2);
+            }
+            hostIds[count] = host;
+            sizes[count++] = size;
+        }
+
+        /** 估算的堆占用：对象头和字段，加上两个数组 */
+        long bytes() {
+            return 64 + 12L * hostIds.length;
+        }
+
+        void addAll(HostSizes other) {
+            for (int i = 0; i < other.count; i++) add(other.hostIds[i], other.sizes[i]);
+        }
+
+        int maxIndex() {
+            int best = 0;
+            for (int i = 1; i < count; i++) if (sizes[i] > sizes[best]) best = i;
+            return best;
+        }
+
+        /** 按大小从大到小排好的下标 */
+        int[] ranking() {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Long.compare(sizes[b], sizes[a]));
+            int[] result = new int[count];
+            for (int i = 0; i < count; i++) result[i] = order[i];
+            return result;
+        }
+
+        String hostName(int index) {
+            return hostNames.get(hostIds[index]);
+        }
+    }
+
+    private final List<Path> inputs;
+    private final List<String> hostNames;
+    private final ScanContext ctx;
+    private final long hostBudgetBytes;
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+    private FileNode root;
+
+    public FleetMerge(List<Path> inputs) {
+        this.inputs = inputs;
+        List<String> names = new ArrayList<>(inputs.size());
+        for (Path p : inputs) names.add(hostName(p));
+        this.hostNames = Collections.unmodifiableList(names);
+        // 合并树占一半预算，其余由同时加载的主机树平分
+        long budget = ScanContext.effectiveBudgetBytes();
+        this.ctx = new ScanContext(FileNode.nowMinutes(), budget / 2);
+        this.hostBudgetBytes = budget / 2 / WORKERS;
+    }
+
+    /** 目录下所有可识别的扫描结果，按文件名排序 */
+    public static List<Path> listInputs(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> Files.isRegularFile(p) && suffixOf(p) != null).sorted().toList();
+        }
+    }
+
+    public static String hostName(Path file) {
+        String name = file.getFileName().toString();
+        String suffix = suffixOf(file);
+        return suffix == null ? name : name.substring(0, name.length() - suffix.length());
+    }
+
+    private static String suffixOf(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        for (String s : SUFFIXES) {
+            if (name.endsWith(s) && name.length() > s.length()) return s;
+        }
+        return null;
+    }
+
+    /** 读取失败而被跳过的主机及原因 */
+    public List<String> getFailures() {
+        return failures;
+    }
+
+    /**
+     * 执行合并，阻塞直到所有输入处理完。hostsDone 随每台主机完成（或失败）递增，可为 null。
+     */
+    public FileNode run(AtomicInteger hostsDone) throws InterruptedException {
+        root = new FileNode("机群 (" + inputs.size() + " 台主机)", File.separator, true);
+        initNode(root);
+
+        ExecutorService pool = Executors.newFixedThreadPool(WORKERS, r -> {
+            Thread t = new Thread(r, "fleet-merge");
+            t.setDaemon(true);
+            return t;
+        });
+        // 信号量限制「已提交但未合并」的任务数，保证同时在内存中的主机树不超过 WORKERS 棵
+        Semaphore slots = new Semaphore(WORKERS);
+        try {
+            for (int i = 0; i < inputs.size(); i++) {
+                int host = i;
+                slots.acquire();
+                pool.execute(() -> {
+                    try {
+                        FileNode tree = load(inputs.get(host));
+                        synchronized (this) {
+                            merge(root, tree, host);
+                            if (ctx.overHighWater()) ctx.collapseSmallest(root);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        e.printStackTrace();
+                        failures.add(hostNames.get(host) + ": " + e.getMessage());
+                    } finally {
+                        slots.release();
+                        if (hostsDone != null) hostsDone.incrementAndGet();
+                    }
+                });
+            }
+            slots.acquire(WORKERS); // 等待最后几台合并完成
+        } finally {
+            pool.shutdownNow();
+        }
+        finish(root);
+        return root;
+    }
+
+    private FileNode load(Path file) throws IOException {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".snap")
+                ? SnapshotIO.load(file)
+                : NcduFormat.importDump(file, null, hostBudgetBytes);
+    }
+
+    private void initNode(FileNode node) {
+        node.hosts = new HostSizes(hostNames);
+        if (node.isDir && !node.isOther) {
+            node.digest = 0;
+            node.ageBytes = new long[FileNode.AGE_BUCKET_NAMES.length];
+        }
+        ctx.nodesCreated(1);
+        ctx.bytesCharged(node.hosts.bytes());
+    }
+
+    // 记入一台主机的大小；数组扩容的部分计入预算
+    private void addHost(HostSizes hosts, int host, long size) {
+        long before = hosts.bytes();
+        hosts.add(host, size);
+        long grown = hosts.bytes() - before;
+        if (grown > 0) ctx.bytesCharged(grown);
+    }
+
+    // ★★★ 把一台主机的子树 from 合入合并树的 into：两边按名称对齐，递归向下 ★★★
+    private void merge(FileNode into, FileNode from, int host) {
+        into.size += from.size;
+        into.entryCount += from.entryCount;
+        into.digest += from.digest;
+        into.modifiedMinutes = Math.max(into.modifiedMinutes, from.modifiedMinutes);
+        into.accessMinutes = Math.max(into.accessMinutes, from.accessMinutes);
+        into.scanMinutes = Math.max(into.scanMinutes, from.scanMinutes);
+        if (into.ageBytes != null) {
+            long[] h = from.ageHistogram();
+            if (h != null) for (int i = 0; i < into.ageBytes.length; i++) into.ageBytes[i] += h[i];
+        }
+        addHost(into.hosts, host, from.size);
+
+        // 已折叠的目录只累加汇总；非目录的同名条目（这台主机上是文件）同样到此为止
+        if (!into.isDir || into.isOther || into.isCollapsed || !from.isDir) return;
+
+        if (from.isCollapsed) {
+            // 这台主机上该目录没有明细：整体计入合并树的 [Other Files]，保持「父 = 子之和」
+            FileNode other = childFor(into, null, OTHER_NAME, true, false);
+            addAggregate(other, from.size, from.entryCount + 1, from.digest, host);
+            return;
+        }
+
+        Map<String, FileNode> index = null;
+        if (from.children.size() > 8 && into.children.size() > 8) {
+            index = new HashMap<>(into.children.size() * 2);
+            for (FileNode c : into.children) index.put(c.isOther ? OTHER_NAME : c.name, c);
+        }
+        for (FileNode child : from.children) {
+            String key = child.isOther ? OTHER_NAME : child.name;
+            FileNode target = index != null ? index.get(key) : null;
+            if (target == null) {
+                target = childFor(into, index, key, child.isOther, child.isDir);
+            }
+            if (child.isOther) {
+                addAggregate(target, child.size, child.entryCount + 1, child.digest, host);
+            } else {
+                merge(target, child, host);
+            }
+        }
+    }
+
+    // 找到或创建 into 下名为 key 的子节点；index 不为 null 时新节点同时登记进去
+    private FileNode childFor(FileNode into, Map<String, FileNode> index, String key, boolean isOther, boolean isDir) {
+        if (index == null) {
+            for (FileNode c : into.children) {
+                if (isOther ? c.isOther : !c.isOther && c.name.equals(key)) return c;
+            }
+        }
+        FileNode node = isOther
+                ? new FileNode(OTHER_NAME, into.path, false)
+                : new FileNode(key, SnapshotIO.childPath(into.path, key), isDir);
+        node.isOther = isOther;
+        if (isOther) node.entryCount = -1; // 与扫描器一致：Other 的条目数为所代表条目数 - 1
+        node.parent = into;
+        initNode(node);
+        into.children.add(node);
+        if (index != null) index.put(key, node);
+        return node;
+    }
+
+    private void addAggregate(FileNode other, long size, long entries, long digest, int host) {
+        other.size += size;
+        other.entryCount += entries;
+        other.digest += digest;
+        addHost(other.hosts, host, size);
+    }
+
+    /** 合并完成后：每个目录按合计大小排序，只保留前 50 项，其余连同各主机明细归并进 [Other Files] */
+    private void finish(FileNode dir) {
+        if (!dir.isDir || dir.isOther) return;
+        dir.children.sort((a, b) -> Long.compare(b.size, a.size));
+        if (dir.children.size() > ScanContext.KEEP_CHILDREN) {
+            List<FileNode> keep = new ArrayList<>(ScanContext.KEEP_CHILDREN + 1);
+            FileNode other = new FileNode(OTHER_NAME, dir.path, false);
+            other.isOther = true;
+            other.parent = dir;
+            other.entryCount = -1;
+            other.hosts = new HostSizes(hostNames);
+            for (FileNode child : dir.children) {
+                if (keep.size() < ScanContext.KEEP_CHILDREN && !child.isOther) {
+                    keep.add(child);
+                } else {
+                    other.size += child.size;
+                    other.entryCount += child.entryCount + 1;
+                    other.digest += child.digest;
+                    other.hosts.addAll(child.hosts);
+                }
+            }
+            keep.add(other);
+            dir.children = keep;
+        }
+        for (FileNode child : dir.children) finish(child);
+    }
+}
@@ -0,0 +1,43 @@
+package diskanalyzer;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.Arrays;
+
+/**
+ * 帧时间统计：用 -Ddiskanalyzer.frameStats=true 启动后，每 5 秒在控制台输出一次
+ * 帧间隔的 P50 / P99 / 最大值，用于验证长列表滚动、树图悬停等场景是否流畅。
+ */
+public class FrameTimeMonitor extends AnimationTimer {
+
+    private static final long REPORT_INTERVAL_NANOS = 5_000_000_000L;
+
+    private final long[] samples = new long[4096];
+    private int count = 0;
+    private long last = 0;
+    private long windowStart = 0;
+
+    public static void installIfEnabled() {
+        if (Boolean.getBoolean("diskanalyzer.frameStats")) {
+            new FrameTimeMonitor().start();
+        }
+    }
+
+    @Override
+    public void handle(long now) {
+        if (last != 0 && count < samples.length) samples[count++] = now - last;
+        last = now;
+        if (windowStart == 0) windowStart = now;
+        if (now - windowStart >= REPORT_INTERVAL_NANOS && count > 0) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            System.err.printf("[frame] n=%d p50=%.2fms p99=%.2fms max=%.2fms%n",
+                    count,
+                    sorted[count / 2] / 1e6,
+                    sorted[Math.min(count - 1, (int) (count * 0.99))] / 1e6,
+                    sorted[count - 1] / 1e6);
+            count = 0;
+            windowStart = now;
+        }
+    }
+}
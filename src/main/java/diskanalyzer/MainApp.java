@@ -2,6 +2,8 @@ package diskanalyzer;
 
 import javafx.animation.*;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
 import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -16,13 +18,29 @@ import javafx.scene.shape.Circle;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.stage.Screen;
 import javafx.stage.StageStyle;
 import javafx.util.Duration;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class MainApp extends Application {
 
@@ -30,6 +48,8 @@ public class MainApp extends Application {
     private StackPane rootContainer;
 
     private Image currentBgImage;
+    // 当前壁纸内容的键（PaletteCache.keyOf），没有壁纸时为 null
+    private String currentWallpaperKey;
     private ThemeStyle currentStyle = ThemeStyle.AUTO;
 
     public static ThemeEngine.Palette currentPalette;
@@ -49,13 +69,85 @@ public class MainApp extends Application {
 
     @Override
     public void start(Stage stage) {
+        StartupTrace.mark("JavaFX 启动");
         System.setProperty("prism.order", "sw");
         System.setProperty("prism.text", "t2k");
 
         this.primaryStage = stage;
 
+        // 壁纸在后台按屏幕分辨率解码、提取配色，与启动动画并行
+        wallpaperFuture = loadWallpaperAsync(() -> {
+            try (InputStream in = getClass().getResourceAsStream("/background.png")) {
+                return in == null ? null : in.readAllBytes();
+            }
+        }, currentStyle);
+
         // 1. 显示启动动画
         showSplashScreen();
+        StartupTrace.mark("启动动画显示");
+
+        // 上次运行在撤销窗口内退出时留下的暂存条目，放到后台清除
+        StagingArea.purgeLeftovers();
+    }
+
+    // 后台解码的壁纸及其配色
+    private record Wallpaper(Image image, String key) { }
+    // 启动动画最多等壁纸这么久，之后不带壁纸进入主界面，解码完成后再换上
+    private static final Duration SPLASH_MAX_WAIT = Duration.millis(800);
+    private CompletableFuture<Wallpaper> wallpaperFuture;
+
+    /**
+     * 在后台读取并解码壁纸：先只读图片头拿到尺寸，再按「铺满屏幕所需的尺寸」解码，4K 以上的原图不会按原尺寸驻留内存。
+     * 配色（PaletteCache）也在同一线程准备好，回到 FX 线程后只需应用。source 返回 null 表示没有壁纸。
+     */
+    private CompletableFuture<Wallpaper> loadWallpaperAsync(Callable<byte[]> source, ThemeStyle style) {
+        Rectangle2D screen = Screen.getPrimary().getBounds();
+        double screenW = screen.getWidth() * Screen.getPrimary().getOutputScaleX();
+        double screenH = screen.getHeight() * Screen.getPrimary().getOutputScaleY();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                byte[] data = source.call();
+                if (data == null) return null;
+                String key = PaletteCache.keyOf(data);
+
+                double w = 0, h = 0;
+                Dimension size = imageSize(data);
+                if (size != null) {
+                    // cover 模式：按较大的缩放比铺满屏幕；原图比屏幕小时按原尺寸解码
+                    double scale = Math.max(screenW / size.width, screenH / size.height);
+                    if (scale < 1) {
+                        w = Math.ceil(size.width * scale);
+                        h = Math.ceil(size.height * scale);
+                    }
+                }
+                Image image = new Image(new ByteArrayInputStream(data), w, h, true, true);
+                if (image.isError()) return null;
+                StartupTrace.mark("壁纸解码 " + (int) image.getWidth() + "x" + (int) image.getHeight());
+                PaletteCache.palette(key, image, style, true);
+                StartupTrace.mark("配色就绪");
+                return new Wallpaper(image, key);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return null;
+            }
+        });
+    }
+
+    // 只解析图片头读取宽高，不解码像素
+    private static Dimension imageSize(byte[] data) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            return null;
+        }
     }
 
     // --- 启动动画 (优化版：渐变背景、丝滑过渡) ---
@@ -66,25 +158,18 @@ public class MainApp extends Application {
         StackPane splashRoot = new StackPane();
         splashRoot.setPrefSize(600, 400);
 
-        // 加载壁纸尝试
-        Image bgImage = null;
-        try {
-            bgImage = new Image(getClass().getResourceAsStream("/background.png"));
-        } catch (Exception e) { }
-
         // ★★★ 修改 1: 背景处理 ★★★
-        if (bgImage != null) {
-            // 如果有壁纸，显示壁纸
+        // 先用深色线性渐变 (Deep Space Gradient) 立即显示，从深灰蓝 (#141E30) 到 深金属蓝 (#243B55)；
+        // 壁纸在后台解码完成后再换上，不让图片解码挡住第一帧
+        splashRoot.setStyle("-fx-background-color: linear-gradient(to bottom right, #141E30, #243B55);");
+        wallpaperFuture.thenAcceptAsync(w -> {
+            if (w == null || !splashStage.isShowing()) return;
             BackgroundImage bg = new BackgroundImage(
-                    bgImage, BackgroundRepeat.NO_REPEAT, BackgroundRepeat.NO_REPEAT,
+                    w.image(), BackgroundRepeat.NO_REPEAT, BackgroundRepeat.NO_REPEAT,
                     BackgroundPosition.CENTER, new BackgroundSize(1.0, 1.0, true, true, false, true)
             );
             splashRoot.setBackground(new Background(bg));
-        } else {
-            // 如果没有壁纸，使用高级的深色线性渐变 (Deep Space Gradient)
-            // 从深灰蓝 (#141E30) 到 深金属蓝 (#243B55)
-            splashRoot.setStyle("-fx-background-color: linear-gradient(to bottom right, #141E30, #243B55);");
-        }
+        }, Platform::runLater);
 
         // 内容层
         VBox contentBox = new VBox(15);
@@ -138,35 +223,46 @@ public class MainApp extends Application {
                 )
         );
 
-        // 3. 淡出并进入主界面
-        FadeTransition fadeOut = new FadeTransition(Duration.millis(600), splashRoot);
+        // 3. 壁纸就绪（最多等 SPLASH_MAX_WAIT）就立即构建并显示主界面，启动动画在主界面上方淡出，不再固定等待
+        FadeTransition fadeOut = new FadeTransition(Duration.millis(300), splashRoot);
         fadeOut.setFromValue(1.0); fadeOut.setToValue(0.0);
-        fadeOut.setDelay(Duration.millis(1800));
+        fadeOut.setOnFinished(e -> splashStage.close());
 
-        fadeOut.setOnFinished(e -> {
-            splashStage.close();
+        PauseTransition maxWait = new PauseTransition(SPLASH_MAX_WAIT);
+        Runnable enterMain = () -> {
+            if (rootContainer != null) return;
+            maxWait.stop();
             initMainInterface();
-        });
+            splashStage.toFront();
+            fadeOut.play();
+        };
+        maxWait.setOnFinished(e -> enterMain.run());
+        wallpaperFuture.whenCompleteAsync((w, ex) -> enterMain.run(), Platform::runLater);
 
         spreadAnim.play();
         contentAnim.play();
-        fadeOut.play();
+        maxWait.play();
     }
 
     // --- 主程序初始化 ---
     private void initMainInterface() {
         this.rootContainer = new StackPane();
 
-        try {
-            currentBgImage = new Image(getClass().getResourceAsStream("/background.png"));
-            updateWallpaperAndTheme(currentBgImage);
-        } catch (Exception e) {
-            updateWallpaperAndTheme(null);
+        // 壁纸通常在启动动画期间已解码完成；否则先用默认配色，解码完成后再换上
+        Wallpaper wallpaper = wallpaperFuture.getNow(null);
+        if (wallpaper != null || wallpaperFuture.isDone()) {
+            updateWallpaperAndTheme(wallpaper != null ? wallpaper.image() : null, wallpaper != null ? wallpaper.key() : null);
+        } else {
+            updateWallpaperAndTheme(null, null);
+            wallpaperFuture.thenAcceptAsync(w -> {
+                if (w != null && currentBgImage == null) updateWallpaperAndTheme(w.image(), w.key());
+            }, Platform::runLater);
         }
 
         Scene scene = new Scene(rootContainer, 1024, 768);
         String cssData = "data:text/css;base64," + Base64.getEncoder().encodeToString(GLOBAL_CSS.getBytes(StandardCharsets.UTF_8));
         scene.getStylesheets().add(cssData);
+        ThemeStylesheet.apply(scene, currentPalette);
 
         primaryStage.setTitle("Disk Analyzer v1.1.0");
         primaryStage.setScene(scene);
@@ -175,17 +271,15 @@ public class MainApp extends Application {
         primaryStage.setMaximized(true);
         primaryStage.show();
 
-        // 主界面淡入
-        rootContainer.setOpacity(0);
-        FadeTransition ft = new FadeTransition(Duration.millis(600), rootContainer);
-        ft.setToValue(1);
-        ft.play();
-
         showHomeView();
+        StartupTrace.mark("主界面构建");
+        StartupTrace.markFirstFrame(scene);
+        FrameTimeMonitor.installIfEnabled();
     }
 
-    public void updateWallpaperAndTheme(Image image) {
+    public void updateWallpaperAndTheme(Image image, String wallpaperKey) {
         this.currentBgImage = image;
+        this.currentWallpaperKey = image != null ? wallpaperKey : null;
         if (image != null) {
             BackgroundImage bg = new BackgroundImage(
                     image, BackgroundRepeat.NO_REPEAT, BackgroundRepeat.NO_REPEAT,
@@ -195,55 +289,31 @@ public class MainApp extends Application {
         } else {
             rootContainer.setBackground(new Background(new BackgroundFill(Color.web("#121212"), null, null)));
         }
-        Color dominant = ThemeEngine.extractDominantColor(image);
-        ThemeEngine.Palette palette = ThemeEngine.generatePalette(dominant, currentStyle, true);
-        applyPalette(palette);
+        applyPalette(PaletteCache.palette(currentWallpaperKey, image, currentStyle, true));
     }
 
+    // 只换风格时壁纸没变，种子色和配色都从缓存取，不再分析图片
     public void updateThemeStyle(ThemeStyle style) {
         this.currentStyle = style;
-        Color dominant = ThemeEngine.extractDominantColor(currentBgImage);
-        ThemeEngine.Palette palette = ThemeEngine.generatePalette(dominant, currentStyle, true);
-        applyPalette(palette);
+        applyPalette(PaletteCache.palette(currentWallpaperKey, currentBgImage, currentStyle, true));
     }
 
+    // 配色编译成样式表挂在 Scene 上，换主题只替换这一张表，不改任何节点的内联样式
     private void applyPalette(ThemeEngine.Palette p) {
         currentPalette = p;
-        String surfaceRgba = toRgba(p.surface, 0.85);
-        String primaryRgba = toRgba(p.primary, 0.15);
-
-        String style = String.format(
-                "-fx-primary: %s; -fx-on-primary: %s; -fx-primary-container: %s; -fx-on-primary-container: %s; " +
-                        "-fx-secondary: %s; -fx-on-secondary: %s; -fx-secondary-container: %s; " +
-                        "-fx-tertiary: %s; -fx-on-tertiary: %s; " +
-                        "-fx-bg-base: %s; -fx-on-background: %s; " +
-                        "-fx-bg-surface: %s; -fx-bg-surface-solid: %s; -fx-on-surface: %s; -fx-surface-variant: %s; -fx-on-surface-variant: %s; " +
-                        "-fx-outline: %s; -fx-outline-variant: %s; " +
-                        "-fx-selection-bg: %s;",
-                ThemeEngine.toHex(p.primary), ThemeEngine.toHex(p.onPrimary), ThemeEngine.toHex(p.primaryContainer), ThemeEngine.toHex(p.onPrimaryContainer),
-                ThemeEngine.toHex(p.secondary), ThemeEngine.toHex(p.onSecondary), ThemeEngine.toHex(p.secondaryContainer),
-                ThemeEngine.toHex(p.tertiary), ThemeEngine.toHex(p.onTertiary),
-                ThemeEngine.toHex(p.background), ThemeEngine.toHex(p.onBackground),
-                surfaceRgba, ThemeEngine.toHex(p.surface), ThemeEngine.toHex(p.onSurface), ThemeEngine.toHex(p.surfaceVariant), ThemeEngine.toHex(p.onSurfaceVariant),
-                ThemeEngine.toHex(p.outline), ThemeEngine.toHex(p.outlineVariant),
-                primaryRgba
-        );
-        rootContainer.setStyle(style);
-    }
-
-    private String toRgba(Color c, double alpha) {
-        return String.format("rgba(%d, %d, %d, %.2f)", (int)(c.getRed()*255), (int)(c.getGreen()*255), (int)(c.getBlue()*255), alpha);
+        ThemeStylesheet.apply(rootContainer.getScene(), p);
     }
 
     // --- Views ---
 
     private void showHomeView() {
         StackPane homeRoot = new StackPane();
-        VBox layout = new VBox(30);
+        VBox layout = new VBox(24);
         layout.setAlignment(Pos.CENTER);
+        layout.setPadding(new Insets(30));
 
         StackPane glassCard = new StackPane(layout);
-        glassCard.setMaxSize(500, 300);
+        glassCard.setMaxSize(640, 560);
         glassCard.getStyleClass().add("glass-card");
 
         Label title = new Label("Disk Analyzer");
@@ -258,7 +328,50 @@ public class MainApp extends Application {
             if (dir != null) showLoadingView(dir);
         });
 
-        layout.getChildren().addAll(title, btnScan);
+        Button btnImport = new Button("📥 导入 ncdu 数据");
+        btnImport.getStyleClass().add("btn-secondary");
+        btnImport.setOnAction(e -> {
+            FileChooser fc = new FileChooser();
+            fc.setTitle("选择 ncdu 导出文件 (ncdu -o)");
+            fc.getExtensionFilters().addAll(
+                    new FileChooser.ExtensionFilter("ncdu 导出 (*.json, *.gz)", "*.json", "*.gz"),
+                    new FileChooser.ExtensionFilter("所有文件", "*.*"));
+            File file = fc.showOpenDialog(primaryStage);
+            if (file != null) showImportView(file);
+        });
+        Button btnAgent = new Button("🔌 连接扫描代理");
+        btnAgent.getStyleClass().add("btn-secondary");
+        btnAgent.setOnAction(e -> {
+            TextInputDialog dialog = new TextInputDialog("127.0.0.1:" + AgentProtocol.DEFAULT_PORT);
+            dialog.setTitle("连接扫描代理");
+            dialog.setHeaderText("扫描代理的地址 (host:port 或 unix:/path/to/socket)");
+            dialog.showAndWait().filter(s -> !s.isBlank()).ifPresent(this::showAgentView);
+        });
+        Button btnFleet = new Button("🗂 合并机群扫描");
+        btnFleet.getStyleClass().add("btn-secondary");
+        btnFleet.setOnAction(e -> {
+            DirectoryChooser dc = new DirectoryChooser();
+            dc.setTitle("选择存放各主机扫描结果的文件夹 (*.json, *.json.gz, *.snap)");
+            File dir = dc.showDialog(primaryStage);
+            if (dir != null) showFleetView(dir);
+        });
+        HBox secondaryActions = new HBox(12, btnImport, btnAgent, btnFleet);
+        secondaryActions.setAlignment(Pos.CENTER);
+        VBox actions = new VBox(12, btnScan, secondaryActions);
+        actions.setAlignment(Pos.CENTER);
+
+        // 卷概览：只读挂载表和容量，不遍历目录，点击某个卷直接扫描
+        Label lblVolumes = new Label("磁盘卷");
+        lblVolumes.setStyle("-fx-text-fill: -fx-text-secondary; -fx-font-size: 12px; -fx-font-weight: bold; -fx-letter-spacing: 1px;");
+        ScrollPane volumesScroll = new ScrollPane(new VolumeOverview(false, null, mount -> showLoadingView(mount.toFile())));
+        volumesScroll.setFitToWidth(true);
+        volumesScroll.setMaxHeight(280);
+        volumesScroll.setHbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
+        volumesScroll.setStyle("-fx-background-color: transparent; -fx-background: transparent;");
+        volumesScroll.getStyleClass().add("edge-to-edge");
+        VBox volumesBox = new VBox(8, lblVolumes, volumesScroll);
+
+        layout.getChildren().addAll(title, actions, volumesBox);
 
         Button btnSettings = new Button("⚙ 设置");
         btnSettings.getStyleClass().add("btn-icon");
@@ -272,7 +385,18 @@ public class MainApp extends Application {
     }
 
     // --- 设置界面 ---
+    // 设置界面第一次打开时才构建，之后复用；关闭时回到最近一次打开它的界面
+    private Node settingsView;
+    private Runnable settingsReturnAction;
+
     private void showSettingsView(Runnable returnAction) {
+        settingsReturnAction = returnAction;
+        if (settingsView == null) settingsView = createSettingsView();
+        rootContainer.getChildren().setAll(settingsView);
+    }
+
+    private Node createSettingsView() {
+        Runnable returnAction = () -> settingsReturnAction.run();
         BorderPane root = new BorderPane();
         root.setMaxSize(800, 500);
         root.getStyleClass().add("dialog-window");
@@ -288,9 +412,10 @@ public class MainApp extends Application {
         ToggleGroup group = new ToggleGroup();
         ToggleButton btnGeneral = createNavButton("外观设置", group);
         ToggleButton btnCats = createNavButton("分类管理", group);
+        ToggleButton btnScan = createNavButton("扫描设置", group);
         ToggleButton btnAbout = createNavButton("关于软件", group);
 
-        sidebar.getChildren().addAll(lblTitle, btnGeneral, btnCats, btnAbout);
+        sidebar.getChildren().addAll(lblTitle, btnGeneral, btnCats, btnScan, btnAbout);
 
         StackPane contentArea = new StackPane();
         contentArea.setPadding(new Insets(20, 40, 20, 40));
@@ -298,6 +423,7 @@ public class MainApp extends Application {
 
         btnGeneral.setOnAction(e -> { if (btnGeneral.isSelected()) contentArea.getChildren().setAll(createAppearanceContent(returnAction)); });
         btnCats.setOnAction(e -> { if (btnCats.isSelected()) contentArea.getChildren().setAll(createCategoryContent()); });
+        btnScan.setOnAction(e -> { if (btnScan.isSelected()) contentArea.getChildren().setAll(createScanContent()); });
         btnAbout.setOnAction(e -> { if (btnAbout.isSelected()) contentArea.getChildren().setAll(createAboutContent()); });
 
         btnGeneral.setSelected(true);
@@ -315,7 +441,7 @@ public class MainApp extends Application {
         StackPane mask = new StackPane(root);
         mask.getChildren().add(btnClose);
         mask.setStyle("-fx-background-color: rgba(0,0,0,0.5);");
-        rootContainer.getChildren().setAll(mask);
+        return mask;
     }
 
     private ToggleButton createNavButton(String text, ToggleGroup group) {
@@ -350,10 +476,15 @@ public class MainApp extends Application {
             fc.getExtensionFilters().add(new FileChooser.ExtensionFilter("图片文件", "*.png", "*.jpg", "*.jpeg"));
             File file = fc.showOpenDialog(primaryStage);
             if (file != null) {
-                try {
-                    updateWallpaperAndTheme(new Image(file.toURI().toString()));
+                lblPath.setText("正在载入: " + file.getName());
+                loadWallpaperAsync(() -> Files.readAllBytes(file.toPath()), currentStyle).thenAcceptAsync(w -> {
+                    if (w == null) {
+                        lblPath.setText("无法读取: " + file.getName());
+                        return;
+                    }
+                    updateWallpaperAndTheme(w.image(), w.key());
                     lblPath.setText("已选: " + file.getName());
-                } catch (Exception ex) { ex.printStackTrace(); }
+                }, Platform::runLater);
             }
         });
         wpRow.getChildren().addAll(btnChange, lblPath);
@@ -376,6 +507,61 @@ public class MainApp extends Application {
         return layout;
     }
 
+    private Node createScanContent() {
+        VBox layout = new VBox(15);
+        layout.setAlignment(Pos.TOP_LEFT);
+
+        Label header = new Label("扫描设置");
+        header.setStyle("-fx-text-fill: -fx-primary; -fx-font-size: 18px; -fx-font-weight: bold;");
+
+        Label lblBudget = new Label("扫描内存预算");
+        lblBudget.setStyle("-fx-text-fill: -fx-text-secondary; -fx-font-weight: bold;");
+
+        Label sub = new Label("扫描树接近预算时，较小的子目录会被折叠为汇总节点（总大小和条目数保持准确），进入时再重新扫描。"
+                + "当前最大堆：" + FileNode.formatSize(Runtime.getRuntime().maxMemory()));
+        sub.setWrapText(true);
+        sub.setStyle("-fx-text-fill: -fx-text-secondary; -fx-font-size: 12px;");
+
+        // 0 表示自动（最大堆的一半）
+        long[] choices = {0, 256L << 20, 512L << 20, 1L << 30, 2L << 30, 4L << 30, 8L << 30};
+        ComboBox<Long> budgetCombo = new ComboBox<>();
+        for (long c : choices) budgetCombo.getItems().add(c);
+        if (!budgetCombo.getItems().contains(ScanContext.getHeapBudgetBytes())) budgetCombo.getItems().add(ScanContext.getHeapBudgetBytes());
+        budgetCombo.setConverter(new javafx.util.StringConverter<>() {
+            @Override
+            public String toString(Long bytes) {
+                if (bytes == null) return "";
+                return bytes == 0 ? "自动（" + FileNode.formatSize(ScanContext.autoBudgetBytes()) + "）" : FileNode.formatSize(bytes);
+            }
+
+            @Override
+            public Long fromString(String string) {
+                return null;
+            }
+        });
+        budgetCombo.setValue(ScanContext.getHeapBudgetBytes());
+        budgetCombo.setPrefWidth(200);
+        budgetCombo.setOnAction(e -> {
+            if (budgetCombo.getValue() != null) ScanContext.setHeapBudgetBytes(budgetCombo.getValue());
+        });
+
+        Label lblLinks = new Label("符号链接");
+        lblLinks.setStyle("-fx-text-fill: -fx-text-secondary; -fx-font-weight: bold;");
+
+        CheckBox followLinks = new CheckBox("跟随符号链接");
+        followLinks.setStyle("-fx-text-fill: -fx-text-primary;");
+        followLinks.setSelected(ScanContext.isFollowLinks());
+        followLinks.setOnAction(e -> ScanContext.setFollowLinks(followLinks.isSelected()));
+
+        Label linksSub = new Label("默认不跟随：符号链接记为 0 字节的链接节点，指向的内容不计入。"
+                + "跟随时只进入指向扫描目录以外的链接，并按目录的文件身份去重，成环或多次指向同一目录的链接只统计一次。");
+        linksSub.setWrapText(true);
+        linksSub.setStyle("-fx-text-fill: -fx-text-secondary; -fx-font-size: 12px;");
+
+        layout.getChildren().addAll(header, lblBudget, budgetCombo, sub, lblLinks, followLinks, linksSub);
+        return layout;
+    }
+
     private Node createCategoryContent() {
         VBox layout = new VBox(15);
         layout.setAlignment(Pos.TOP_LEFT);
@@ -524,6 +710,9 @@ public class MainApp extends Application {
         pb.setPrefWidth(500);
         pb.setPrefHeight(6);
 
+        Label etaLabel = new Label("正在估算剩余时间…");
+        etaLabel.setStyle("-fx-text-fill: -fx-text-secondary; -fx-font-size: 12px;");
+
         GridPane stats = new GridPane();
         stats.setHgap(40);
         stats.setVgap(30);
@@ -542,45 +731,69 @@ public class MainApp extends Application {
         stats.add(createStatItem("耗时", valTime), 0, 1);
         stats.add(createStatItem("速度", valSpeed), 1, 1);
 
-        card.getChildren().addAll(titleLabel, pathLabel, pb, stats);
+        card.getChildren().addAll(titleLabel, pathLabel, pb, etaLabel, stats);
 
         StackPane mask = new StackPane(card);
         mask.setStyle("-fx-background-color: rgba(0,0,0,0.5);");
-        rootContainer.getChildren().setAll(mask);
+        // 扫描期间卷概览以横条形式留在顶部
+        BorderPane loadingRoot = new BorderPane(mask);
+        loadingRoot.setTop(new VolumeOverview(true, dir.toPath(), null));
+        rootContainer.getChildren().setAll(loadingRoot);
 
-        long startTime = System.currentTimeMillis();
-        AnimationTimer timer = new AnimationTimer() {
-            @Override
-            public void handle(long now) {
-                long files = DiskScanner.scannedFileCount.get();
-                long size = DiskScanner.scannedTotalSize.get();
-                String current = DiskScanner.currentScanningPath.get();
-                long elapsedMillis = System.currentTimeMillis() - startTime;
+        // 估算器要读上次的快照头和文件系统信息，在扫描线程里创建
+        AtomicReference<ScanEstimator> estimator = new AtomicReference<>();
 
-                valFiles.setText(String.format("%,d", files));
-                valSize.setText(FileNode.formatSize(size));
-                if (current != null && !current.isEmpty()) pathLabel.setText("正在扫描: " + current);
+        // ★★★ 固定 4 次/秒刷新：统计数字不需要逐帧更新，也让剩余时间的读数保持稳定 ★★★
+        long startTime = System.currentTimeMillis();
+        Timeline timer = new Timeline(new KeyFrame(Duration.millis(250), ev -> {
+            long files = DiskScanner.scannedFileCount.get();
+            long size = DiskScanner.scannedTotalSize.get();
+            String current = DiskScanner.currentScanningPath.get();
+            long elapsedMillis = System.currentTimeMillis() - startTime;
+
+            valFiles.setText(String.format("%,d", files));
+            valSize.setText(FileNode.formatSize(size));
+            if (current != null && !current.isEmpty()) pathLabel.setText("正在扫描: " + current);
+
+            long seconds = elapsedMillis / 1000;
+            valTime.setText(String.format("%02d:%02d", seconds / 60, seconds % 60));
+            if (elapsedMillis > 0) {
+                double speedBytesPerSec = (double) size / elapsedMillis * 1000;
+                valSpeed.setText(FileNode.formatSize((long)speedBytesPerSec) + "/s");
+            }
 
-                long seconds = elapsedMillis / 1000;
-                valTime.setText(String.format("%02d:%02d", seconds / 60, seconds % 60));
-                if (elapsedMillis > 0) {
-                    double speedBytesPerSec = (double) size / elapsedMillis * 1000;
-                    valSpeed.setText(FileNode.formatSize((long)speedBytesPerSec) + "/s");
+            ScanEstimator est = estimator.get();
+            if (est != null) {
+                long entries = files + Math.max(0, DiskScanner.scannedDirCount.get() - 1);
+                ScanEstimator.Estimate e = est.update(entries, size, elapsedMillis);
+                if (e.fraction() >= 0) {
+                    pb.setProgress(e.fraction());
+                    String eta = e.etaMillis() >= 0 ? "剩余约 " + ScanEstimator.formatEta(e.etaMillis()) : "正在估算剩余时间…";
+                    etaLabel.setText(String.format("%.0f%%  ·  %s  ·  可信度 %s", e.fraction() * 100, eta, e.confidence().label()));
+                } else {
+                    etaLabel.setText("没有可参照的历史扫描或磁盘信息，无法估算进度");
                 }
             }
-        };
-        timer.start();
+        }));
+        timer.setCycleCount(Animation.INDEFINITE);
+        timer.play();
 
+        ScanContext ctx = new ScanContext();
         Task<FileNode> task = new Task<>() {
             @Override
             protected FileNode call() {
-                return new ForkJoinPool().invoke(new DiskScanner(dir));
+                estimator.set(ScanEstimator.create(dir.toPath()));
+                return new ForkJoinPool().invoke(new DiskScanner(dir, ctx));
             }
         };
 
         task.setOnSucceeded(e -> {
             timer.stop();
-            showReportView(task.getValue());
+            FileNode result = task.getValue();
+            saveSnapshot(result);
+            showReportView(result);
+            reportView.setDiagnostics(ctx.getDiagnostics());
+            reportView.setScanContext(ctx);
         });
         task.setOnFailed(e -> {
             timer.stop();
@@ -589,6 +802,255 @@ public class MainApp extends Application {
         new Thread(task).start();
     }
 
+    // ★★★ 导入 ncdu 导出文件：流式解析，进度按已读字节数计算 ★★★
+    private void showImportView(File file) {
+        DiskScanner.resetStats();
+
+        VBox card = new VBox(25);
+        card.setAlignment(Pos.CENTER);
+        card.setMaxSize(600, 320);
+        card.setPadding(new Insets(40));
+        card.getStyleClass().add("glass-card");
+
+        Label titleLabel = new Label("正在导入");
+        titleLabel.setStyle("-fx-text-fill: -fx-primary; -fx-font-size: 14px; -fx-font-weight: bold; -fx-letter-spacing: 2px;");
+
+        Label pathLabel = new Label(file.getAbsolutePath());
+        pathLabel.setStyle("-fx-text-fill: -fx-text-secondary; -fx-font-family: 'Segoe UI'; -fx-font-size: 13px;");
+        pathLabel.setMaxWidth(500);
+
+        ProgressBar pb = new ProgressBar(0);
+        pb.setPrefWidth(500);
+        pb.setPrefHeight(6);
+
+        GridPane stats = new GridPane();
+        stats.setHgap(40);
+        stats.setAlignment(Pos.CENTER);
+        Label valFiles = createStatBigValue("0");
+        Label valSize = createStatBigValue("0 B");
+        stats.add(createStatItem("已读取条目", valFiles), 0, 0);
+        stats.add(createStatItem("总大小", valSize), 1, 0);
+
+        card.getChildren().addAll(titleLabel, pathLabel, pb, stats);
+        StackPane mask = new StackPane(card);
+        mask.setStyle("-fx-background-color: rgba(0,0,0,0.5);");
+        rootContainer.getChildren().setAll(mask);
+
+        AtomicLong bytesRead = new AtomicLong();
+        long length = Math.max(1, file.length());
+        Timeline timer = new Timeline(new KeyFrame(Duration.millis(250), ev -> {
+            pb.setProgress(Math.min(1.0, (double) bytesRead.get() / length));
+            valFiles.setText(String.format("%,d", DiskScanner.scannedFileCount.get() + DiskScanner.scannedDirCount.get()));
+            valSize.setText(FileNode.formatSize(DiskScanner.scannedTotalSize.get()));
+        }));
+        timer.setCycleCount(Animation.INDEFINITE);
+        timer.play();
+
+        Task<FileNode> task = new Task<>() {
+            @Override
+            protected FileNode call() throws IOException {
+                return NcduFormat.importDump(file.toPath(), bytesRead);
+            }
+        };
+        task.setOnSucceeded(e -> {
+            timer.stop();
+            showReportView(task.getValue(), true);
+        });
+        task.setOnFailed(e -> {
+            timer.stop();
+            task.getException().printStackTrace();
+            showHomeView();
+            new Alert(Alert.AlertType.ERROR, "导入失败：" + task.getException().getMessage()).show();
+        });
+        Thread t = new Thread(task, "ncdu-import");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // ★★★ 连接扫描代理：显示代理端推送的扫描进度，完成后只取根节点，其余目录在报告视图中按需读取 ★★★
+    private void showAgentView(String address) {
+        VBox card = new VBox(25);
+        card.setAlignment(Pos.CENTER);
+        card.setMaxSize(600, 320);
+        card.setPadding(new Insets(40));
+        card.getStyleClass().add("glass-card");
+
+        Label titleLabel = new Label("正在连接扫描代理");
+        titleLabel.setStyle("-fx-text-fill: -fx-primary; -fx-font-size: 14px; -fx-font-weight: bold; -fx-letter-spacing: 2px;");
+
+        Label pathLabel = new Label(address);
+        pathLabel.setStyle("-fx-text-fill: -fx-text-secondary; -fx-font-family: 'Segoe UI'; -fx-font-size: 13px;");
+        pathLabel.setMaxWidth(500);
+
+        ProgressBar pb = new ProgressBar(-1);
+        pb.setPrefWidth(500);
+        pb.setPrefHeight(6);
+
+        GridPane stats = new GridPane();
+        stats.setHgap(40);
+        stats.setAlignment(Pos.CENTER);
+        Label valFiles = createStatBigValue("0");
+        Label valSize = createStatBigValue("0 B");
+        Label valTime = createStatBigValue("00:00");
+        stats.add(createStatItem("已扫描文件", valFiles), 0, 0);
+        stats.add(createStatItem("总大小", valSize), 1, 0);
+        stats.add(createStatItem("耗时", valTime), 2, 0);
+
+        card.getChildren().addAll(titleLabel, pathLabel, pb, stats);
+        StackPane mask = new StackPane(card);
+        mask.setStyle("-fx-background-color: rgba(0,0,0,0.5);");
+        rootContainer.getChildren().setAll(mask);
+
+        Consumer<Throwable> fail = err -> Platform.runLater(() -> {
+            err.printStackTrace();
+            showHomeView();
+            new Alert(Alert.AlertType.ERROR, "扫描代理 " + address + "：" + err.getMessage()).show();
+        });
+
+        Task<AgentClient> connectTask = new Task<>() {
+            @Override
+            protected AgentClient call() throws IOException {
+                return AgentClient.connect(address);
+            }
+        };
+        connectTask.setOnSucceeded(e -> {
+            AgentClient client = connectTask.getValue();
+            titleLabel.setText("扫描代理正在扫描");
+            // 进度在读取线程上到达，切回 FX 线程更新；扫描结束时的最后一次推送触发读取根节点
+            client.subscribe(p -> Platform.runLater(() -> {
+                valFiles.setText(String.format("%,d", p.files()));
+                valSize.setText(FileNode.formatSize(p.bytes()));
+                long seconds = p.elapsedMillis() / 1000;
+                valTime.setText(String.format("%02d:%02d", seconds / 60, seconds % 60));
+                if (!p.current().isEmpty()) pathLabel.setText(address + "  ·  " + p.current());
+                if (p.failed()) {
+                    client.close();
+                    fail.accept(new IOException("扫描失败或连接已断开"));
+                } else if (p.done()) {
+                    client.status().whenComplete((status, err) -> {
+                        if (err != null) {
+                            client.close();
+                            fail.accept(err);
+                        } else {
+                            Platform.runLater(() -> showReportView(status.root(), true, client));
+                        }
+                    });
+                }
+            }));
+        });
+        connectTask.setOnFailed(e -> fail.accept(connectTask.getException()));
+        Thread t = new Thread(connectTask, "agent-connect");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // ★★★ 机群合并：并行读取一个文件夹下各主机的扫描结果，合并成一棵树 ★★★
+    private void showFleetView(File dir) {
+        List<Path> inputs;
+        try {
+            inputs = FleetMerge.listInputs(dir.toPath());
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            inputs = List.of();
+        }
+        if (inputs.isEmpty()) {
+            new Alert(Alert.AlertType.WARNING, "文件夹中没有可识别的扫描结果 (*.json, *.json.gz, *.snap)").show();
+            return;
+        }
+        DiskScanner.resetStats();
+
+        VBox card = new VBox(25);
+        card.setAlignment(Pos.CENTER);
+        card.setMaxSize(600, 320);
+        card.setPadding(new Insets(40));
+        card.getStyleClass().add("glass-card");
+
+        Label titleLabel = new Label("正在合并机群扫描结果");
+        titleLabel.setStyle("-fx-text-fill: -fx-primary; -fx-font-size: 14px; -fx-font-weight: bold; -fx-letter-spacing: 2px;");
+
+        Label pathLabel = new Label(dir.getAbsolutePath());
+        pathLabel.setStyle("-fx-text-fill: -fx-text-secondary; -fx-font-family: 'Segoe UI'; -fx-font-size: 13px;");
+        pathLabel.setMaxWidth(500);
+
+        ProgressBar pb = new ProgressBar(0);
+        pb.setPrefWidth(500);
+        pb.setPrefHeight(6);
+
+        GridPane stats = new GridPane();
+        stats.setHgap(40);
+        stats.setAlignment(Pos.CENTER);
+        Label valHosts = createStatBigValue("0 / " + inputs.size());
+        Label valFiles = createStatBigValue("0");
+        Label valSize = createStatBigValue("0 B");
+        stats.add(createStatItem("主机", valHosts), 0, 0);
+        stats.add(createStatItem("已读取条目", valFiles), 1, 0);
+        stats.add(createStatItem("总大小", valSize), 2, 0);
+
+        card.getChildren().addAll(titleLabel, pathLabel, pb, stats);
+        StackPane mask = new StackPane(card);
+        mask.setStyle("-fx-background-color: rgba(0,0,0,0.5);");
+        rootContainer.getChildren().setAll(mask);
+
+        FleetMerge merge = new FleetMerge(inputs);
+        AtomicInteger hostsDone = new AtomicInteger();
+        int hostCount = inputs.size();
+        Timeline timer = new Timeline(new KeyFrame(Duration.millis(250), ev -> {
+            pb.setProgress((double) hostsDone.get() / hostCount);
+            valHosts.setText(hostsDone.get() + " / " + hostCount);
+            valFiles.setText(String.format("%,d", DiskScanner.scannedFileCount.get() + DiskScanner.scannedDirCount.get()));
+            valSize.setText(FileNode.formatSize(DiskScanner.scannedTotalSize.get()));
+        }));
+        timer.setCycleCount(Animation.INDEFINITE);
+        timer.play();
+
+        Task<FileNode> task = new Task<>() {
+            @Override
+            protected FileNode call() throws InterruptedException {
+                return merge.run(hostsDone);
+            }
+        };
+        task.setOnSucceeded(e -> {
+            timer.stop();
+            showReportView(task.getValue(), true);
+            List<String> failures = merge.getFailures();
+            if (!failures.isEmpty()) {
+                new Alert(Alert.AlertType.WARNING, failures.size() + " 台主机的数据无法读取，已跳过：\n"
+                        + String.join("\n", failures.subList(0, Math.min(10, failures.size())))).show();
+            }
+        });
+        task.setOnFailed(e -> {
+            timer.stop();
+            task.getException().printStackTrace();
+            showHomeView();
+        });
+        Thread t = new Thread(task, "fleet-merge-main");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // 保存本次扫描快照供下次「对比」使用，并追加到历史记录：轮换是同目录 rename，写入放到后台。
+    // 报告打开后界面会删除、刷新这棵树，后台线程只读在此复制出的副本
+    private void saveSnapshot(FileNode root) {
+        try {
+            SnapshotIO.rotate(root.path);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return;
+        }
+        long timestamp = System.currentTimeMillis();
+        FileNode frozen = root.frozenCopy();
+        Thread saver = new Thread(() -> {
+            try {
+                SnapshotIO.save(frozen, SnapshotIO.latestFile(frozen.path));
+                ScanHistory.forRoot(frozen.path).append(frozen, timestamp);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }, "snapshot-saver");
+        saver.setDaemon(true);
+        saver.start();
+    }
+
     private Label createStatBigValue(String text) {
         Label l = new Label(text);
         l.setStyle("-fx-text-fill: -fx-text-primary; -fx-font-family: 'Consolas'; -fx-font-size: 22px; -fx-font-weight: bold;");
@@ -604,11 +1066,30 @@ public class MainApp extends Application {
         return box;
     }
 
+    // 报告视图按扫描结果缓存：从设置返回时复用，保留当前目录、图表样式等状态
+    private NativeReportView reportView;
+
     private void showReportView(FileNode rootNode) {
-        NativeReportView reportView = new NativeReportView(
-                rootNode, this::showHomeView,
-                () -> showSettingsView(() -> showReportView(rootNode))
-        );
+        showReportView(rootNode, false);
+    }
+
+    private void showReportView(FileNode rootNode, boolean imported) {
+        showReportView(rootNode, imported, null);
+    }
+
+    private void showReportView(FileNode rootNode, boolean imported, AgentClient agent) {
+        if (reportView == null || reportView.getRoot() != rootNode) {
+            reportView = new NativeReportView(
+                    rootNode, imported, agent, () -> {
+                        reportView = null; // 回到首页后释放扫描树
+                        if (agent != null) agent.close();
+                        showHomeView();
+                    },
+                    () -> showSettingsView(() -> showReportView(rootNode, imported, agent))
+            );
+        } else {
+            reportView.refresh(); // 设置中可能换了配色
+        }
         rootContainer.getChildren().setAll(reportView.getView());
     }
 
@@ -757,9 +1238,27 @@ public class MainApp extends Application {
         .breadcrumb-btn:hover { -fx-background-color: -fx-selection-bg; -fx-text-fill: -fx-primary; }
         .breadcrumb-last { -fx-background-color: transparent; -fx-text-fill: -fx-primary; -fx-font-weight: bold; -fx-font-size: 14px; -fx-padding: 4 8; }
         .breadcrumb-sep { -fx-text-fill: -fx-outline; -fx-font-size: 14px; -fx-padding: 4 0; -fx-alignment: center; }
+
+        .volume-row, .volume-chip { -fx-background-color: rgba(255,255,255,0.04); -fx-background-radius: 10; -fx-cursor: hand; }
+        .volume-row:hover { -fx-background-color: -fx-selection-bg; }
+        .volume-chip { -fx-cursor: default; }
+        .volume-chip:current { -fx-background-color: -fx-selection-bg; -fx-border-color: -fx-primary; -fx-border-radius: 10; }
+        .volume-bar { -fx-background-color: rgba(0,0,0,0.35); -fx-padding: 8 16; }
+        .volume-name { -fx-text-fill: -fx-text-primary; -fx-font-weight: bold; }
+        .volume-detail { -fx-text-fill: -fx-text-secondary; -fx-font-size: 11px; }
+
+        .btn-danger { -fx-background-color: #D32F2F; -fx-text-fill: white; -fx-font-weight: bold; -fx-background-radius: 6; -fx-cursor: hand; }
+        .btn-danger:hover { -fx-background-color: #B71C1C; }
+
+        .chart-pie { -fx-border-color: -fx-bg-base; -fx-border-width: 2px; }
+        .chart-color-default { -fx-pie-color: #D9E878; -fx-fill: #D9E878; }
+        .chart-color-other { -fx-pie-color: #52525B; -fx-fill: #52525B; }
+        .chart-color-growth { -fx-pie-color: #FF6B6B; -fx-fill: #FF6B6B; }
+        .chart-color-shrink { -fx-pie-color: #4ADE80; -fx-fill: #4ADE80; }
     """;
 
     public static void main(String[] args) {
+        StartupTrace.mark("main");
         launch(args);
     }
 }
\ No newline at end of file
@@ -0,0 +1,139 @@
+package diskanalyzer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+
+/**
+ * 文件扩展信息（时间、所有者、权限、MIME 类型）的异步读取服务。
+ * <p>
+ * 读取在后台线程进行，结果放在按路径索引的 LRU 缓存中。再次读取同一路径时先做一次 stat，
+ * fileKey 和修改时间都没变就直接复用缓存的所有者 / 权限 / MIME，这几项在网络盘上往往比 stat 慢得多。
+ */
+public class MetadataService {
+
+    private static final int CACHE_CAPACITY = 1024;
+    private static final int MAX_PREFETCH_BACKLOG = 32;
+
+    public record Metadata(Object fileKey, FileTime created, FileTime modified, FileTime accessed,
+                           String owner, String permissions, boolean hidden,
+                           boolean readable, boolean writable, boolean executable, String mimeType) { }
+
+    // 两个线程：一个挂起的网络路径不至于堵住其他所有请求
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "metadata-reader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final Map<String, Metadata> CACHE = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Metadata> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+
+    // 同一路径正在进行的读取，避免悬停预取和对话框重复读取
+    private static final Map<String, CompletableFuture<Metadata>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    /** 缓存中的值（可能已过期），没有则返回 null；不做任何 I/O，可以在 FX 线程调用 */
+    public static Metadata cached(String path) {
+        synchronized (CACHE) {
+            return CACHE.get(path);
+        }
+    }
+
+    /** 在后台读取（或校验缓存后复用）path 的扩展信息 */
+    public static CompletableFuture<Metadata> fetch(String path) {
+        CompletableFuture<Metadata> future = new CompletableFuture<>();
+        CompletableFuture<Metadata> existing = IN_FLIGHT.putIfAbsent(path, future);
+        if (existing != null) return existing;
+        EXECUTOR.execute(() -> {
+            try {
+                future.complete(load(path));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                IN_FLIGHT.remove(path, future);
+            }
+        });
+        return future;
+    }
+
+    /** 预取：只为缓存中没有、也没在读取的路径排队；积压过多时（慢速网络盘）直接放弃 */
+    public static void prefetch(Collection<String> paths) {
+        for (String path : paths) {
+            if (IN_FLIGHT.size() >= MAX_PREFETCH_BACKLOG) return;
+            if (cached(path) == null && !IN_FLIGHT.containsKey(path)) fetch(path);
+        }
+    }
+
+    private static Metadata load(String pathString) {
+        Path path = Path.of(pathString);
+        BasicFileAttributes basic;
+        try {
+            basic = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Metadata old = cached(pathString);
+        if (old != null && Objects.equals(old.fileKey(), basic.fileKey())
+                && Objects.equals(old.modified(), basic.lastModifiedTime())) {
+            Metadata fresh = new Metadata(old.fileKey(), basic.creationTime(), basic.lastModifiedTime(), basic.lastAccessTime(),
+                    old.owner(), old.permissions(), old.hidden(), old.readable(), old.writable(), old.executable(), old.mimeType());
+            put(pathString, fresh);
+            return fresh;
+        }
+
+        String owner = null;
+        String permissions = null;
+        try {
+            // POSIX 系统一次调用同时拿到所有者和权限位
+            PosixFileAttributes posix = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            owner = posix.owner().getName();
+            permissions = PosixFilePermissions.toString(posix.permissions());
+        } catch (UnsupportedOperationException | IOException e) {
+            try {
+                owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS).getName();
+            } catch (UnsupportedOperationException | IOException ignored) {
+            }
+        }
+
+        boolean hidden = false;
+        try {
+            hidden = Files.isHidden(path);
+        } catch (IOException ignored) {
+        }
+
+        String mime = null;
+        if (!basic.isDirectory()) {
+            try {
+                mime = Files.probeContentType(path);
+            } catch (IOException ignored) {
+            }
+        }
+
+        Metadata m = new Metadata(basic.fileKey(), basic.creationTime(), basic.lastModifiedTime(), basic.lastAccessTime(),
+                owner, permissions, hidden, Files.isReadable(path), Files.isWritable(path), Files.isExecutable(path), mime);
+        put(pathString, m);
+        return m;
+    }
+
+    private static void put(String path, Metadata m) {
+        synchronized (CACHE) {
+            CACHE.put(path, m);
+        }
+    }
+}
@@ -1,21 +1,30 @@
 package diskanalyzer;
 
 import javafx.animation.*;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
+import javafx.concurrent.Task;
+import javafx.event.EventHandler;
 import javafx.css.PseudoClass;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.Scene;
+import javafx.scene.chart.CategoryAxis;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.PieChart;
+import javafx.scene.chart.XYChart;
 import javafx.scene.control.*;
 import javafx.scene.effect.DropShadow;
 import javafx.scene.effect.Glow;
+import javafx.scene.input.ContextMenuEvent;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
+import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
@@ -25,10 +34,11 @@ import java.awt.Desktop;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 public class NativeReportView {
 
@@ -37,6 +47,24 @@ public class NativeReportView {
 
     private final Stack<FileNode> history = new Stack<>();
     private FileNode currentNode;
+    private final FileNode scanRoot;
+    private final boolean imported;
+    // 连接扫描代理时不为 null：目录的子节点在第一次进入时才向代理请求
+    private final AgentClient agent;
+
+    // ★★★ 对比视图：展示与上次扫描之间的大小变化树 ★★★
+    private boolean isDiffView = false;
+    private FileNode diffRoot;
+    private Button btnCompare;
+    // 本次扫描的诊断信息（慢目录、被跳过的路径）；导入、快照和代理视图没有
+    private ScanDiagnostics diagnostics;
+    // 产生这棵树的扫描的上下文：子树重扫与它共用内存预算。不是本次扫描的树（快照、历史记录）在第一次重扫时补建
+    private ScanContext scanContext;
+    private Button btnDiagnostics;
+    private static final Color COLOR_GROWTH = Color.web("#FF6B6B");
+    private static final Color COLOR_SHRINK = Color.web("#4ADE80");
+    private static final Color COLOR_OTHER = Color.web("#52525B");
+    private static final Color COLOR_DEFAULT = Color.web("#D9E878");
     private final Runnable onBackToHome;
     private final Runnable onOpenSettings;
 
@@ -48,10 +76,60 @@ public class NativeReportView {
     private Button btnSettings;
 
     private Button btnViewMode;
-    private boolean isCategoryMode = false;
+    private ViewMode viewMode = ViewMode.DIRECTORY;
+
+    // 视图模式：目录结构，或按某个维度把当前目录聚合成若干虚拟节点
+    private enum ViewMode {
+        DIRECTORY("📂 目录"),
+        CATEGORY("📊 类型"),
+        EXTENSION("🧩 扩展名"),
+        AGE("🕒 时间"),
+        OWNER("👤 属主");
+
+        final String label;
+
+        ViewMode(String label) {
+            this.label = label;
+        }
+
+        ViewMode next() {
+            ViewMode[] all = values();
+            return all[(ordinal() + 1) % all.length];
+        }
+    }
 
     private PieChart pieChart;
-    private ListView<FileNode> listView;
+    private StackPane chartPane;
+
+    // ★★★ 图表样式：饼图 / 矩形树图 / 多层旭日图，后两者都是单个 Canvas 绘制 ★★★
+    private TreemapView treemapView;
+    private SunburstView sunburstView;
+    private Button btnChartStyle;
+    private ChartStyle chartStyle = ChartStyle.PIE;
+
+    private enum ChartStyle {
+        PIE("◔ 饼图"),
+        TREEMAP("▦ 树图"),
+        SUNBURST("◎ 旭日");
+
+        final String label;
+
+        ChartStyle(String label) {
+            this.label = label;
+        }
+
+        ChartStyle next() {
+            ChartStyle[] all = values();
+            return all[(ordinal() + 1) % all.length];
+        }
+    }
+    private ListView<Row> listView;
+
+    // 列表 / 扇区的显示数据：render 时一次算好，滚动和悬停时只做赋值，不再格式化或解析颜色
+    private record Row(FileNode node, int index, String displayName, String sizeText, String percentText, Color color, String colorClass) { }
+    private List<Row> rows = List.of();
+    private ThemeEngine.Palette colorsPalette;
+    private Color[] paletteColors = new Color[0];
     private Label centerSizeLabel;
     private Label centerTextLabel;
 
@@ -65,10 +143,35 @@ public class NativeReportView {
     private double xOffset = 0;
     private double yOffset = 0;
 
+    // 暂存删除后的底部提示条，撤销窗口内可以撤销
+    private HBox snackbar;
+    private Label snackbarText;
+    private Button snackbarUndo;
+    private final PauseTransition snackbarHide = new PauseTransition(Duration.seconds(StagingArea.UNDO_WINDOW_SECONDS));
+
     private static final PseudoClass CHART_HOVER_PSEUDO_CLASS = PseudoClass.getPseudoClass("chart-hover");
 
     public NativeReportView(FileNode rootNode, Runnable onBackToHome, Runnable onOpenSettings) {
+        this(rootNode, false, onBackToHome, onOpenSettings);
+    }
+
+    /**
+     * @param imported 树来自导入的数据（如服务器上的 ncdu 导出）：路径不属于本机，
+     *                 打开、删除、刷新等文件系统操作全部禁用
+     */
+    public NativeReportView(FileNode rootNode, boolean imported, Runnable onBackToHome, Runnable onOpenSettings) {
+        this(rootNode, imported, null, onBackToHome, onOpenSettings);
+    }
+
+    /**
+     * @param agent 扫描代理的连接：树只含访问过的目录，其余目录标记为 isCollapsed，进入时按需读取。
+     *              代理上的路径同样不属于本机，按导入的数据处理
+     */
+    public NativeReportView(FileNode rootNode, boolean imported, AgentClient agent, Runnable onBackToHome, Runnable onOpenSettings) {
+        this.imported = imported || agent != null;
+        this.agent = agent;
         this.currentNode = rootNode;
+        this.scanRoot = rootNode;
         this.onBackToHome = onBackToHome;
         this.onOpenSettings = onOpenSettings;
 
@@ -77,8 +180,9 @@ public class NativeReportView {
 
         initUI();
         initFloatingInfo();
+        initSnackbar();
 
-        rootStack.getChildren().addAll(contentPane, floatingInfoBox);
+        rootStack.getChildren().addAll(contentPane, snackbar, floatingInfoBox);
         render(currentNode);
     }
 
@@ -86,6 +190,26 @@ public class NativeReportView {
         return rootStack;
     }
 
+    FileNode getRoot() {
+        return scanRoot;
+    }
+
+    /** 扫描完成后由 MainApp 传入，启用「诊断」按钮 */
+    void setDiagnostics(ScanDiagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+        btnDiagnostics.setDisable(diagnostics == null);
+    }
+
+    /** 扫描完成后由 MainApp 传入 */
+    void setScanContext(ScanContext scanContext) {
+        this.scanContext = scanContext;
+    }
+
+    /** 重新渲染当前目录，用于配色变化后复用本视图 */
+    void refresh() {
+        render(currentNode);
+    }
+
     private void initFloatingInfo() {
         floatName = new Label();
         floatName.setStyle("-fx-text-fill: -fx-primary; -fx-font-weight: bold; -fx-font-size: 14px;");
@@ -120,9 +244,41 @@ public class NativeReportView {
         floatingInfoBox.setPrefWidth(Region.USE_COMPUTED_SIZE);
     }
 
+    private void initSnackbar() {
+        snackbarText = new Label();
+        snackbarText.setStyle("-fx-text-fill: -fx-text-primary; -fx-font-size: 13px;");
+
+        snackbarUndo = new Button("撤销");
+        snackbarUndo.getStyleClass().add("btn-secondary");
+
+        snackbar = new HBox(16, snackbarText, snackbarUndo);
+        snackbar.setAlignment(Pos.CENTER_LEFT);
+        snackbar.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+        snackbar.setStyle("-fx-background-color: -fx-bg-surface-solid; -fx-background-radius: 8; -fx-border-color: -fx-color-border; -fx-border-radius: 8; -fx-padding: 10 16;");
+        snackbar.setEffect(new DropShadow(15, Color.BLACK));
+        snackbar.setVisible(false);
+        StackPane.setAlignment(snackbar, Pos.BOTTOM_CENTER);
+        StackPane.setMargin(snackbar, new Insets(0, 0, 24, 0));
+
+        snackbarHide.setOnFinished(e -> snackbar.setVisible(false));
+    }
+
+    private void showSnackbar(String text, Runnable onUndo) {
+        snackbarText.setText(text);
+        snackbarUndo.setVisible(onUndo != null);
+        snackbarUndo.setManaged(onUndo != null);
+        snackbarUndo.setOnAction(e -> {
+            snackbarHide.stop();
+            snackbar.setVisible(false);
+            onUndo.run();
+        });
+        snackbar.setVisible(true);
+        snackbarHide.playFromStart();
+    }
+
     private void showFloatingInfo(FileNode item) {
         floatName.setText(item.name);
-        floatSize.setText(FileNode.formatSize(item.size));
+        floatSize.setText(isDiffView ? FileNode.formatDelta(item.delta) : FileNode.formatSize(item.size));
         double p = (double)item.size / currentNode.size * 100.0;
         floatPercent.setText(String.format("%.2f%%", p));
         floatingInfoBox.autosize();
@@ -165,6 +321,24 @@ public class NativeReportView {
         btnViewMode.setPrefWidth(100);
         btnViewMode.setOnAction(e -> toggleViewMode());
 
+        btnChartStyle = createSmallButton(chartStyle.label);
+        btnChartStyle.setTooltip(new Tooltip("切换饼图 / 矩形树图 / 旭日图"));
+        btnChartStyle.setOnAction(e -> toggleChartStyle());
+
+        btnCompare = createSmallButton("📈 对比");
+        btnCompare.setTooltip(new Tooltip("与上次扫描对比"));
+        btnCompare.setDisable(imported || !Files.exists(SnapshotIO.previousFile(scanRoot.path)));
+        btnCompare.setOnAction(e -> toggleDiffView());
+
+        Button btnExport = createSmallButton("⤓ 导出");
+        btnExport.setTooltip(new Tooltip("导出为 ncdu 格式 (JSON)"));
+        btnExport.setOnAction(e -> exportNcdu());
+
+        btnDiagnostics = createSmallButton("🩺 诊断");
+        btnDiagnostics.setTooltip(new Tooltip("最慢的目录和被跳过的路径"));
+        btnDiagnostics.setDisable(true);
+        btnDiagnostics.setOnAction(e -> showDiagnosticsDialog());
+
         breadcrumbBox = new HBox(2);
         breadcrumbBox.setAlignment(Pos.CENTER_LEFT);
 
@@ -180,7 +354,7 @@ public class NativeReportView {
         btnToggleSidebar = createSmallButton("☰");
         btnToggleSidebar.setOnAction(e -> toggleSidebar());
 
-        topBar.getChildren().addAll(btnHome, btnSettings, btnUp, btnViewMode, breadcrumbScroll, btnToggleSidebar);
+        topBar.getChildren().addAll(btnHome, btnSettings, btnUp, btnViewMode, btnChartStyle, btnCompare, btnExport, btnDiagnostics, breadcrumbScroll, btnToggleSidebar);
         contentPane.setTop(topBar);
 
         listView = new ListView<>();
@@ -189,9 +363,9 @@ public class NativeReportView {
 
         listView.setOnMouseClicked(e -> {
             if (e.getButton() == MouseButton.PRIMARY) {
-                FileNode selected = listView.getSelectionModel().getSelectedItem();
-                if (!isCategoryMode && selected != null && selected.isDir && !selected.isOther) {
-                    drillDown(selected);
+                Row selected = listView.getSelectionModel().getSelectedItem();
+                if (viewMode == ViewMode.DIRECTORY && selected != null && selected.node().isDir && !selected.node().isOther) {
+                    drillDown(selected.node());
                 }
             }
         });
@@ -205,7 +379,7 @@ public class NativeReportView {
         VBox.setVgrow(listView, Priority.ALWAYS);
         contentPane.setRight(sidebar);
 
-        StackPane chartPane = new StackPane();
+        chartPane = new StackPane();
         chartPane.setPadding(new Insets(20));
         pieChart = new PieChart();
         pieChart.setLegendVisible(false);
@@ -226,6 +400,44 @@ public class NativeReportView {
 
         chartPane.getChildren().addAll(pieChart, hole, centerText);
         contentPane.setCenter(chartPane);
+
+    }
+
+    // 树图与旭日图共用悬停和打开逻辑；两者都在第一次切换到对应样式时才创建
+    private void onCanvasHover(TreemapView.HoverEvent e) {
+        if (e.node() == null) {
+            floatingInfoBox.setVisible(false);
+            return;
+        }
+        showFloatingInfo(e.node());
+        updateFloatingPos(e.screenX(), e.screenY());
+    }
+
+    private void onCanvasOpen(FileNode node) {
+        if (viewMode != ViewMode.DIRECTORY) return;
+        FileNode target = node.isDir && !node.isOther ? node : node.parent;
+        if (target != null && target != currentNode) jumpToNode(target);
+    }
+
+    private TreemapView treemapView() {
+        if (treemapView == null) {
+            treemapView = new TreemapView();
+            treemapView.setOnHover(this::onCanvasHover);
+            treemapView.setOnOpen(this::onCanvasOpen);
+            treemapView.setOnMenu(e -> createContextMenu(e.node()).show(treemapView, e.screenX(), e.screenY()));
+        }
+        return treemapView;
+    }
+
+    private SunburstView sunburstView() {
+        if (sunburstView == null) {
+            sunburstView = new SunburstView();
+            sunburstView.setOnHover(this::onCanvasHover);
+            sunburstView.setOnOpen(this::onCanvasOpen);
+            sunburstView.setOnMenu(e -> createContextMenu(e.node()).show(sunburstView, e.screenX(), e.screenY()));
+            sunburstView.setOnCenterClicked(this::goUp);
+        }
+        return sunburstView;
     }
 
     private void toggleSidebar() {
@@ -238,76 +450,199 @@ public class NativeReportView {
         timeline.play();
     }
 
+    private void toggleChartStyle() {
+        chartStyle = chartStyle.next();
+        btnChartStyle.setText(chartStyle.label);
+        contentPane.setCenter(switch (chartStyle) {
+            case PIE -> chartPane;
+            case TREEMAP -> treemapView();
+            case SUNBURST -> sunburstView();
+        });
+        render(currentNode);
+    }
+
     private void toggleViewMode() {
-        isCategoryMode = !isCategoryMode;
-        btnViewMode.setText(isCategoryMode ? "📊 类型" : "📂 目录");
+        viewMode = viewMode.next();
+        btnViewMode.setText(viewMode.label);
         render(currentNode);
     }
 
+    private void toggleDiffView() {
+        if (isDiffView) {
+            isDiffView = false;
+            btnCompare.setText("📈 对比");
+            btnViewMode.setDisable(false);
+            centerTextLabel.setText("总大小");
+            history.clear();
+            render(scanRoot);
+            return;
+        }
+
+        // 读取上次快照放到后台；对比本身只与变化部分成正比，在 FX 线程完成，避免和删除等操作并发修改树
+        btnCompare.setDisable(true);
+        Task<FileNode> loadTask = new Task<>() {
+            @Override
+            protected FileNode call() throws Exception {
+                return SnapshotIO.load(SnapshotIO.previousFile(scanRoot.path));
+            }
+        };
+        loadTask.setOnSucceeded(e -> {
+            btnCompare.setDisable(false);
+            diffRoot = SnapshotDiff.compare(loadTask.getValue(), scanRoot);
+            isDiffView = true;
+            viewMode = ViewMode.DIRECTORY;
+            btnViewMode.setText(viewMode.label);
+            btnViewMode.setDisable(true);
+            btnCompare.setText("↩ 返回");
+            centerTextLabel.setText("净变化");
+            history.clear();
+            render(diffRoot);
+        });
+        loadTask.setOnFailed(e -> {
+            btnCompare.setDisable(false);
+            loadTask.getException().printStackTrace();
+        });
+        Thread t = new Thread(loadTask, "snapshot-loader");
+        t.setDaemon(true);
+        t.start();
+    }
+
     private void render(FileNode node) {
         this.currentNode = node;
+        if (node.isCollapsed && !isDiffView) {
+            if (agent != null) fetchFromAgent(node);
+            else if (!imported) rescanSubtree(node, "该目录在扫描时被折叠以节省内存，正在重新扫描…");
+        }
         updateBreadcrumbs(node);
         btnUp.setDisable(history.isEmpty());
-        centerSizeLabel.setText(FileNode.formatSize(node.size));
-        List<String> chartColors = MainApp.currentPalette != null ? MainApp.currentPalette.chartColors : null;
-
-        List<FileNode> displayNodes;
-        if (isCategoryMode) {
-            displayNodes = generateCategoryStats(node);
-        } else {
-            displayNodes = node.children;
-        }
+        centerSizeLabel.setText(isDiffView ? FileNode.formatDelta(node.delta) : FileNode.formatSize(node.size));
+
+        List<FileNode> displayNodes = switch (viewMode) {
+            case CATEGORY -> generateCategoryStats(node);
+            case EXTENSION -> generateExtensionStats(node);
+            case AGE -> generateAgeStats(node);
+            case OWNER -> generateOwnerStats(node);
+            default -> node.children;
+        };
 
-        pieChart.getData().clear();
+        // ★★★ 一次性生成每行的显示数据（文字、百分比、颜色），列表滚动时 Cell 只做赋值 ★★★
+        Color[] colors = resolveColors(displayNodes);
+        List<Row> newRows = new ArrayList<>(displayNodes.size());
+        double total = node.size;
         for (int i = 0; i < displayNodes.size(); i++) {
             FileNode child = displayNodes.get(i);
-            PieChart.Data data = new PieChart.Data(child.name, child.size);
-            pieChart.getData().add(data);
-
-            String color;
-            if (child.isOther) color = "#52525B";
-            else if (chartColors != null && !chartColors.isEmpty()) color = chartColors.get(i % chartColors.size());
-            else color = "#D9E878";
-
-            Node sliceNode = data.getNode();
-            sliceNode.setStyle("-fx-pie-color: " + color + "; -fx-border-color: -fx-bg-base; -fx-border-width: 2px;");
-
-            int index = i;
+            String sizeText = isDiffView ? FileNode.formatDelta(child.delta) : FileNode.formatSize(child.size);
+            String percentText = total > 0 ? String.format("%.1f%%", child.size / total * 100.0) : "0.0%";
+            String displayName = child.isSymlink ? "🔗 " + child.name : child.name;
+            newRows.add(new Row(child, i, displayName, sizeText, percentText, colors[i], colorClass(child, i)));
+        }
+        rows = newRows;
 
-            sliceNode.setOnMouseEntered(e -> {
-                highlightSlice(sliceNode, true);
-                listView.getSelectionModel().select(index);
-                listView.scrollTo(index);
-                showFloatingInfo(child);
-            });
+        pieChart.getData().clear();
+        if (chartStyle != ChartStyle.PIE) {
+            FileNode key = node;
+            if (viewMode != ViewMode.DIRECTORY) {
+                // 聚合视图没有真实目录可作缓存键，用一个临时节点承载
+                key = new FileNode(node.name, node.path, true);
+                key.size = node.size;
+                key.children = displayNodes;
+            }
+            if (chartStyle == ChartStyle.TREEMAP) treemapView().show(key, displayNodes, colors);
+            else sunburstView().show(key, displayNodes, colors);
+        } else {
+            List<PieChart.Data> slices = new ArrayList<>(rows.size());
+            for (Row row : rows) slices.add(new PieChart.Data(row.node().name, row.node().size));
+            pieChart.getData().setAll(slices);
+
+            // 扇区共用同一组事件处理器，通过 userData 中的下标找到对应行；右键菜单在打开时才创建
+            for (int i = 0; i < slices.size(); i++) {
+                Node sliceNode = slices.get(i).getNode();
+                sliceNode.setUserData(i);
+                sliceNode.getStyleClass().add(rows.get(i).colorClass());
+                sliceNode.setOnMouseEntered(sliceEnterHandler);
+                sliceNode.setOnMouseExited(sliceExitHandler);
+                sliceNode.setOnMouseMoved(sliceMoveHandler);
+                sliceNode.setOnMouseClicked(sliceClickHandler);
+                sliceNode.setOnContextMenuRequested(sliceMenuHandler);
+            }
+        }
+        listView.setItems(FXCollections.observableArrayList(rows));
+    }
 
-            sliceNode.setOnMouseExited(e -> {
-                highlightSlice(sliceNode, false);
-                listView.getSelectionModel().clearSelection();
-                floatingInfoBox.setVisible(false);
-            });
+    private Row sliceRow(javafx.event.Event e) {
+        Object index = ((Node) e.getSource()).getUserData();
+        return index instanceof Integer i && i < rows.size() ? rows.get(i) : null;
+    }
 
-            sliceNode.setOnMouseMoved(e -> updateFloatingPos(e.getScreenX(), e.getScreenY()));
+    private final EventHandler<MouseEvent> sliceEnterHandler = e -> {
+        Row row = sliceRow(e);
+        if (row == null) return;
+        highlightSlice((Node) e.getSource(), true);
+        listView.getSelectionModel().select(row.index());
+        listView.scrollTo(row.index());
+        showFloatingInfo(row.node());
+    };
+
+    private final EventHandler<MouseEvent> sliceExitHandler = e -> {
+        highlightSlice((Node) e.getSource(), false);
+        listView.getSelectionModel().clearSelection();
+        floatingInfoBox.setVisible(false);
+    };
 
-            sliceNode.setOnMouseClicked(e -> {
-                if (e.getButton() == MouseButton.PRIMARY) {
-                    if (!isCategoryMode && child.isDir && !child.isOther) {
-                        drillDown(child);
-                    }
-                }
-            });
+    private final EventHandler<MouseEvent> sliceMoveHandler = e -> updateFloatingPos(e.getScreenX(), e.getScreenY());
 
-            ContextMenu contextMenu = createContextMenu(child);
-            sliceNode.setOnContextMenuRequested(e -> {
-                contextMenu.show(sliceNode, e.getScreenX(), e.getScreenY());
-            });
+    private final EventHandler<MouseEvent> sliceClickHandler = e -> {
+        Row row = sliceRow(e);
+        if (row != null && e.getButton() == MouseButton.PRIMARY
+                && viewMode == ViewMode.DIRECTORY && row.node().isDir && !row.node().isOther) {
+            drillDown(row.node());
+        }
+    };
+
+    private final EventHandler<ContextMenuEvent> sliceMenuHandler = e -> {
+        Row row = sliceRow(e);
+        if (row != null) createContextMenu(row.node()).show((Node) e.getSource(), e.getScreenX(), e.getScreenY());
+    };
+
+    // 按下标取色：调色板颜色只在调色板变化时解析一次
+    private Color[] resolveColors(List<FileNode> nodes) {
+        ThemeEngine.Palette palette = MainApp.currentPalette;
+        if (palette != colorsPalette) {
+            colorsPalette = palette;
+            List<String> chartColors = palette != null ? palette.chartColors : List.of();
+            paletteColors = new Color[chartColors.size()];
+            for (int i = 0; i < paletteColors.length; i++) paletteColors[i] = Color.web(chartColors.get(i));
+        }
+        Color[] result = new Color[nodes.size()];
+        for (int i = 0; i < result.length; i++) {
+            FileNode child = nodes.get(i);
+            if (isDiffView) result[i] = child.delta > 0 ? COLOR_GROWTH : COLOR_SHRINK;
+            else if (child.isOther) result[i] = COLOR_OTHER;
+            else if (paletteColors.length > 0) result[i] = paletteColors[i % paletteColors.length];
+            else result[i] = COLOR_DEFAULT;
         }
-        listView.setItems(FXCollections.observableArrayList(displayNodes));
+        return result;
+    }
+
+    // 与 resolveColors 一一对应的样式类，颜色本身由 ThemeStylesheet / 全局样式表给出
+    private String colorClass(FileNode child, int i) {
+        if (isDiffView) return child.delta > 0 ? "chart-color-growth" : "chart-color-shrink";
+        if (child.isOther) return "chart-color-other";
+        if (paletteColors.length > 0) return ThemeStylesheet.chartClass(i % paletteColors.length);
+        return "chart-color-default";
     }
 
     private List<FileNode> generateCategoryStats(FileNode root) {
         Map<String, Long> categorySizes = new HashMap<>();
-        aggregateFileStats(root, categorySizes);
+        if (root.extensions != null) {
+            // 由扫描时合并好的扩展名表归类：不遍历子树，也包括被归并进 [Other Files] 和折叠目录里的文件
+            for (ExtensionTable.Entry e : root.extensions.top(Integer.MAX_VALUE)) {
+                String cat = e.id() == ExtensionTable.OVERFLOW ? "其他文件" : getCategoryByExtension(ExtensionTable.bareName(e.id()));
+                categorySizes.merge(cat, e.bytes(), Long::sum);
+            }
+        } else {
+            aggregateFileStats(root, categorySizes);
+        }
 
         List<FileNode> result = new ArrayList<>();
         for (Map.Entry<String, Long> entry : categorySizes.entrySet()) {
@@ -320,6 +655,65 @@ public class NativeReportView {
         return result;
     }
 
+    // ★★★ 数据年龄：直接读取扫描时合并好的直方图，无需再遍历子树 ★★★
+    private List<FileNode> generateAgeStats(FileNode root) {
+        List<FileNode> result = new ArrayList<>();
+        if (root.ageBytes == null) return result;
+        for (int i = 0; i < root.ageBytes.length; i++) {
+            if (root.ageBytes[i] <= 0) continue;
+            FileNode ageNode = new FileNode(FileNode.AGE_BUCKET_NAMES[i], root.path, false);
+            ageNode.size = root.ageBytes[i];
+            result.add(ageNode);
+        }
+        return result;
+    }
+
+    // ★★★ 属主：同样直接读取扫描时合并好的属主表；导入的数据和快照没有属主信息 ★★★
+    private List<FileNode> generateOwnerStats(FileNode root) {
+        List<FileNode> result = new ArrayList<>();
+        OwnerTable.Usage u = root.owners;
+        if (u == null) return result;
+        for (int i = 0; i < u.count; i++) {
+            if (u.bytes[i] <= 0 && u.files[i] <= 0) continue; // 删除后清零的属主
+            FileNode ownerNode = new FileNode(String.format("%s（%,d 个文件）", OwnerTable.name(u.ids[i]), u.files[i]), root.path, false);
+            ownerNode.size = u.bytes[i];
+            ownerNode.entryCount = u.files[i] - 1;
+            result.add(ownerNode);
+        }
+        result.sort((a, b) -> Long.compare(b.size, a.size));
+        return result;
+    }
+
+    // ★★★ 扩展名排行：读取扫描时合并好的扩展名表，前 EXTENSION_TOP 个之外的归并为一项 ★★★
+    private static final int EXTENSION_TOP = 30;
+
+    private List<FileNode> generateExtensionStats(FileNode root) {
+        List<FileNode> result = new ArrayList<>();
+        if (root.extensions == null) return result;
+        List<ExtensionTable.Entry> all = root.extensions.top(Integer.MAX_VALUE);
+        long restBytes = 0, restFiles = 0;
+        for (int i = 0; i < all.size(); i++) {
+            ExtensionTable.Entry e = all.get(i);
+            if (i >= EXTENSION_TOP) {
+                restBytes += e.bytes();
+                restFiles += e.files();
+                continue;
+            }
+            FileNode extNode = new FileNode(String.format("%s（%,d 个文件）", ExtensionTable.name(e.id()), e.files()), root.path, false);
+            extNode.size = e.bytes();
+            extNode.entryCount = e.files() - 1;
+            result.add(extNode);
+        }
+        if (restFiles > 0) {
+            FileNode rest = new FileNode(String.format("其余 %d 种扩展名（%,d 个文件）", all.size() - EXTENSION_TOP, restFiles), root.path, false);
+            rest.size = restBytes;
+            rest.entryCount = restFiles - 1;
+            rest.isOther = true;
+            result.add(rest);
+        }
+        return result;
+    }
+
     private void aggregateFileStats(FileNode node, Map<String, Long> stats) {
         if (node.isDir) {
             for (FileNode child : node.children) {
@@ -337,7 +731,13 @@ public class NativeReportView {
     private String getCategory(String filename) {
         int dotIndex = filename.lastIndexOf('.');
         if (dotIndex == -1) return "未知类型";
-        String ext = filename.substring(dotIndex + 1).toLowerCase();
+        return getCategoryByExtension(filename.substring(dotIndex + 1).toLowerCase());
+    }
+
+    // ext 为不带点的小写扩展名；复合扩展名（log.gz）按最后一段归类
+    private String getCategoryByExtension(String ext) {
+        if (ext.isEmpty()) return "未知类型";
+        ext = ext.substring(ext.lastIndexOf('.') + 1);
 
         // 1. 先查用户自定义
         for (Map.Entry<String, List<String>> entry : MainApp.FILE_CATEGORIES.entrySet()) {
@@ -375,15 +775,8 @@ public class NativeReportView {
             boolean isLast = (i == chain.size() - 1);
 
             Button b = new Button(n.name);
-            b.setStyle(isLast
-                    ? "-fx-background-color: transparent; -fx-text-fill: -fx-primary; -fx-font-weight: bold; -fx-font-size: 14px;"
-                    : "-fx-background-color: transparent; -fx-text-fill: -fx-text-secondary; -fx-font-size: 14px; -fx-cursor: hand;");
-
-            if (!isLast) {
-                b.setOnMouseEntered(e -> b.setStyle("-fx-background-color: rgba(255,255,255,0.1); -fx-text-fill: -fx-primary; -fx-font-size: 14px; -fx-background-radius: 4; -fx-cursor: hand;"));
-                b.setOnMouseExited(e -> b.setStyle("-fx-background-color: transparent; -fx-text-fill: -fx-text-secondary; -fx-font-size: 14px; -fx-cursor: hand;"));
-                b.setOnAction(e -> jumpToNode(n));
-            }
+            b.getStyleClass().add(isLast ? "breadcrumb-last" : "breadcrumb-btn");
+            if (!isLast) b.setOnAction(e -> jumpToNode(n));
 
             breadcrumbBox.getChildren().add(b);
 
@@ -423,12 +816,115 @@ public class NativeReportView {
     }
 
     private void highlightChartFromList(int index, boolean active) {
+        if (chartStyle == ChartStyle.TREEMAP) {
+            treemapView.highlightItem(active ? index : -1);
+            return;
+        }
+        if (chartStyle == ChartStyle.SUNBURST) {
+            sunburstView.highlightItem(active ? index : -1);
+            return;
+        }
         if (index >= 0 && index < pieChart.getData().size()) {
             Node node = pieChart.getData().get(index).getNode();
             highlightSlice(node, active);
         }
     }
 
+    // 正在后台重新扫描（或向扫描代理请求）的目录，避免重复提交
+    private final Set<FileNode> rescanning = new HashSet<>();
+    // 所有报告视图的子树重扫共用一个线程池；工作线程是守护线程，空闲后自行退出
+    private static final ForkJoinPool RESCAN_POOL = new ForkJoinPool();
+
+    // ★★★ 只重新扫描一棵子树：结果替换原节点的子节点，大小变化沿 parent 链修正到所有祖先 ★★★
+    // 扫描时因内存预算被折叠的目录在进入时也走这里
+    private void rescanSubtree(FileNode node, String startText) {
+        if (!rescanning.add(node)) return;
+        showSnackbar(startText, null);
+
+        if (scanContext == null) scanContext = ScanContext.forResidentTree(scanRoot);
+        ScanContext ctx = scanContext.forSubtree();
+        Task<FileNode> task = new Task<>() {
+            @Override
+            protected FileNode call() {
+                return RESCAN_POOL.invoke(new DiskScanner(new File(node.path), ctx));
+            }
+        };
+        task.setOnSucceeded(e -> {
+            rescanning.remove(node);
+            FileNode fresh = task.getValue();
+            long change = fresh.size - node.size;
+            boolean affected = FileNode.isSameOrAncestor(currentNode, node) || FileNode.isSameOrAncestor(node, currentNode);
+            String currentPath = currentNode.path;
+            boolean insideRefreshed = currentNode != node && FileNode.isSameOrAncestor(node, currentNode);
+            // 祖先的大小、条目数、指纹、年龄直方图一并修正；被替换掉的旧节点从预算中扣除
+            ctx.subtreeReplaced(node);
+            node.replaceWith(fresh);
+
+            // 只有当前显示的目录与这棵子树有关时才重新渲染
+            if (affected) {
+                if (insideRefreshed) {
+                    // 当前目录在被替换的子树里：按路径找到新树中的对应目录，找不到（已被删除）就停在刷新的目录
+                    FileNode target = FileNode.findByPath(node, currentPath);
+                    currentNode = null;
+                    jumpToNode(target != null ? target : node);
+                } else {
+                    render(currentNode);
+                }
+            }
+            showSnackbar("已刷新 " + node.name + "（" + (change == 0 ? "大小未变" : FileNode.formatDelta(change)) + "）", null);
+        });
+        task.setOnFailed(e -> {
+            rescanning.remove(node);
+            task.getException().printStackTrace();
+            showSnackbar("重新扫描失败：" + node.path, null);
+        });
+        Thread t = new Thread(task, "subtree-rescan");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // ★★★ 向扫描代理读取一个目录的子节点：回复带着代理端最新的汇总，并入本地树的方式与刷新子树相同 ★★★
+    private void fetchFromAgent(FileNode node) {
+        if (!rescanning.add(node)) return;
+        agent.children(node.path, ScanContext.KEEP_CHILDREN).whenComplete((fresh, err) -> Platform.runLater(() -> {
+            rescanning.remove(node);
+            if (err != null) {
+                err.printStackTrace();
+                showSnackbar("无法从扫描代理读取 " + node.name + "：" + err.getMessage(), null);
+                return;
+            }
+            node.replaceWith(fresh);
+            if (FileNode.isSameOrAncestor(currentNode, node) || FileNode.isSameOrAncestor(node, currentNode)) render(currentNode);
+        }));
+    }
+
+    // ★★★ 导出为 ncdu 格式：后台边遍历边写，不在内存中拼接整棵树；导出期间仍可删除、刷新，所以写的是此刻复制出的副本 ★★★
+    private void exportNcdu() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("导出为 ncdu 格式");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("ncdu JSON (*.json)", "*.json"));
+        chooser.setInitialFileName(scanRoot.name.replaceAll("[\\\\/:*?\"<>|]", "_") + ".ncdu.json");
+        File file = chooser.showSaveDialog(rootStack.getScene().getWindow());
+        if (file == null) return;
+
+        FileNode frozen = scanRoot.frozenCopy();
+        Task<Void> task = new Task<>() {
+            @Override
+            protected Void call() throws IOException {
+                NcduFormat.export(frozen, file.toPath());
+                return null;
+            }
+        };
+        task.setOnSucceeded(e -> showSnackbar("已导出到 " + file.getAbsolutePath(), null));
+        task.setOnFailed(e -> {
+            task.getException().printStackTrace();
+            showSnackbar("导出失败：" + task.getException().getMessage(), null);
+        });
+        Thread t = new Thread(task, "ncdu-export");
+        t.setDaemon(true);
+        t.start();
+    }
+
     private void drillDown(FileNode node) {
         history.push(currentNode);
         render(node);
@@ -444,7 +940,7 @@ public class NativeReportView {
     private ContextMenu createContextMenu(FileNode node) {
         ContextMenu cm = new ContextMenu();
 
-        boolean isRealNode = !isCategoryMode && !node.name.equals("[Other Files]");
+        boolean isRealNode = !imported && !isDiffView && viewMode == ViewMode.DIRECTORY && !node.name.equals("[Other Files]");
 
         if (isRealNode) {
             MenuItem openItem = new MenuItem("📂 在资源管理器中打开");
@@ -456,6 +952,25 @@ public class NativeReportView {
         detailsItem.setOnAction(e -> showDetailsDialog(node));
         cm.getItems().add(detailsItem);
 
+        if (isRealNode && node.isDir) {
+            MenuItem trendItem = new MenuItem("📈 历史趋势");
+            trendItem.setOnAction(e -> showHistoryDialog(node));
+            cm.getItems().add(trendItem);
+        }
+
+        if (isRealNode && node.isDir) {
+            MenuItem refreshItem = new MenuItem("🔄 刷新");
+            refreshItem.setOnAction(e -> rescanSubtree(node, "正在重新扫描 " + node.name + "…"));
+            cm.getItems().add(refreshItem);
+        }
+
+        if (isRealNode && node.parent != null) {
+            MenuItem stageItem = new MenuItem("📦 移至暂存区");
+            stageItem.setOnAction(e -> stageDelete(node));
+            cm.getItems().add(new SeparatorMenuItem());
+            cm.getItems().add(stageItem);
+        }
+
         if (isRealNode) {
             MenuItem deleteItem = new MenuItem("🗑 删除");
             deleteItem.setStyle("-fx-text-fill: #FF6B6B;");
@@ -505,28 +1020,6 @@ public class NativeReportView {
         root.setAlignment(Pos.TOP_LEFT);
         root.getStyleClass().add("glass-dialog");
 
-        if (MainApp.currentPalette != null) {
-            ThemeEngine.Palette p = MainApp.currentPalette;
-            int r = (int)(p.surface.getRed()*255);
-            int g = (int)(p.surface.getGreen()*255);
-            int b = (int)(p.surface.getBlue()*255);
-            String surfaceRgb = r + "," + g + "," + b;
-
-            String style = String.format(
-                    "-fx-bg-surface-solid: rgb(%s); " +
-                            "-fx-bg-surface: rgba(%s, 0.95); " +
-                            "-fx-text-primary: %s; " +
-                            "-fx-text-secondary: %s; " +
-                            "-fx-primary: %s; " +
-                            "-fx-color-border: rgba(255,255,255,0.1);",
-                    surfaceRgb, surfaceRgb,
-                    ThemeEngine.toHex(p.textPrimary),
-                    ThemeEngine.toHex(p.textSecondary),
-                    ThemeEngine.toHex(p.primary)
-            );
-            root.setStyle(style);
-        }
-
         root.setOnMousePressed(event -> {
             xOffset = event.getSceneX();
             yOffset = event.getSceneY();
@@ -563,16 +1056,7 @@ public class NativeReportView {
         btnCancel.setOnAction(e -> dialog.close());
 
         Button btnDelete = new Button("删除");
-        btnDelete.setStyle("""
-            -fx-background-color: #D32F2F; 
-            -fx-text-fill: white; 
-            -fx-font-weight: bold; 
-            -fx-background-radius: 6;
-            -fx-cursor: hand;
-        """);
-        btnDelete.setOnMouseEntered(e -> btnDelete.setStyle("-fx-background-color: #B71C1C; -fx-text-fill: white; -fx-font-weight: bold; -fx-background-radius: 6; -fx-cursor: hand;"));
-        btnDelete.setOnMouseExited(e -> btnDelete.setStyle("-fx-background-color: #D32F2F; -fx-text-fill: white; -fx-font-weight: bold; -fx-background-radius: 6; -fx-cursor: hand;"));
-
+        btnDelete.getStyleClass().add("btn-danger");
         btnDelete.setPrefWidth(80);
         btnDelete.setOnAction(e -> {
             performDelete(node);
@@ -598,38 +1082,146 @@ public class NativeReportView {
         st.setFromX(0.9); st.setFromY(0.9); st.setToX(1); st.setToY(1); st.play();
     }
 
-    private void performDelete(FileNode node) {
+    // ★★★ 暂存删除：同一文件系统内 rename 到暂存目录，树立即更新，撤销窗口过后在后台清除 ★★★
+    private void stageDelete(FileNode node) {
+        StagingArea.Staged staged;
         try {
-            Path path = Path.of(node.path);
-            if (node.isDir) {
-                try (Stream<Path> walk = Files.walk(path)) {
-                    walk.sorted(Comparator.reverseOrder())
-                            .map(Path::toFile)
-                            .forEach(File::delete);
-                }
-            } else {
-                Files.delete(path);
-            }
-            updateTreeAfterDelete(node);
+            staged = StagingArea.stage(Path.of(node.path));
         } catch (IOException e) {
+            // 无法原子移动（跨设备、权限等），改走普通删除
             e.printStackTrace();
+            confirmAndDelete(node);
+            return;
         }
-    }
 
-    private void updateTreeAfterDelete(FileNode deletedNode) {
-        FileNode parent = deletedNode.parent;
-        if (parent != null) {
-            parent.children.remove(deletedNode);
-            long sizeToRemove = deletedNode.size;
-            FileNode p = parent;
-            while (p != null) {
-                p.size -= sizeToRemove;
-                p = p.parent;
+        FileNode parent = node.parent;
+        for (FileNode p = parent; p != null; p = p.parent) p.addStats(node, -1);
+        parent.children.remove(node);
+        render(currentNode);
+
+        staged.schedulePurge(null);
+        showSnackbar("已移至暂存区：" + node.name + "（释放 " + FileNode.formatSize(node.size) + "）", () -> {
+            try {
+                if (!staged.undo()) {
+                    showSnackbar("清除已开始，无法撤销", null);
+                    return;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                showSnackbar("撤销失败：" + e.getMessage(), null);
+                return;
             }
+            // 按大小插回原位置，保持子节点降序
+            int pos = 0;
+            while (pos < parent.children.size() && parent.children.get(pos).size >= node.size) pos++;
+            parent.children.add(pos, node);
+            for (FileNode p = parent; p != null; p = p.parent) p.addStats(node, 1);
             render(currentNode);
-        } else {
-            onBackToHome.run();
+        });
+    }
+
+    // ★★★ 删除放到后台流水线执行：进度、已释放空间、取消和失败列表都显示在这个对话框里 ★★★
+    private void performDelete(FileNode node) {
+        DeletionPipeline pipeline = new DeletionPipeline(node, () -> render(currentNode));
+
+        Stage dialog = new Stage();
+        dialog.initOwner(rootStack.getScene().getWindow());
+        dialog.initStyle(StageStyle.TRANSPARENT);
+        dialog.initModality(Modality.APPLICATION_MODAL);
+
+        VBox root = new VBox(16);
+        root.setPadding(new Insets(30));
+        root.setPrefWidth(460);
+        root.getStyleClass().add("glass-dialog");
+
+        root.setOnMousePressed(event -> {
+            xOffset = event.getSceneX();
+            yOffset = event.getSceneY();
+        });
+        root.setOnMouseDragged(event -> {
+            dialog.setX(event.getScreenX() - xOffset);
+            dialog.setY(event.getScreenY() - yOffset);
+        });
+
+        Label titleLabel = new Label("正在删除 " + node.name);
+        titleLabel.setStyle("-fx-text-fill: -fx-text-primary; -fx-font-size: 18px; -fx-font-weight: bold;");
+        titleLabel.setMaxWidth(400);
+
+        ProgressBar progressBar = new ProgressBar(0);
+        progressBar.setMaxWidth(Double.MAX_VALUE);
+        progressBar.progressProperty().bind(pipeline.progressProperty());
+
+        Label progressLabel = new Label("准备中...");
+        progressLabel.setStyle("-fx-text-fill: -fx-text-secondary; -fx-font-size: 12px;");
+        progressLabel.textProperty().bind(pipeline.messageProperty());
+
+        ListView<String> failureList = new ListView<>();
+        failureList.setPrefHeight(160);
+        failureList.setVisible(false);
+        failureList.setManaged(false);
+
+        HBox btnBox = new HBox(15);
+        btnBox.setAlignment(Pos.CENTER_RIGHT);
+
+        Button btnStop = new Button("取消");
+        btnStop.getStyleClass().add("btn-secondary");
+        btnStop.setPrefWidth(80);
+        btnStop.setOnAction(e -> {
+            pipeline.requestStop();
+            btnStop.setDisable(true);
+            btnStop.setText("正在取消...");
+        });
+        btnBox.getChildren().add(btnStop);
+
+        root.getChildren().addAll(titleLabel, progressBar, progressLabel, failureList, btnBox);
+
+        pipeline.setOnSucceeded(e -> {
+            DeletionPipeline.Result result = pipeline.getValue();
+            titleLabel.setText(result.cancelled() ? "删除已取消" : result.failureCount() > 0 ? "删除未全部完成" : "删除完成");
+            progressLabel.textProperty().unbind();
+            progressLabel.setText("共释放 " + FileNode.formatSize(result.freedBytes()) + "，删除 "
+                    + String.format("%,d", result.deletedEntries()) + " 项"
+                    + (result.failureCount() > 0 ? "，" + String.format("%,d", result.failureCount()) + " 项失败" : ""));
+            if (!result.failures().isEmpty()) {
+                List<String> lines = new ArrayList<>(result.failures().size());
+                for (DeletionPipeline.Failure f : result.failures()) lines.add(f.path() + "  —  " + f.reason());
+                failureList.setItems(FXCollections.observableArrayList(lines));
+                failureList.setVisible(true);
+                failureList.setManaged(true);
+                dialog.sizeToScene();
+            }
+            btnStop.setDisable(false);
+            btnStop.setText("关闭");
+            btnStop.setOnAction(ev -> {
+                dialog.close();
+                if (result.targetRemoved() && node.parent == null) onBackToHome.run();
+            });
+        });
+        pipeline.setOnFailed(e -> {
+            pipeline.getException().printStackTrace();
+            titleLabel.setText("删除出错");
+            progressLabel.textProperty().unbind();
+            progressLabel.setText(String.valueOf(pipeline.getException().getMessage()));
+            btnStop.setDisable(false);
+            btnStop.setText("关闭");
+            btnStop.setOnAction(ev -> dialog.close());
+        });
+        // 删除进行中不能直接关掉窗口，只能取消
+        dialog.setOnCloseRequest(e -> {
+            if (pipeline.isRunning()) e.consume();
+        });
+
+        Scene scene = new Scene(root);
+        if (rootStack.getScene() != null) {
+            scene.getStylesheets().setAll(rootStack.getScene().getStylesheets());
         }
+        scene.setFill(Color.TRANSPARENT);
+        dialog.setScene(scene);
+        dialog.show();
+
+        Thread t = new Thread(pipeline, "deletion-pipeline");
+        t.setDaemon(true);
+        t.start();
     }
 
     private void showDetailsDialog(FileNode node) {
@@ -638,56 +1230,16 @@ public class NativeReportView {
         dialog.initModality(Modality.APPLICATION_MODAL);
         dialog.initStyle(StageStyle.TRANSPARENT);
 
-        String createdTime = "未知";
-        String lastAccess = "未知";
-        String lastModified = "未知";
-        String isHidden = "否";
-        String canRead = "否";
-        String canWrite = "否";
-        String canExec = "否";
-        String type = node.isDir ? "文件夹" : "文件";
-
-        if (!node.isOther) {
-            try {
-                Path path = Path.of(node.path);
-                File file = path.toFile();
-                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
-                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-                createdTime = sdf.format(new Date(attrs.creationTime().toMillis()));
-                lastAccess = sdf.format(new Date(attrs.lastAccessTime().toMillis()));
-                lastModified = sdf.format(new Date(attrs.lastModifiedTime().toMillis()));
-                isHidden = file.isHidden() ? "是" : "否";
-                canRead = file.canRead() ? "是" : "否";
-                canWrite = file.canWrite() ? "是" : "否";
-                canExec = file.canExecute() ? "是" : "否";
-                String mime = Files.probeContentType(path);
-                if (mime != null) type = mime;
-                else if (node.isDir) type = "文件夹";
-                else {
-                    int dotIndex = node.name.lastIndexOf('.');
-                    if (dotIndex > 0) type = node.name.substring(dotIndex + 1).toUpperCase() + " 文件";
-                }
-            } catch (IOException e) { }
+        String type = node.isDir ? "文件夹" : node.isSymlink ? "符号链接" : "文件";
+        if (!node.isDir && !node.isSymlink) {
+            int dotIndex = node.name.lastIndexOf('.');
+            if (dotIndex > 0) type = node.name.substring(dotIndex + 1).toUpperCase() + " 文件";
         }
 
         VBox root = new VBox(20);
         root.setPadding(new Insets(30));
         root.getStyleClass().add("details-window");
 
-        if (MainApp.currentPalette != null) {
-            ThemeEngine.Palette p = MainApp.currentPalette;
-            int r = (int)(p.surface.getRed()*255);
-            int g = (int)(p.surface.getGreen()*255);
-            int b = (int)(p.surface.getBlue()*255);
-            String surfaceRgb = r + "," + g + "," + b;
-
-            String style = String.format(
-                    "-fx-primary: %s; -fx-on-primary: %s; -fx-bg-base: %s; -fx-bg-surface: rgba(%s, 0.95); -fx-bg-surface-solid: rgb(%s); -fx-text-primary: %s; -fx-text-secondary: %s; -fx-selection-bg: rgba(%s, 0.15); -fx-color-border: rgba(255,255,255,0.1);",
-                    ThemeEngine.toHex(p.primary), ThemeEngine.toHex(p.onPrimary), ThemeEngine.toHex(p.background), surfaceRgb, surfaceRgb, ThemeEngine.toHex(p.textPrimary), ThemeEngine.toHex(p.textSecondary), ThemeEngine.toHex(p.primary)
-            );
-            root.setStyle(style);
-        }
-
         root.setOnMousePressed(event -> {
             xOffset = event.getSceneX();
             yOffset = event.getSceneY();
@@ -701,7 +1253,7 @@ public class NativeReportView {
         header.setAlignment(Pos.CENTER_LEFT);
         header.setMouseTransparent(true);
 
-        Label iconLabel = new Label(node.isDir ? "📂" : "📄");
+        Label iconLabel = new Label(node.isDir ? "📂" : node.isSymlink ? "🔗" : "📄");
         iconLabel.setStyle("-fx-font-size: 40px;");
 
         VBox titleBox = new VBox(5);
@@ -724,33 +1276,343 @@ public class NativeReportView {
         if (node.isDir) {
             addDetailRow(grid, row++, "包含:", node.children.size() + " 项");
         }
+        if (node.isSymlink) {
+            // 链接目标不随扫描保存，打开详情时再读
+            Label targetValue = addDetailRow(grid, row++, "链接目标:", imported ? "未知" : "读取中...");
+            if (!imported) {
+                CompletableFuture.supplyAsync(() -> {
+                    try {
+                        Path link = Path.of(node.path);
+                        Path target = Files.readSymbolicLink(link);
+                        Path resolved = link.resolveSibling(target);
+                        return target + (Files.exists(resolved) ? "" : "（目标不存在）");
+                    } catch (IOException | UnsupportedOperationException | SecurityException e) {
+                        return "无法读取：" + e.getMessage();
+                    }
+                }).thenAccept(text -> Platform.runLater(() -> targetValue.setText(text)));
+            }
+        }
+        if (node.hosts != null && node.hosts.count > 0) {
+            FleetMerge.HostSizes h = node.hosts;
+            int max = h.maxIndex();
+            addDetailRow(grid, row++, "主机:", h.count + " / " + h.hostNames.size() + " 台");
+            addDetailRow(grid, row++, "最大:", FileNode.formatSize(h.sizes[max]) + "（" + h.hostName(max) + "）");
+            addDetailRow(grid, row++, "平均:", FileNode.formatSize(node.size / h.count));
+        }
 
         Region line1 = new Region();
         line1.getStyleClass().add("details-separator");
         GridPane.setColumnSpan(line1, 2);
         grid.add(line1, 0, row++);
 
-        addDetailRow(grid, row++, "创建时间:", createdTime);
-        addDetailRow(grid, row++, "修改时间:", lastModified);
-        addDetailRow(grid, row++, "访问时间:", lastAccess);
+        // 以下各项由 MetadataService 在后台读取，对话框先打开，读到后再填入
+        String pending = node.isOther || imported ? "未知" : "读取中...";
+        Label createdValue = addDetailRow(grid, row++, "创建时间:", pending);
+        Label modifiedValue = addDetailRow(grid, row++, "修改时间:", pending);
+        Label accessValue = addDetailRow(grid, row++, "访问时间:", pending);
 
         Region line2 = new Region();
         line2.getStyleClass().add("details-separator");
         GridPane.setColumnSpan(line2, 2);
         grid.add(line2, 0, row++);
 
-        addDetailRow(grid, row++, "属性:", "隐藏: " + isHidden);
-        addDetailRow(grid, row++, "权限:", String.format("读:%s  写:%s  执行:%s", canRead, canWrite, canExec));
+        Label ownerValue = addDetailRow(grid, row++, "所有者:", pending);
+        Label hiddenValue = addDetailRow(grid, row++, "属性:", pending);
+        Label permValue = addDetailRow(grid, row++, "权限:", pending);
+
+        if (imported && node.modifiedMinutes != 0) {
+            // 导入的数据里只有修改时间
+            modifiedValue.setText(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(node.modifiedMinutes * 60_000L)));
+        }
+        if (!node.isOther && !imported) {
+            Consumer<MetadataService.Metadata> fill = m -> {
+                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+                createdValue.setText(sdf.format(new Date(m.created().toMillis())));
+                modifiedValue.setText(sdf.format(new Date(m.modified().toMillis())));
+                accessValue.setText(sdf.format(new Date(m.accessed().toMillis())));
+                ownerValue.setText(m.owner() != null ? m.owner() : "未知");
+                hiddenValue.setText("隐藏: " + (m.hidden() ? "是" : "否"));
+                String rwx = String.format("读:%s  写:%s  执行:%s", m.readable() ? "是" : "否", m.writable() ? "是" : "否", m.executable() ? "是" : "否");
+                permValue.setText(m.permissions() != null ? m.permissions() + "  (" + rwx + ")" : rwx);
+                if (m.mimeType() != null) typeLabel.setText(m.mimeType());
+            };
+            // 缓存里有就先显示（可能稍旧），后台校验后再刷新
+            MetadataService.Metadata cached = MetadataService.cached(node.path);
+            if (cached != null) fill.accept(cached);
+            MetadataService.fetch(node.path).whenComplete((m, ex) -> Platform.runLater(() -> {
+                if (m != null) {
+                    fill.accept(m);
+                } else if (cached == null) {
+                    for (Label l : List.of(createdValue, modifiedValue, accessValue, ownerValue, hiddenValue, permValue)) l.setText("未知");
+                }
+            }));
+        }
+
+        Button btnClose = new Button("关闭");
+        btnClose.getStyleClass().add("btn-primary");
+        btnClose.setPrefWidth(100);
+        btnClose.setOnAction(e -> dialog.close());
+
+        HBox btnBox = new HBox(btnClose);
+        btnBox.setAlignment(Pos.CENTER_RIGHT);
+
+        root.getChildren().addAll(header, grid);
+        if (node.hosts != null && node.hosts.count > 0) root.getChildren().add(createHostBreakdown(node.hosts));
+        root.getChildren().add(btnBox);
+
+        Scene scene = new Scene(root);
+        if (rootStack.getScene() != null) {
+            scene.getStylesheets().setAll(rootStack.getScene().getStylesheets());
+        }
+        scene.setFill(Color.TRANSPARENT);
+
+        dialog.setScene(scene);
+        dialog.show();
+
+        FadeTransition ft = new FadeTransition(Duration.millis(200), root);
+        ft.setFromValue(0); ft.setToValue(1); ft.play();
+        ScaleTransition st = new ScaleTransition(Duration.millis(200), root);
+        st.setFromX(0.9); st.setFromY(0.9); st.setToX(1); st.setToY(1); st.play();
+    }
+
+    // ★★★ 机群合并：逐台主机的大小明细，从大到小，条形长度相对最大的一台 ★★★
+    private Node createHostBreakdown(FleetMerge.HostSizes h) {
+        int[] ranking = h.ranking();
+        long max = Math.max(1, h.sizes[ranking[0]]);
+        VBox list = new VBox(6);
+        for (int i : ranking) {
+            Label host = new Label(h.hostName(i));
+            host.getStyleClass().add("details-label");
+            host.setMinWidth(140);
+            host.setMaxWidth(140);
+            ProgressBar bar = new ProgressBar((double) h.sizes[i] / max);
+            bar.setPrefWidth(160);
+            bar.setPrefHeight(6);
+            Label size = new Label(FileNode.formatSize(h.sizes[i]));
+            size.getStyleClass().add("details-value");
+            HBox line = new HBox(10, host, bar, size);
+            line.setAlignment(Pos.CENTER_LEFT);
+            list.getChildren().add(line);
+        }
+        ScrollPane scroll = new ScrollPane(list);
+        scroll.setFitToWidth(true);
+        scroll.setPrefViewportHeight(Math.min(ranking.length, 10) * 24);
+        scroll.setStyle("-fx-background-color: transparent; -fx-background: transparent;");
+        scroll.getStyleClass().add("edge-to-edge");
+
+        Label title = new Label("各主机明细");
+        title.getStyleClass().add("details-label");
+        return new VBox(8, title, scroll);
+    }
+
+    // ★★★ 扫描诊断：列举最慢的目录（附所在挂载点）、各顶层目录的耗时占比，以及被跳过的路径和原因 ★★★
+    private void showDiagnosticsDialog() {
+        ScanDiagnostics d = diagnostics;
+        if (d == null) return;
+
+        Stage dialog = new Stage();
+        dialog.initOwner(rootStack.getScene().getWindow());
+        dialog.initModality(Modality.APPLICATION_MODAL);
+        dialog.initStyle(StageStyle.TRANSPARENT);
+
+        VBox root = new VBox(20);
+        root.setPadding(new Insets(30));
+        root.getStyleClass().add("details-window");
+
+        root.setOnMousePressed(event -> {
+            xOffset = event.getSceneX();
+            yOffset = event.getSceneY();
+        });
+        root.setOnMouseDragged(event -> {
+            dialog.setX(event.getScreenX() - xOffset);
+            dialog.setY(event.getScreenY() - yOffset);
+        });
+
+        Label nameLabel = new Label("扫描诊断");
+        nameLabel.getStyleClass().add("details-title");
+        Label subLabel = new Label(scanRoot.path);
+        subLabel.getStyleClass().add("details-subtitle");
+        VBox titleBox = new VBox(5, nameLabel, subLabel);
+
+        GridPane grid = new GridPane();
+        grid.setHgap(20);
+        grid.setVgap(12);
+        addDetailRow(grid, 0, "已列举目录:", String.format("%,d", d.getListedDirs()));
+        addDetailRow(grid, 1, "列举总耗时:", formatMillis(d.getTotalNanos()) + "（各线程累计）");
+        addDetailRow(grid, 2, "权限不足:", String.format("%,d 处", d.getPermissionErrors()));
+        addDetailRow(grid, 3, "其他错误:", String.format("%,d 处", d.getOtherErrors()));
+
+        // 挂载表只在打开对话框时读一次，不查询容量，不会阻塞
+        List<VolumeOverview.Volume> volumes = VolumeOverview.list();
+        List<Node> slowLines = new ArrayList<>();
+        for (ScanDiagnostics.Listing l : d.getSlowest()) {
+            VolumeOverview.Volume v = VolumeOverview.containing(volumes, Paths.get(l.path()));
+            slowLines.add(createDiagnosticsLine(l.path(),
+                    formatMillis(l.nanos()) + "  ·  " + String.format("%,d 项", l.entries()) + (v != null ? "  ·  " + v.mount() : "")));
+        }
+
+        List<ScanDiagnostics.TopLevel> tops = d.getTopLevels();
+        long topMax = tops.isEmpty() ? 1 : Math.max(1, tops.get(0).nanos());
+        VBox topList = new VBox(6);
+        for (ScanDiagnostics.TopLevel t : tops) {
+            Label name = new Label(t.name().isEmpty() ? "(根目录本身)" : t.name());
+            name.getStyleClass().add("details-label");
+            name.setMinWidth(160);
+            name.setMaxWidth(160);
+            ProgressBar bar = new ProgressBar((double) t.nanos() / topMax);
+            bar.setPrefWidth(160);
+            bar.setPrefHeight(6);
+            Label value = new Label(formatMillis(t.nanos()) + "  ·  " + String.format("%,d 个目录", t.dirs()));
+            value.getStyleClass().add("details-value");
+            HBox line = new HBox(10, name, bar, value);
+            line.setAlignment(Pos.CENTER_LEFT);
+            topList.getChildren().add(line);
+        }
+
+        List<ScanDiagnostics.ScanError> errors = d.getErrors();
+        List<Node> errorLines = new ArrayList<>(errors.size());
+        for (ScanDiagnostics.ScanError err : errors) {
+            errorLines.add(createDiagnosticsLine(err.path(), err.kind().label + "  ·  " + err.message()));
+        }
+        long errorTotal = d.getPermissionErrors() + d.getOtherErrors();
+        String errorTitle = errors.size() < errorTotal
+                ? String.format("被跳过的路径（仅列出前 %,d 处）", errors.size())
+                : "被跳过的路径";
+
+        VBox sections = new VBox(16,
+                createDiagnosticsSection("最慢的目录", slowLines.isEmpty() ? List.of(new Label("无")) : slowLines),
+                createDiagnosticsSection("各顶层目录耗时", List.of(topList)),
+                createDiagnosticsSection(errorTitle, errorLines.isEmpty() ? List.of(new Label("无")) : errorLines));
+        ScrollPane scroll = new ScrollPane(sections);
+        scroll.setFitToWidth(true);
+        scroll.setPrefViewportWidth(620);
+        scroll.setPrefViewportHeight(420);
+        scroll.setStyle("-fx-background-color: transparent; -fx-background: transparent;");
+        scroll.getStyleClass().add("edge-to-edge");
 
         Button btnClose = new Button("关闭");
         btnClose.getStyleClass().add("btn-primary");
         btnClose.setPrefWidth(100);
         btnClose.setOnAction(e -> dialog.close());
+        HBox btnBox = new HBox(btnClose);
+        btnBox.setAlignment(Pos.CENTER_RIGHT);
+
+        root.getChildren().addAll(titleBox, grid, scroll, btnBox);
+
+        Scene scene = new Scene(root);
+        if (rootStack.getScene() != null) {
+            scene.getStylesheets().setAll(rootStack.getScene().getStylesheets());
+        }
+        scene.setFill(Color.TRANSPARENT);
+
+        dialog.setScene(scene);
+        dialog.show();
+
+        FadeTransition ft = new FadeTransition(Duration.millis(200), root);
+        ft.setFromValue(0); ft.setToValue(1); ft.play();
+        ScaleTransition st = new ScaleTransition(Duration.millis(200), root);
+        st.setFromX(0.9); st.setFromY(0.9); st.setToX(1); st.setToY(1); st.play();
+    }
+
+    private Node createDiagnosticsSection(String title, List<? extends Node> lines) {
+        Label label = new Label(title);
+        label.getStyleClass().add("details-label");
+        VBox box = new VBox(6);
+        box.getChildren().add(label);
+        box.getChildren().addAll(lines);
+        return box;
+    }
+
+    // 一行路径 + 一行说明；路径过长时从中间省略，两端（根和末级目录名）都保留
+    private Node createDiagnosticsLine(String path, String detail) {
+        Label p = new Label(path);
+        p.getStyleClass().add("details-value");
+        p.setTextOverrun(OverrunStyle.CENTER_ELLIPSIS);
+        p.setMaxWidth(600);
+        p.setTooltip(new Tooltip(path));
+        Label d = new Label(detail);
+        d.getStyleClass().add("details-label");
+        return new VBox(2, p, d);
+    }
+
+    private static String formatMillis(long nanos) {
+        double ms = nanos / 1_000_000.0;
+        return ms >= 1000 ? String.format("%.1f 秒", ms / 1000) : String.format("%.1f ms", ms);
+    }
+
+    // ★★★ 历史趋势：从 ScanHistory 回放出该目录每次扫描时的大小 ★★★
+    private void showHistoryDialog(FileNode node) {
+        Stage dialog = new Stage();
+        dialog.initOwner(rootStack.getScene().getWindow());
+        dialog.initModality(Modality.APPLICATION_MODAL);
+        dialog.initStyle(StageStyle.TRANSPARENT);
+
+        VBox root = new VBox(20);
+        root.setPadding(new Insets(30));
+        root.getStyleClass().add("details-window");
+
+        root.setOnMousePressed(event -> {
+            xOffset = event.getSceneX();
+            yOffset = event.getSceneY();
+        });
+        root.setOnMouseDragged(event -> {
+            dialog.setX(event.getScreenX() - xOffset);
+            dialog.setY(event.getScreenY() - yOffset);
+        });
+
+        Label nameLabel = new Label(node.name);
+        nameLabel.getStyleClass().add("details-title");
+        Label subLabel = new Label("历史大小趋势");
+        subLabel.getStyleClass().add("details-subtitle");
+        VBox titleBox = new VBox(5, nameLabel, subLabel);
+
+        StackPane chartHolder = new StackPane(new Label("正在读取历史记录..."));
+        chartHolder.setPrefSize(640, 320);
 
+        Button btnClose = new Button("关闭");
+        btnClose.getStyleClass().add("btn-primary");
+        btnClose.setPrefWidth(100);
+        btnClose.setOnAction(e -> dialog.close());
         HBox btnBox = new HBox(btnClose);
         btnBox.setAlignment(Pos.CENTER_RIGHT);
 
-        root.getChildren().addAll(header, grid, btnBox);
+        root.getChildren().addAll(titleBox, chartHolder, btnBox);
+
+        Task<List<ScanHistory.Point>> task = new Task<>() {
+            @Override
+            protected List<ScanHistory.Point> call() throws Exception {
+                return ScanHistory.forRoot(scanRoot.path).sizeSeries(node.path);
+            }
+        };
+        task.setOnSucceeded(e -> {
+            List<ScanHistory.Point> points = task.getValue();
+            if (points.isEmpty()) {
+                chartHolder.getChildren().setAll(new Label("暂无历史记录"));
+                return;
+            }
+            long max = points.stream().mapToLong(ScanHistory.Point::size).max().orElse(0);
+            String[] units = { "B", "KB", "MB", "GB", "TB" };
+            int unit = 0;
+            while (unit < units.length - 1 && max >= Math.pow(1024, unit + 1)) unit++;
+            double scale = Math.pow(1024, unit);
+
+            SimpleDateFormat sdf = new SimpleDateFormat("MM-dd HH:mm");
+            XYChart.Series<String, Number> series = new XYChart.Series<>();
+            for (ScanHistory.Point point : points) {
+                series.getData().add(new XYChart.Data<>(sdf.format(new Date(point.timestamp())), point.size() / scale));
+            }
+            NumberAxis yAxis = new NumberAxis();
+            yAxis.setLabel(units[unit]);
+            LineChart<String, Number> chart = new LineChart<>(new CategoryAxis(), yAxis);
+            chart.setLegendVisible(false);
+            chart.setAnimated(false);
+            chart.getData().add(series);
+            chartHolder.getChildren().setAll(chart);
+        });
+        task.setOnFailed(e -> chartHolder.getChildren().setAll(new Label("读取历史记录失败")));
+        Thread t = new Thread(task, "history-loader");
+        t.setDaemon(true);
+        t.start();
 
         Scene scene = new Scene(root);
         if (rootStack.getScene() != null) {
@@ -767,7 +1629,18 @@ public class NativeReportView {
         st.setFromX(0.9); st.setFromY(0.9); st.setToX(1); st.setToY(1); st.play();
     }
 
-    private void addDetailRow(GridPane grid, int row, String label, String value) {
+    // 悬停时预取光标附近几行的扩展信息，打开详情时多半已在缓存里
+    private void prefetchAround(int index) {
+        if (imported || isDiffView || viewMode != ViewMode.DIRECTORY) return;
+        List<String> paths = new ArrayList<>(7);
+        for (int i = Math.max(0, index - 3); i <= Math.min(rows.size() - 1, index + 3); i++) {
+            FileNode n = rows.get(i).node();
+            if (!n.isOther) paths.add(n.path);
+        }
+        MetadataService.prefetch(paths);
+    }
+
+    private Label addDetailRow(GridPane grid, int row, String label, String value) {
         Label l = new Label(label);
         l.getStyleClass().add("details-label");
         l.setMinWidth(80);
@@ -779,15 +1652,18 @@ public class NativeReportView {
 
         grid.add(l, 0, row);
         grid.add(v, 1, row);
+        return v;
     }
 
-    private class FileListCell extends ListCell<FileNode> {
+    private class FileListCell extends ListCell<Row> {
         private final HBox root;
         private final Circle dot;
         private final Label nameLabel;
         private final Label sizeLabel;
         private final Label percentLabel;
         private final Region spacer;
+        // 鼠标悬停时高亮的行；Cell 滚动复用到别的行时据此撤掉旧行的高亮
+        private Row hovered;
 
         public FileListCell() {
             root = new HBox(10);
@@ -796,23 +1672,25 @@ public class NativeReportView {
 
             this.setOnMouseEntered(e -> {
                 if (!isEmpty() && getItem() != null) {
-                    highlightChartFromList(getIndex(), true);
-                    showFloatingInfo(getItem());
+                    hovered = getItem();
+                    prefetchAround(hovered.index());
+                    highlightChartFromList(hovered.index(), true);
+                    showFloatingInfo(hovered.node());
                     pseudoClassStateChanged(CHART_HOVER_PSEUDO_CLASS, true);
                 }
             });
-            this.setOnMouseExited(e -> {
-                if (!isEmpty()) {
-                    highlightChartFromList(getIndex(), false);
-                    floatingInfoBox.setVisible(false);
-                    pseudoClassStateChanged(CHART_HOVER_PSEUDO_CLASS, false);
-                }
-            });
+            this.setOnMouseExited(e -> clearHover());
             this.setOnMouseMoved(e -> {
                 if (!isEmpty() && floatingInfoBox.isVisible()) {
                     updateFloatingPos(e.getScreenX(), e.getScreenY());
                 }
             });
+            // 右键菜单只在用户真正打开时创建
+            this.setOnContextMenuRequested(e -> {
+                if (!isEmpty() && getItem() != null) {
+                    createContextMenu(getItem().node()).show(this, e.getScreenX(), e.getScreenY());
+                }
+            });
 
             dot = new Circle(4);
             nameLabel = new Label();
@@ -837,46 +1715,27 @@ public class NativeReportView {
         }
 
         @Override
-        protected void updateItem(FileNode item, boolean empty) {
+        protected void updateItem(Row item, boolean empty) {
+            if (hovered != null && hovered != item) clearHover();
             super.updateItem(item, empty);
             if (empty || item == null) {
                 setGraphic(null);
-                setContextMenu(null);
-                pseudoClassStateChanged(CHART_HOVER_PSEUDO_CLASS, false);
             } else {
-                nameLabel.setText(item.name);
-                sizeLabel.setText(FileNode.formatSize(item.size));
-
-                String colorHex;
-                if (item.isOther) colorHex = "#52525B";
-                else if (isCategoryMode) {
-                    List<String> chartColors = MainApp.currentPalette != null ? MainApp.currentPalette.chartColors : null;
-                    if (chartColors != null) colorHex = chartColors.get(Math.abs(item.name.hashCode()) % chartColors.size());
-                    else colorHex = "#D9E878";
-                } else {
-                    List<String> chartColors = MainApp.currentPalette != null ? MainApp.currentPalette.chartColors : null;
-                    int index = getListView().getItems().indexOf(item);
-                    if (chartColors != null && !chartColors.isEmpty()) {
-                        colorHex = chartColors.get(index % chartColors.size());
-                    } else {
-                        colorHex = "#D9E878";
-                    }
-                }
-
-                dot.setStyle("-fx-fill: " + colorHex);
-                double percent = (double) item.size / currentNode.size * 100.0;
-                percentLabel.setText(String.format("%.1f%%", percent));
-
-                if (isSelected()) {
-                    setStyle("-fx-background-color: rgba(255, 255, 255, 0.15);");
-                } else {
-                    setStyle("-fx-background-color: transparent;");
-                }
-
-                setContextMenu(createContextMenu(item));
+                nameLabel.setText(item.displayName());
+                sizeLabel.setText(item.sizeText());
+                percentLabel.setText(item.percentText());
+                dot.getStyleClass().setAll("legend-dot", item.colorClass());
 
                 setGraphic(root);
             }
         }
+
+        private void clearHover() {
+            if (hovered == null) return;
+            highlightChartFromList(hovered.index(), false);
+            floatingInfoBox.setVisible(false);
+            pseudoClassStateChanged(CHART_HOVER_PSEUDO_CLASS, false);
+            hovered = null;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,510 @@
+package diskanalyzer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 与 ncdu 导出格式（ncdu -o）互通的 JSON 读写。
+ * <p>
+ * 格式：[1, 2, {元数据}, 根目录]，目录是一个数组——第一个元素是目录自身的信息对象，其后是子项，
+ * 文件是对象，子目录是嵌套的数组。
+ * <p>
+ * 写出时边遍历边写，不拼接整棵树的字符串；读入用逐字符的拉取式解析，解析器本身只占常数内存，
+ * 树按扫描器的同一套规则构建（每个目录保留前 50 项，受 ScanContext 内存预算约束），多 GB 的导出文件也能打开。
+ * [Other Files] 和被折叠的目录在 ncdu 中没有对应概念，写成带 diskanalyzer_* 扩展字段的普通条目，
+ * ncdu 会忽略这些字段，按普通文件显示其大小。
+ */
+public class NcduFormat {
+
+    private static final int MAJOR = 1;
+    private static final int MINOR = 2;
+    private static final String OTHER_NAME = "[Other Files]";
+
+    // ---------------- 导出 ----------------
+
+    public static void export(FileNode root, Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(tmp), StandardCharsets.UTF_8), 1 << 16)) {
+            out.write("[" + MAJOR + "," + MINOR + ",{\"progname\":\"diskanalyzer\",\"progver\":\"1.1.0\",\"timestamp\":");
+            out.write(Long.toString(System.currentTimeMillis() / 1000));
+            out.write("},\n");
+            writeDir(out, root, root.path);
+            out.write("]\n");
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeDir(Writer out, FileNode dir, String name) throws IOException {
+        out.write("[{\"name\":");
+        writeString(out, name);
+        out.write(",\"asize\":0,\"dsize\":0");
+        writeMtime(out, dir);
+        if (dir.isCollapsed) out.write(",\"diskanalyzer_collapsed\":true");
+        out.write('}');
+
+        if (dir.isCollapsed) {
+            // 折叠目录没有子节点，用一个汇总条目承载大小，ncdu 中显示的总量仍然正确
+            out.write(",\n");
+            writeAggregate(out, dir.size, dir.entryCount);
+        }
+        for (FileNode child : dir.children) {
+            out.write(",\n");
+            if (child.isOther) writeAggregate(out, child.size, child.entryCount + 1);
+            else if (child.isDir) writeDir(out, child, child.name);
+            else writeFile(out, child);
+        }
+        out.write(']');
+    }
+
+    private static void writeFile(Writer out, FileNode file) throws IOException {
+        out.write("{\"name\":");
+        writeString(out, file.name);
+        // 只记录了逻辑大小，占用空间 (dsize) 以它代替
+        out.write(",\"asize\":");
+        out.write(Long.toString(file.size));
+        out.write(",\"dsize\":");
+        out.write(Long.toString(file.size));
+        writeMtime(out, file);
+        // ncdu 用 notreg 标记符号链接等非普通文件
+        if (file.isSymlink) out.write(",\"notreg\":true");
+        out.write('}');
+    }
+
+    private static void writeAggregate(Writer out, long size, long entries) throws IOException {
+        out.write("{\"name\":\"" + OTHER_NAME + "\",\"asize\":");
+        out.write(Long.toString(size));
+        out.write(",\"dsize\":");
+        out.write(Long.toString(size));
+        out.write(",\"diskanalyzer_other\":true,\"entries\":");
+        out.write(Long.toString(entries));
+        out.write('}');
+    }
+
+    private static void writeMtime(Writer out, FileNode node) throws IOException {
+        if (node.modifiedMinutes == 0) return;
+        out.write(",\"mtime\":");
+        out.write(Long.toString(node.modifiedMinutes * 60L));
+    }
+
+    private static void writeString(Writer out, String s) throws IOException {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> out.write("\\\"");
+                case '\\' -> out.write("\\\\");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                case '\t' -> out.write("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.write("\\u00");
+                        out.write(Character.forDigit(c >> 4, 16));
+                        out.write(Character.forDigit(c & 0xF, 16));
+                    } else {
+                        out.write(c);
+                    }
+                }
+            }
+        }
+        out.write('"');
+    }
+
+    // ---------------- 导入 ----------------
+
+    /**
+     * 读取 ncdu 导出文件（也接受 gzip 压缩的文件）。bytesRead 随读取进度更新（压缩文件按压缩后的字节计），可为 null。
+     * 文件数和总大小同时累加到 DiskScanner 的全局统计，加载界面可以直接显示。
+     */
+    public static FileNode importDump(Path file, AtomicLong bytesRead) throws IOException {
+        return importDump(file, bytesRead, ScanContext.effectiveBudgetBytes());
+    }
+
+    /** budgetBytes：构建这棵树可用的内存预算，见 ScanContext */
+    public static FileNode importDump(Path file, AtomicLong bytesRead, long budgetBytes) throws IOException {
+        InputStream raw = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16), bytesRead);
+        raw.mark(2);
+        boolean gzip = raw.read() == 0x1f && raw.read() == 0x8b;
+        raw.reset();
+        InputStream in = gzip ? new GZIPInputStream(raw, 1 << 16) : raw;
+
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            JsonReader json = new JsonReader(reader);
+            json.expect('[');
+            json.requireElement();
+            long major = json.nextLong();
+            if (major != MAJOR) throw new IOException("不支持的 ncdu 导出版本: " + major);
+            json.requireElement();
+            json.nextLong(); // 次版本号只增加了可选字段
+
+            // 元数据：取生成时间作为年龄分桶的基准
+            int nowMinutes = FileNode.nowMinutes();
+            json.requireElement();
+            json.expect('{');
+            while (json.nextMember()) {
+                String key = json.nextName();
+                if (key.equals("timestamp")) nowMinutes = (int) (json.nextLong() / 60);
+                else json.skipValue();
+            }
+
+            ScanContext ctx = new ScanContext(nowMinutes, budgetBytes);
+            json.requireElement();
+            FileNode root = readDir(json, null, ctx);
+            json.skipRest();
+            return root;
+        }
+    }
+
+    private static FileNode readDir(JsonReader json, FileNode parent, ScanContext ctx) throws IOException {
+        json.expect('[');
+        json.requireElement();
+        Info info = readInfo(json);
+
+        // 根目录的 name 是完整路径，与扫描器一致只取最后一段作为显示名
+        String path = parent == null ? info.name : SnapshotIO.childPath(parent.path, info.name);
+        Path fileName = parent == null ? Path.of(path).getFileName() : null;
+        FileNode dir = new FileNode(fileName != null ? fileName.toString() : info.name, path, true);
+        dir.parent = parent;
+        dir.digest = FileNode.dirDigestSeed(dir.name);
+        dir.modifiedMinutes = info.modifiedMinutes;
+        dir.scanMinutes = ctx.nowMinutes;
+        dir.ageBytes = new long[FileNode.AGE_BUCKET_NAMES.length];
+        dir.extensions = new ExtensionTable.Counts();
+        ctx.tablesCreated(dir);
+        ctx.nodesCreated(1);
+        DiskScanner.currentScanningPath.set(dir.name);
+        DiskScanner.scannedDirCount.incrementAndGet();
+
+        while (json.nextElement()) {
+            if (json.peek() == '[') {
+                ctx.addDirectory(dir, readDir(json, dir, ctx));
+                continue;
+            }
+            Info f = readInfo(json);
+            if (f.other) {
+                FileNode other = new FileNode(OTHER_NAME, dir.path, false);
+                other.isOther = true;
+                other.parent = dir;
+                other.size = f.size;
+                other.entryCount = Math.max(0, f.entries - 1);
+                other.digest = FileNode.fileDigest(OTHER_NAME, f.size, 0);
+                dir.children.add(other);
+                dir.size += other.size;
+                dir.entryCount += other.entryCount + 1;
+                dir.digest += other.digest;
+                ctx.nodesCreated(1);
+                if (dir.children.size() >= ScanContext.STREAM_TRUNCATE_AT) ctx.truncate(dir);
+            } else {
+                FileNode node = new FileNode(f.name, SnapshotIO.childPath(dir.path, f.name), false);
+                node.size = f.size;
+                node.modifiedMinutes = f.modifiedMinutes;
+                node.digest = FileNode.fileDigest(node.name, node.size, node.modifiedMinutes);
+                ctx.addFile(dir, node);
+            }
+            DiskScanner.scannedFileCount.incrementAndGet();
+            DiskScanner.scannedTotalSize.addAndGet(f.size);
+        }
+
+        if (info.collapsed) {
+            // 本程序导出的折叠目录：里面只有一个汇总条目，恢复成折叠节点
+            ctx.nodesReleased(dir.children.size());
+            dir.children = new ArrayList<>(0);
+            dir.isCollapsed = true;
+        } else {
+            ctx.finishDirectory(dir);
+        }
+        return dir;
+    }
+
+    private static final class Info {
+        String name = "";
+        long size;
+        int modifiedMinutes;
+        boolean other;
+        boolean collapsed;
+        long entries;
+    }
+
+    private static Info readInfo(JsonReader json) throws IOException {
+        Info info = new Info();
+        long dsize = -1;
+        boolean hasAsize = false;
+        json.expect('{');
+        while (json.nextMember()) {
+            String key = json.nextName();
+            switch (key) {
+                case "name" -> info.name = json.nextString();
+                case "asize" -> { info.size = json.nextLong(); hasAsize = true; }
+                case "dsize" -> dsize = json.nextLong();
+                case "mtime" -> info.modifiedMinutes = (int) (json.nextLong() / 60);
+                case "entries" -> info.entries = json.nextLong();
+                case "diskanalyzer_other" -> info.other = json.nextBoolean();
+                case "diskanalyzer_collapsed" -> info.collapsed = json.nextBoolean();
+                default -> json.skipValue();
+            }
+        }
+        if (!hasAsize && dsize > 0) info.size = dsize;
+        return info;
+    }
+
+    /** 统计已读字节数的输入流，用于导入进度 */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+        private long marked;
+
+        CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter != null ? counter : new AtomicLong();
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) counter.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) counter.addAndGet(n);
+            return n;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            super.mark(readlimit);
+            marked = counter.get();
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            super.reset();
+            counter.set(marked);
+        }
+    }
+
+    /**
+     * 最小的拉取式 JSON 解析器：只有一个固定大小的字符缓冲和一个复用的 StringBuilder，
+     * 内存占用与文件大小无关。逗号由 nextMember / nextElement 统一处理。
+     */
+    private static final class JsonReader {
+        private final Reader in;
+        private final char[] buf = new char[1 << 14];
+        private int pos, limit;
+        private final StringBuilder sb = new StringBuilder(256);
+        // 当前容器内是否已经读过元素（决定下一个元素前是否需要逗号）
+        private boolean[] started = new boolean[64];
+        private int depth;
+
+        JsonReader(Reader in) {
+            this.in = in;
+        }
+
+        private int read() throws IOException {
+            if (pos == limit) {
+                limit = in.read(buf, 0, buf.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buf[pos++];
+        }
+
+        int peek() throws IOException {
+            skipWhitespace();
+            if (pos == limit) {
+                limit = in.read(buf, 0, buf.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buf[pos];
+        }
+
+        private void skipWhitespace() throws IOException {
+            while (true) {
+                if (pos == limit) {
+                    limit = in.read(buf, 0, buf.length);
+                    pos = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return;
+                    }
+                }
+                char c = buf[pos];
+                if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return;
+                pos++;
+            }
+        }
+
+        void expect(char c) throws IOException {
+            skipWhitespace();
+            int r = read();
+            if (r != c) throw new IOException("ncdu 数据格式错误：期望 '" + c + "'，实际为 " + describe(r));
+            if (c == '[' || c == '{') push();
+            else if (c == ']' || c == '}') depth--;
+        }
+
+        private void push() {
+            if (depth == started.length) started = java.util.Arrays.copyOf(started, depth * 2);
+            started[depth++] = false;
+        }
+
+        /** 对象中是否还有成员；没有时消费掉 '}' */
+        boolean nextMember() throws IOException {
+            return next('}');
+        }
+
+        /** 数组中是否还有元素；没有时消费掉 ']' */
+        boolean nextElement() throws IOException {
+            return next(']');
+        }
+
+        private boolean next(char close) throws IOException {
+            int c = peek();
+            if (c == close) {
+                pos++;
+                depth--;
+                return false;
+            }
+            if (started[depth - 1]) {
+                if (c != ',') throw new IOException("ncdu 数据格式错误：期望 ',' 或 '" + close + "'，实际为 " + describe(c));
+                pos++;
+            }
+            started[depth - 1] = true;
+            return true;
+        }
+
+        void requireElement() throws IOException {
+            if (!nextElement()) throw new IOException("ncdu 数据格式错误：数组意外结束");
+        }
+
+        String nextName() throws IOException {
+            String name = nextString();
+            skipWhitespace();
+            if (read() != ':') throw new IOException("ncdu 数据格式错误：缺少 ':'");
+            return name;
+        }
+
+        String nextString() throws IOException {
+            skipWhitespace();
+            if (read() != '"') throw new IOException("ncdu 数据格式错误：期望字符串");
+            sb.setLength(0);
+            while (true) {
+                int c = read();
+                if (c < 0) throw new EOFException("ncdu 数据意外结束");
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append((char) c);
+                    continue;
+                }
+                int e = read();
+                switch (e) {
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'u' -> {
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int d = Character.digit(read(), 16);
+                            if (d < 0) throw new IOException("ncdu 数据格式错误：无效的 \\u 转义");
+                            code = code * 16 + d;
+                        }
+                        sb.append((char) code);
+                    }
+                    case -1 -> throw new EOFException("ncdu 数据意外结束");
+                    default -> sb.append((char) e); // \" \\ \/
+                }
+            }
+        }
+
+        long nextLong() throws IOException {
+            skipWhitespace();
+            long value = 0;
+            boolean negative = false;
+            int c = peek();
+            if (c == '-') {
+                negative = true;
+                pos++;
+            }
+            boolean any = false;
+            while ((c = peek()) >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                pos++;
+                any = true;
+            }
+            if (!any) throw new IOException("ncdu 数据格式错误：期望数字，实际为 " + describe(c));
+            if (c != '.' && c != 'e' && c != 'E') return negative ? -value : value;
+
+            // ncdu 只写整数；遇到小数或指数形式时按 double 解析后取整
+            sb.setLength(0);
+            sb.append(negative ? "-" : "").append(value);
+            while ((c = peek()) == '.' || c == 'e' || c == 'E' || c == '+' || c == '-' || (c >= '0' && c <= '9')) {
+                sb.append((char) c);
+                pos++;
+            }
+            try {
+                return (long) Double.parseDouble(sb.toString());
+            } catch (NumberFormatException e) {
+                throw new IOException("ncdu 数据格式错误：无效的数字 " + sb);
+            }
+        }
+
+        boolean nextBoolean() throws IOException {
+            int c = peek();
+            if (c == 't' || c == 'f') {
+                skipLiteral();
+                return c == 't';
+            }
+            skipValue();
+            return false;
+        }
+
+        private void skipLiteral() throws IOException {
+            int c;
+            while ((c = peek()) >= 'a' && c <= 'z') pos++;
+        }
+
+        void skipValue() throws IOException {
+            int c = peek();
+            switch (c) {
+                case '"' -> nextString();
+                case '{' -> {
+                    expect('{');
+                    while (nextMember()) {
+                        nextName();
+                        skipValue();
+                    }
+                }
+                case '[' -> {
+                    expect('[');
+                    while (nextElement()) skipValue();
+                }
+                case 't', 'f', 'n' -> skipLiteral();
+                default -> nextLong();
+            }
+        }
+
+        /** 根目录之后可能还有其他元素（未来的扩展），一并跳过直到最外层数组结束 */
+        void skipRest() throws IOException {
+            while (nextElement()) skipValue();
+        }
+
+        private static String describe(int c) {
+            return c < 0 ? "文件结尾" : "'" + (char) c + "'";
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package diskanalyzer;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 文件属主的紧凑编号表：属主名在整个进程内只存一份，树中以 int 编号引用（FileNode.owner / Usage）。
+ * <p>
+ * 读取：支持 unix 视图时，一次 stat 同时取得基本属性和 uid，uid 到编号查表，
+ * 只有第一次遇到某个 uid 时才通过 POSIX 视图 (PosixFileAttributes.owner) 解析用户名；
+ * 每个文件都调用 owner() 会做一次 getpwuid，在缓存命中的目录树上能让扫描慢两三倍。
+ * 只支持 posix 视图的系统退回逐个文件 owner()；Windows 等非 POSIX 文件系统不统计属主。
+ */
+final class OwnerTable {
+
+    static final int UNKNOWN = -1;
+
+    private static final Set<String> VIEWS = FileSystems.getDefault().supportedFileAttributeViews();
+    private static final boolean UNIX = VIEWS.contains("unix");
+    private static final boolean POSIX = VIEWS.contains("posix");
+
+    // 扫描器用到的基本属性 + uid，一次读出
+    private static final String UNIX_ATTRIBUTES =
+            "unix:size,lastModifiedTime,lastAccessTime,creationTime,isRegularFile,isDirectory,isSymbolicLink,isOther,fileKey,uid";
+
+    private static final Map<String, Integer> idsByName = new ConcurrentHashMap<>();
+    private static final Map<Integer, Integer> idsByUid = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[0];
+
+    private OwnerTable() {
+    }
+
+    static boolean supported() {
+        return UNIX || POSIX;
+    }
+
+    static int intern(String name) {
+        Integer id = idsByName.get(name);
+        return id != null ? id : register(name);
+    }
+
+    private static synchronized int register(String name) {
+        Integer id = idsByName.get(name);
+        if (id != null) return id;
+        String[] grown = Arrays.copyOf(names, names.length + 1);
+        grown[names.length] = name;
+        names = grown;
+        idsByName.put(name, names.length - 1);
+        return names.length - 1;
+    }
+
+    static String name(int id) {
+        String[] n = names;
+        return id >= 0 && id < n.length ? n[id] : "未知";
+    }
+
+    /** 不跟随链接地读取条目属性；返回值交给 ownerOf 取属主编号 */
+    static BasicFileAttributes readAttributes(Path entry) throws IOException {
+        if (UNIX) return new UnixStat(entry, Files.readAttributes(entry, UNIX_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS));
+        return Files.readAttributes(entry, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    static int ownerOf(BasicFileAttributes attrs) {
+        if (attrs instanceof UnixStat s) return s.owner();
+        if (attrs instanceof PosixFileAttributes p) return intern(p.owner().getName());
+        return UNKNOWN;
+    }
+
+    // unix 视图读出的属性表，按 BasicFileAttributes 的接口取值
+    private record UnixStat(Path path, Map<String, Object> m) implements BasicFileAttributes {
+        int owner() {
+            Integer uid = (Integer) m.get("uid");
+            Integer id = idsByUid.get(uid);
+            return id != null ? id : idsByUid.computeIfAbsent(uid, u -> intern(resolve(path, u)));
+        }
+
+        private static String resolve(Path path, int uid) {
+            try {
+                return Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS).owner().getName();
+            } catch (IOException | RuntimeException e) {
+                return String.valueOf(uid);
+            }
+        }
+
+        @Override public FileTime lastModifiedTime() { return (FileTime) m.get("lastModifiedTime"); }
+        @Override public FileTime lastAccessTime() { return (FileTime) m.get("lastAccessTime"); }
+        @Override public FileTime creationTime() { return (FileTime) m.get("creationTime"); }
+        @Override public boolean isRegularFile() { return (Boolean) m.get("isRegularFile"); }
+        @Override public boolean isDirectory() { return (Boolean) m.get("isDirectory"); }
+        @Override public boolean isSymbolicLink() { return (Boolean) m.get("isSymbolicLink"); }
+        @Override public boolean isOther() { return (Boolean) m.get("isOther"); }
+        @Override public long size() { return (Long) m.get("size"); }
+        @Override public Object fileKey() { return m.get("fileKey"); }
+    }
+
+    /**
+     * 一个目录（或 [Other Files]）子树中各属主的字节数和文件数。只记录出现过的属主，
+     * 共享服务器上的一个目录通常只有一两个属主，按出现顺序线性查找即可。
+     */
+    static final class Usage {
+        int count;
+        int[] ids = new int[2];
+        long[] bytes = new long[2];
+        long[] files = new long[2];
+
+        void add(int id, long size, long fileCount) {
+            for (int i = 0; i < count; i++) {
+                if (ids[i] == id) {
+                    bytes[i] += size;
+                    files[i] += fileCount;
+                    return;
+                }
+            }
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                bytes = Arrays.copyOf(bytes, count * 2);
+                files = Arrays.copyOf(files, count * 2);
+            }
+            ids[count] = id;
+            bytes[count] = size;
+            files[count++] = fileCount;
+        }
+
+        /** 估算的堆占用：对象头和字段，加上三个数组 */
+        long bytes() {
+            return 80 + 20L * ids.length;
+        }
+
+        /** 把一个节点（目录、Other 或单个文件）的属主统计按 sign 叠加进来 */
+        void addNode(FileNode node, int sign) {
+            if (node.owners != null) {
+                for (int i = 0; i < node.owners.count; i++) {
+                    add(node.owners.ids[i], sign * node.owners.bytes[i], sign * node.owners.files[i]);
+                }
+            } else if (node.owner != UNKNOWN) {
+                add(node.owner, sign * node.size, sign);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package diskanalyzer;
+
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+/**
+ * 壁纸配色缓存：以图片文件内容的 CRC32C 为键，缓存提取出的种子色和各风格生成的配色方案。
+ * <p>
+ * 种子色同时写入 ~/.diskanalyzer/palette-seeds.properties，启动时同一张壁纸不必再做聚类；
+ * 配色方案由种子色纯计算得出，只在内存中按「壁纸 + 风格 + 明暗」缓存。
+ */
+public class PaletteCache {
+
+    // 值是计算结果的 future：映射表只在放入 future 时短暂加锁，聚类和配色计算不持有任何锁，
+    // 后台正在提取一张壁纸时，FX 线程查询另一张壁纸或另一种风格不会被挡住
+    private static final Map<String, CompletableFuture<Color>> SEEDS = new ConcurrentHashMap<>();
+    private static final Map<String, CompletableFuture<ThemeEngine.Palette>> PALETTES = new ConcurrentHashMap<>();
+    private static final Object DISK_LOCK = new Object();
+    private static Properties disk;
+
+    /** 图片内容的键：CRC32C + 长度 */
+    public static String keyOf(byte[] imageData) {
+        CRC32C crc = new CRC32C();
+        crc.update(imageData, 0, imageData.length);
+        return String.format("%08x-%d", crc.getValue(), imageData.length);
+    }
+
+    /**
+     * 取得壁纸的配色方案。key 为 null（没有壁纸）时使用默认种子色。
+     */
+    public static ThemeEngine.Palette palette(String key, Image image, ThemeStyle style, boolean isDark) {
+        String paletteKey = key + "|" + style + "|" + isDark;
+        return computeOnce(PALETTES, paletteKey, () -> ThemeEngine.generatePalette(seed(key, image), style, isDark));
+    }
+
+    public static Color seed(String key, Image image) {
+        if (key == null) return ThemeEngine.extractDominantColor(null);
+        return computeOnce(SEEDS, key, () -> loadOrExtractSeed(key, image));
+    }
+
+    // 同一个键只由第一个请求它的线程计算，其余线程等待它的结果；计算失败时移除，下次重新计算
+    private static <T> T computeOnce(Map<String, CompletableFuture<T>> map, String key, Supplier<T> compute) {
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        CompletableFuture<T> existing = map.putIfAbsent(key, mine);
+        if (existing != null) return existing.join();
+        try {
+            T value = compute.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            map.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static Color loadOrExtractSeed(String key, Image image) {
+        String stored;
+        synchronized (DISK_LOCK) {
+            stored = diskCache().getProperty(key);
+        }
+        if (stored != null) {
+            try {
+                return Color.web(stored);
+            } catch (IllegalArgumentException ignored) {
+                // 损坏的条目，重新提取
+            }
+        }
+        Color seed = ThemeEngine.extractDominantColor(image);
+        synchronized (DISK_LOCK) {
+            diskCache().setProperty(key, ThemeEngine.toHex(seed));
+            saveDiskCache();
+        }
+        return seed;
+    }
+
+    private static Path cacheFile() {
+        return SnapshotIO.dataDir().resolve("palette-seeds.properties");
+    }
+
+    // 以下两个方法在持有 DISK_LOCK 时调用
+    private static Properties diskCache() {
+        if (disk == null) {
+            disk = new Properties();
+            Path file = cacheFile();
+            if (Files.exists(file)) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    disk.load(in);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return disk;
+    }
+
+    private static void saveDiskCache() {
+        Path file = cacheFile();
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                disk.store(out, "DiskAnalyzer wallpaper seed colors");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package diskanalyzer;
+
+import java.io.*;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 无界面的扫描代理：在服务器上扫描一个目录并常驻，界面通过 AgentClient 连接上来按需读取子节点。
+ * <p>
+ * 单独的 main 类，不依赖 JavaFX，可以只带本程序的类在没有显示环境的机器上运行：
+ * <pre>
+ *   java -cp target/classes diskanalyzer.ScanAgent /data --listen 127.0.0.1:7878
+ *   java -cp target/classes diskanalyzer.ScanAgent /data --listen unix:/tmp/diskanalyzer.sock
+ * </pre>
+ * 默认只监听本机回环地址；协议没有认证，远程使用时应通过 SSH 端口转发连接。
+ * 扫描树受 ScanContext 的内存预算约束，被折叠的目录在客户端第一次请求时重新扫描，展开的部分计入同一份预算。
+ */
+public class ScanAgent {
+
+    private final File rootDir;
+    private final long startMillis = System.currentTimeMillis();
+    // 整个代理进程的内存预算：折叠目录的展开以 forSubtree 计入同一份预算，也不改动扫描进度计数
+    private final ScanContext ctx = new ScanContext();
+    // 首次扫描和折叠目录的展开共用的线程池
+    private final ForkJoinPool pool = new ForkJoinPool();
+
+    // 扫描完成前为 null；之后只在持有本对象锁时读写（折叠目录的展开会修改树）
+    private volatile FileNode root;
+    // 正在重新扫描的折叠目录（按路径）：同一目录的并发请求共用一次扫描。只在持有本对象锁时读写
+    private final Map<String, CompletableFuture<Void>> expanding = new HashMap<>();
+    private volatile byte state = AgentProtocol.STATE_SCANNING;
+    private volatile long finishedMillis;
+
+    public ScanAgent(File rootDir) {
+        this.rootDir = rootDir;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String dir = null;
+        String listen = ":" + AgentProtocol.DEFAULT_PORT;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--listen") && i + 1 < args.length) listen = args[++i];
+            else if (dir == null && !args[i].startsWith("--")) dir = args[i];
+        }
+        if (dir == null) {
+            System.err.println("用法: ScanAgent <目录> [--listen host:port | --listen unix:/path/to/socket]");
+            System.exit(2);
+        }
+        new ScanAgent(new File(dir).getAbsoluteFile()).serve(AgentProtocol.parseAddress(listen));
+    }
+
+    /** 开始扫描并在 address 上接受连接；阻塞直到进程退出 */
+    public void serve(SocketAddress address) throws IOException {
+        ServerSocketChannel server = bind(address);
+        System.out.println("扫描代理已启动: " + rootDir + "，监听 " + server.getLocalAddress());
+        startScan();
+        acceptLoop(server);
+    }
+
+    /**
+     * 开始扫描并在后台线程上接受连接，返回实际监听的地址（端口为 0 时由系统分配）。用于在同一进程内做端到端测试。
+     */
+    SocketAddress start(SocketAddress address) throws IOException {
+        ServerSocketChannel server = bind(address);
+        startScan();
+        Thread t = new Thread(() -> {
+            try {
+                acceptLoop(server);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "agent-accept");
+        t.setDaemon(true);
+        t.start();
+        return server.getLocalAddress();
+    }
+
+    private static ServerSocketChannel bind(SocketAddress address) throws IOException {
+        ServerSocketChannel server;
+        if (address instanceof UnixDomainSocketAddress unix) {
+            // 上次异常退出留下的套接字文件会让 bind 失败
+            Files.deleteIfExists(unix.getPath());
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            unix.getPath().toFile().deleteOnExit();
+        } else {
+            server = ServerSocketChannel.open();
+        }
+        server.bind(address);
+        return server;
+    }
+
+    private void acceptLoop(ServerSocketChannel server) throws IOException {
+        while (true) {
+            SocketChannel channel = server.accept();
+            Thread t = new Thread(() -> handle(channel), "agent-client");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    private void startScan() {
+        DiskScanner.resetStats();
+        Thread scanner = new Thread(() -> {
+            try {
+                FileNode result = pool.invoke(new DiskScanner(rootDir, ctx));
+                synchronized (this) {
+                    root = result;
+                }
+                state = AgentProtocol.STATE_DONE;
+                System.out.printf("扫描完成: %,d 个文件, %s, 耗时 %d 秒%n", DiskScanner.scannedFileCount.get(),
+                        FileNode.formatSize(result.size), (System.currentTimeMillis() - startMillis) / 1000);
+            } catch (RuntimeException | Error e) {
+                state = AgentProtocol.STATE_FAILED;
+                e.printStackTrace();
+            } finally {
+                finishedMillis = System.currentTimeMillis();
+            }
+        }, "agent-scan");
+        scanner.setDaemon(true);
+        scanner.start();
+    }
+
+    private long elapsedMillis() {
+        long end = finishedMillis;
+        return (end != 0 ? end : System.currentTimeMillis()) - startMillis;
+    }
+
+    // ★★★ 每个连接一个线程：顺序处理请求；回复和进度推送都在 out 上同步写出整帧 ★★★
+    private void handle(SocketChannel channel) {
+        Thread progressThread = null;
+        try (channel;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            AgentProtocol.readHandshake(in);
+            AgentProtocol.writeHandshake(out);
+
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return; // 客户端断开
+                }
+                int requestId = in.readInt();
+                DataInputStream params = new DataInputStream(new ByteArrayInputStream(AgentProtocol.readBody(in)));
+                switch (op) {
+                    case AgentProtocol.OP_STATUS -> reply(out, requestId, this::writeStatus);
+                    case AgentProtocol.OP_CHILDREN -> reply(out, requestId, body -> writeChildren(body, params.readUTF(), params.readInt()));
+                    case AgentProtocol.OP_SUBSCRIBE -> {
+                        reply(out, requestId, body -> { });
+                        if (progressThread == null) progressThread = startProgress(out, requestId);
+                    }
+                    default -> {
+                        byte unknown = op;
+                        reply(out, requestId, body -> { throw new IOException("未知请求: " + unknown); });
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("客户端连接中断: " + e.getMessage());
+        } finally {
+            if (progressThread != null) progressThread.interrupt();
+        }
+    }
+
+    private interface Body {
+        void write(DataOutputStream body) throws IOException;
+    }
+
+    // 先把内容写进缓冲区再整帧发出：出错时回复 ERROR，不会把半个回复留在流里
+    private void reply(DataOutputStream out, int requestId, Body body) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte kind = AgentProtocol.KIND_RESPONSE;
+        try {
+            body.write(new DataOutputStream(buffer));
+        } catch (IOException | RuntimeException e) {
+            buffer.reset();
+            new DataOutputStream(buffer).writeUTF(String.valueOf(e.getMessage()));
+            kind = AgentProtocol.KIND_ERROR;
+        }
+        AgentProtocol.writeFrame(out, kind, requestId, buffer);
+    }
+
+    // 订阅后每 250ms 推送一次进度，扫描结束时的最后一次推送之后退出
+    private Thread startProgress(DataOutputStream out, int requestId) {
+        Thread t = new Thread(() -> {
+            try {
+                while (true) {
+                    byte s = state;
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    AgentProtocol.writeProgress(new DataOutputStream(buffer), s, elapsedMillis());
+                    AgentProtocol.writeFrame(out, AgentProtocol.KIND_PROGRESS, requestId, buffer);
+                    if (s != AgentProtocol.STATE_SCANNING) return;
+                    Thread.sleep(AgentProtocol.PROGRESS_INTERVAL_MILLIS);
+                }
+            } catch (IOException | InterruptedException e) {
+                // 连接已断开
+            }
+        }, "agent-progress");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    private synchronized void writeStatus(DataOutputStream body) throws IOException {
+        byte s = state;
+        AgentProtocol.writeProgress(body, s, elapsedMillis());
+        body.writeUTF(rootDir.getPath());
+        if (s == AgentProtocol.STATE_DONE) AgentProtocol.writeNode(body, root);
+    }
+
+    /**
+     * 回复 path 对应目录的前 topN 个子节点；目录在扫描时被折叠的话先重新扫描这棵子树。
+     * 重新扫描不持有本对象锁，其他请求照常处理；只在查找、把结果换进树里和编码时持锁，编码时看到的是一致的树。
+     */
+    private void writeChildren(DataOutputStream body, String path, int topN) throws IOException {
+        CompletableFuture<Void> expansion;
+        synchronized (this) {
+            FileNode node = findDirectory(path);
+            if (!node.isCollapsed) {
+                AgentProtocol.writeChildren(body, node, topN);
+                return;
+            }
+            expansion = expanding.computeIfAbsent(node.path, p -> expand(node));
+        }
+        try {
+            expansion.join();
+        } catch (CompletionException e) {
+            throw new IOException("重新扫描失败: " + path + "（" + e.getCause().getMessage() + "）");
+        }
+        synchronized (this) {
+            AgentProtocol.writeChildren(body, findDirectory(path), topN);
+        }
+    }
+
+    // 在线程池里重新扫描折叠目录，完成后持锁换进树里；失败时同样移出 expanding，下次请求重试
+    private CompletableFuture<Void> expand(FileNode node) {
+        ScanContext sub = ctx.forSubtree();
+        return CompletableFuture.runAsync(() -> {
+            FileNode fresh = null;
+            try {
+                fresh = new DiskScanner(new File(node.path), sub).invoke();
+            } finally {
+                synchronized (this) {
+                    expanding.remove(node.path);
+                    if (fresh != null) {
+                        sub.subtreeReplaced(node);
+                        node.replaceWith(fresh);
+                    }
+                }
+            }
+        }, pool);
+    }
+
+    // 调用方持有本对象锁
+    private FileNode findDirectory(String path) throws IOException {
+        if (root == null) throw new IOException("扫描尚未完成");
+        FileNode node = FileNode.findByPath(root, path);
+        if (node == null || !node.isDir) throw new IOException("扫描树中没有这个目录: " + path);
+        return node;
+    }
+}
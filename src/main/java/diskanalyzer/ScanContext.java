@@ -0,0 +1,420 @@
+package diskanalyzer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一次扫描共享的内存预算。
+ * <p>
+ * 预算按「树中保留的节点数」计：每个 FileNode 连同名称、路径字符串大约占 BYTES_PER_NODE 字节。
+ * 保留节点数超过高水位后，每个目录扫描完成时从最小的已完成子目录开始折叠，直到回落到目标水位；
+ * 折叠后的节点 (FileNode.isCollapsed) 只保留汇总统计，总大小、条目数、指纹和年龄直方图都不受影响。
+ * 目录完成时记下子树保留的节点数和附加字节数 (FileNode.retainedNodes / retainedBytes)，截断和折叠时随之修正，
+ * 选择折叠对象只看各级子节点的这两个数，不遍历子树。
+ * <p>
+ * 节点上大小随内容增长的附加数据（机群合并的各主机大小、目录的属主表和扩展名表）另按字节计入 extraBytes，折算成节点数一起参与水位判断。
+ */
+public class ScanContext {
+
+    // FileNode 对象 + 名称 + 完整路径 + 父目录列表中的引用，按典型路径长度估算
+    static final int BYTES_PER_NODE = 300;
+
+    // 0 表示自动：最大堆的一半；可由 -Ddiskanalyzer.scanHeapBudgetMB 或设置界面修改
+    private static volatile long heapBudgetBytes = Long.getLong("diskanalyzer.scanHeapBudgetMB", 0L) * 1024 * 1024;
+
+    // 是否跟随符号链接；默认不跟随，可由 -Ddiskanalyzer.followLinks=true 或设置界面打开
+    private static volatile boolean followLinks = Boolean.getBoolean("diskanalyzer.followLinks");
+
+    static final int KEEP_CHILDREN = 50;
+    static final int STREAM_TRUNCATE_AT = 4096;
+
+    private static final double HIGH_WATER = 0.9;
+    private static final double TARGET = 0.75;
+
+    final int nowMinutes;
+    final long budgetNodes;
+    // 子树重扫 (forSubtree) 与原扫描共用这三个计数，新扫描的节点计入同一份预算
+    final AtomicLong liveNodes;
+    final AtomicLong extraBytes;
+    final AtomicLong collapsedDirs;
+    // 一次完整扫描：更新 DiskScanner 的全局进度计数并上报扫描级遥测。子树重扫为 false
+    final boolean primary;
+    final boolean follow;
+    // 文件系统支持 POSIX 属主时，扫描同时按属主统计字节数和文件数
+    final boolean owners = OwnerTable.supported();
+    final ScanDiagnostics diagnostics = new ScanDiagnostics();
+    // 仅跟随模式：已进入过的目录 (fileKey)。链接成环、多个链接指向同一棵树时只统计第一次进入的那一处
+    private final Set<Object> visitedDirs;
+    // 仅跟随模式：扫描根的真实路径，由根目录任务在派生子任务之前写入；指向它以内的链接不跟随
+    Path rootRealPath;
+
+    public ScanContext() {
+        this(FileNode.nowMinutes());
+    }
+
+    /** nowMinutes：年龄分桶的基准时刻；导入外部数据时用数据本身的生成时间 */
+    public ScanContext(int nowMinutes) {
+        this(nowMinutes, effectiveBudgetBytes());
+    }
+
+    /** budgetBytes：本次构建独占的预算；同时构建多棵树（机群合并）时由调用方分摊 */
+    public ScanContext(int nowMinutes, long budgetBytes) {
+        this.nowMinutes = nowMinutes;
+        this.budgetNodes = Math.max(10_000, budgetBytes / BYTES_PER_NODE);
+        this.liveNodes = new AtomicLong();
+        this.extraBytes = new AtomicLong();
+        this.collapsedDirs = new AtomicLong();
+        this.primary = true;
+        this.follow = followLinks;
+        this.visitedDirs = follow ? ConcurrentHashMap.newKeySet() : null;
+    }
+
+    private ScanContext(ScanContext parent) {
+        this.nowMinutes = FileNode.nowMinutes();
+        this.budgetNodes = parent.budgetNodes;
+        this.liveNodes = parent.liveNodes;
+        this.extraBytes = parent.extraBytes;
+        this.collapsedDirs = parent.collapsedDirs;
+        this.primary = false;
+        this.follow = parent.follow;
+        this.visitedDirs = follow ? ConcurrentHashMap.newKeySet() : null;
+    }
+
+    /**
+     * 重新扫描已有树中一棵子树（刷新、展开折叠目录）用的上下文：与本上下文共用内存预算，
+     * 不更新全局进度计数，也不作为一次新的扫描上报遥测。子树结果并入树之前应先调用 {@link #subtreeReplaced}。
+     */
+    ScanContext forSubtree() {
+        return new ScanContext(this);
+    }
+
+    /** 没有扫描上下文的树（快照、历史记录）：新建一个，并把树中已保留的节点记入预算 */
+    static ScanContext forResidentTree(FileNode root) {
+        ScanContext ctx = new ScanContext();
+        ctx.liveNodes.addAndGet(countNodes(root));
+        ctx.bytesCharged(extraBytes(root));
+        return ctx;
+    }
+
+    /**
+     * node 即将被同一路径重扫得到的子树替换 (FileNode.replaceWith)：它原来的后代，
+     * 连同子树扫描时多算的一个根节点，从预算中扣除。
+     */
+    void subtreeReplaced(FileNode node) {
+        nodesReleased(countNodes(node));
+        bytesReleased(extraBytesBelow(node) + tableBytes(node));
+    }
+
+    public static long getHeapBudgetBytes() {
+        return heapBudgetBytes;
+    }
+
+    public static void setHeapBudgetBytes(long bytes) {
+        heapBudgetBytes = bytes;
+    }
+
+    public static long effectiveBudgetBytes() {
+        return heapBudgetBytes > 0 ? heapBudgetBytes : autoBudgetBytes();
+    }
+
+    public static long autoBudgetBytes() {
+        return Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    public static boolean isFollowLinks() {
+        return followLinks;
+    }
+
+    public static void setFollowLinks(boolean follow) {
+        followLinks = follow;
+    }
+
+    /** 目录的身份：文件系统给出的 fileKey（设备号 + inode 等），没有时退回真实路径 */
+    static Object directoryKey(Path dir, BasicFileAttributes attrs) throws IOException {
+        Object key = attrs.fileKey();
+        return key != null ? key : dir.toRealPath().toString();
+    }
+
+    /** 真实路径是否落在扫描根以内（含根本身） */
+    boolean isInsideRoot(Path realPath) {
+        return rootRealPath != null && realPath.startsWith(rootRealPath);
+    }
+
+    /** 登记一个目录；返回 false 表示它已经被扫描过（或正在被扫描） */
+    boolean claimDirectory(Object key) {
+        return visitedDirs.add(key);
+    }
+
+    public ScanDiagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    public long getCollapsedDirs() {
+        return collapsedDirs.get();
+    }
+
+    void nodesCreated(int n) {
+        liveNodes.addAndGet(n);
+    }
+
+    void nodesReleased(long n) {
+        liveNodes.addAndGet(-n);
+    }
+
+    void bytesCharged(long n) {
+        extraBytes.addAndGet(n);
+    }
+
+    void bytesReleased(long n) {
+        extraBytes.addAndGet(-n);
+    }
+
+    // 保留节点数加上附加数据折算的节点数
+    private long usedNodes() {
+        return liveNodes.get() + extraBytes.get() / BYTES_PER_NODE;
+    }
+
+    boolean overHighWater() {
+        return usedNodes() > budgetNodes * HIGH_WATER;
+    }
+
+    boolean aboveTarget() {
+        return usedNodes() > budgetNodes * TARGET;
+    }
+
+    // ---- 目录构建：扫描器和导入器 (NcduFormat) 共用，保证两种来源的树结构与统计口径一致 ----
+
+    /**
+     * 把一个文件挂到目录下并累加目录的统计。文件特别多的目录边读边截断：被挤出前 50 的文件不可能再回到前 50。
+     */
+    void addFile(FileNode dir, FileNode file) {
+        long tables = tableBytes(dir);
+        file.parent = dir;
+        dir.children.add(file);
+        dir.size += file.size;
+        dir.entryCount++;
+        dir.digest += file.digest;
+        if (dir.ageBytes != null) dir.ageBytes[FileNode.ageBucket(file.modifiedMinutes, file.accessMinutes, nowMinutes)] += file.size;
+        if (dir.owners != null && file.owner != OwnerTable.UNKNOWN) dir.owners.add(file.owner, file.size, 1);
+        if (dir.extensions != null && !file.isSymlink) dir.extensions.add(ExtensionTable.idOf(file.name), file.size, 1);
+        tablesGrown(dir, tables);
+        nodesCreated(1);
+        if (dir.children.size() >= STREAM_TRUNCATE_AT) truncate(dir);
+    }
+
+    /** 子目录构建完成后挂到 dir 下，统计自底向上合并 */
+    void addDirectory(FileNode dir, FileNode child) {
+        long tables = tableBytes(dir);
+        child.parent = dir;
+        dir.children.add(child);
+        dir.addStats(child, 1);
+        tablesGrown(dir, tables);
+    }
+
+    /** 新节点的统计表（属主、扩展名）已建立：按当前大小记入预算，之后的扩容由 addFile / addDirectory 记入 */
+    void tablesCreated(FileNode node) {
+        bytesCharged(tableBytes(node));
+    }
+
+    // 统计表扩容的部分计入预算
+    private void tablesGrown(FileNode node, long before) {
+        long grown = tableBytes(node) - before;
+        if (grown > 0) bytesCharged(grown);
+    }
+
+    /** 目录的所有子节点都已加入：排序截断，再按内存预算折叠，最后记下子树保留的节点数和附加字节数 */
+    void finishDirectory(FileNode dir) {
+        truncate(dir);
+        collapseSmallest(dir);
+        long nodes = 1;
+        long bytes = ownBytes(dir);
+        for (FileNode child : dir.children) {
+            nodes += retainedNodes(child);
+            bytes += retainedBytes(child);
+        }
+        dir.retainedNodes = nodes;
+        dir.retainedBytes = bytes;
+    }
+
+    void truncate(FileNode node) {
+        // 排序：从大到小
+        node.children.sort((a, b) -> Long.compare(b.size, a.size));
+        if (node.children.size() <= KEEP_CHILDREN) return;
+
+        long otherSize = 0;
+        long otherEntries = 0;
+        long otherDigest = 0;
+        long released = 0;
+        long releasedBytes = 0;
+        boolean hadOther = false;
+        OwnerTable.Usage otherOwners = node.owners != null ? new OwnerTable.Usage() : null;
+        ExtensionTable.Counts otherExtensions = node.extensions != null ? new ExtensionTable.Counts() : null;
+        List<FileNode> keep = new ArrayList<>(KEEP_CHILDREN + 1);
+        for (FileNode child : node.children) {
+            // 之前边读边截断时已经生成过 Other，合并进新的 Other
+            if (keep.size() < KEEP_CHILDREN && !child.isOther) {
+                keep.add(child);
+                continue;
+            }
+            hadOther |= child.isOther;
+            otherSize += child.size;
+            otherEntries += child.entryCount + 1;
+            otherDigest += child.digest;
+            if (otherOwners != null) otherOwners.addNode(child, 1);
+            if (otherExtensions != null) otherExtensions.addNode(child, 1);
+            released += retainedNodes(child);
+            releasedBytes += retainedBytes(child);
+        }
+
+        if (otherSize > 0 || hadOther) {
+            // 创建 Other 节点（条目数与指纹保持「父 = 子之和」的约定，便于增量修正）
+            FileNode other = new FileNode("[Other Files]", node.path, false);
+            other.size = otherSize;
+            other.entryCount = otherEntries - 1;
+            other.digest = otherDigest;
+            other.isOther = true;
+            other.owners = otherOwners;
+            other.extensions = otherExtensions;
+            // 删除流水线把未单独记录的文件记在 Other 上，再沿 parent 链向上扣减，所以 Other 也要挂上父目录
+            other.parent = node;
+            keep.add(other);
+            tablesCreated(other);
+            released--;
+        }
+        node.children = keep;
+        nodesReleased(released);
+        bytesReleased(releasedBytes);
+
+        ScanTelemetry.TruncationEvent event = new ScanTelemetry.TruncationEvent();
+        if (event.shouldCommit()) {
+            event.path = node.path;
+            event.kept = KEEP_CHILDREN;
+            event.foldedEntries = otherEntries;
+            event.commit();
+        }
+    }
+
+    /**
+     * 保留节点数超过高水位时，在本目录已完成的子树中从最小的目录开始折叠，直到回落到目标水位。
+     * 折叠后的节点保留大小、条目数、指纹和年龄直方图，子节点在报告视图下钻时重新扫描。
+     */
+    void collapseSmallest(FileNode node) {
+        if (!overHighWater()) return;
+
+        ScanTelemetry.CollapseEvent event = new ScanTelemetry.CollapseEvent();
+        event.begin();
+        Released released = new Released();
+        collapseWithin(node, released);
+        event.end();
+        if (released.dirs > 0 && event.shouldCommit()) {
+            event.path = node.path;
+            event.collapsedDirs = released.dirs;
+            event.releasedNodes = released.nodes;
+            event.liveNodes = liveNodes.get();
+            event.commit();
+        }
+    }
+
+    // 一次折叠累计释放的目录数、节点数和附加字节数
+    private static final class Released {
+        int dirs;
+        long nodes;
+        long bytes;
+    }
+
+    /**
+     * 从 dir 最小的子目录开始：整个折叠释放的量超过仍需释放的量时，先在它内部折叠更小的子树，仍不够再折叠它本身。
+     * 每一级只排序该目录的子节点（截断后至多 KEEP_CHILDREN + 1 个），释放量取自子节点上记下的统计。
+     */
+    private void collapseWithin(FileNode dir, Released released) {
+        List<FileNode> candidates = new ArrayList<>();
+        for (FileNode child : dir.children) {
+            if (child.isDir && !child.isOther && !child.isCollapsed && !child.children.isEmpty()) candidates.add(child);
+        }
+        candidates.sort((a, b) -> a.size != b.size ? Long.compare(a.size, b.size) : Long.compare(a.entryCount, b.entryCount));
+        for (FileNode child : candidates) {
+            if (!aboveTarget()) return;
+            if (releasable(child) > excessNodes()) {
+                long nodes = released.nodes;
+                long bytes = released.bytes;
+                collapseWithin(child, released);
+                if (child.retainedNodes > 0) {
+                    child.retainedNodes -= released.nodes - nodes;
+                    child.retainedBytes -= released.bytes - bytes;
+                }
+                if (!aboveTarget()) return;
+            }
+            collapse(child, released);
+        }
+    }
+
+    private void collapse(FileNode dir, Released released) {
+        long nodes = retainedNodes(dir) - 1;
+        long bytes = retainedBytes(dir) - ownBytes(dir);
+        nodesReleased(nodes);
+        bytesReleased(bytes);
+        dir.children = new ArrayList<>(0);
+        dir.isCollapsed = true;
+        if (dir.retainedNodes > 0) {
+            dir.retainedNodes = 1;
+            dir.retainedBytes = ownBytes(dir);
+        }
+        collapsedDirs.incrementAndGet();
+        released.dirs++;
+        released.nodes += nodes;
+        released.bytes += bytes;
+    }
+
+    // 折叠 dir 能释放的量（折算成节点数）
+    private static long releasable(FileNode dir) {
+        return retainedNodes(dir) - 1 + (retainedBytes(dir) - ownBytes(dir)) / BYTES_PER_NODE;
+    }
+
+    // 回落到目标水位还需释放的节点数
+    private long excessNodes() {
+        return usedNodes() - (long) (budgetNodes * TARGET);
+    }
+
+    // 子树保留的节点数：已完成的目录取记下的值，其余（文件、[Other Files]、机群合并树的节点）现算
+    private static long retainedNodes(FileNode node) {
+        return node.retainedNodes > 0 ? node.retainedNodes : countNodes(node);
+    }
+
+    private static long retainedBytes(FileNode node) {
+        return node.retainedNodes > 0 ? node.retainedBytes : extraBytes(node);
+    }
+
+    // node 自身（不含后代）上记账的附加字节数
+    private static long ownBytes(FileNode node) {
+        return (node.hosts != null ? node.hosts.bytes() : 0) + tableBytes(node);
+    }
+
+    // node 自身的统计表占用
+    private static long tableBytes(FileNode node) {
+        return (node.owners != null ? node.owners.bytes() : 0) + (node.extensions != null ? node.extensions.bytes() : 0);
+    }
+
+    // node 自身及其后代上记账的附加字节数
+    private static long extraBytes(FileNode node) {
+        return ownBytes(node) + extraBytesBelow(node);
+    }
+
+    // node 的后代（不含 node 本身）上记账的附加字节数
+    private static long extraBytesBelow(FileNode node) {
+        long n = 0;
+        for (FileNode child : node.children) n += extraBytes(child);
+        return n;
+    }
+
+    private static long countNodes(FileNode node) {
+        long n = 1;
+        for (FileNode child : node.children) n += countNodes(child);
+        return n;
+    }
+}
@@ -0,0 +1,115 @@
+package diskanalyzer;
+
+import java.nio.file.AccessDeniedException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一次扫描的诊断信息：每个目录列举（读目录 + 逐项读属性，不含子目录）的耗时、最慢的若干目录，
+ * 以及被跳过的路径和原因。
+ * <p>
+ * 所有结构都有上限：最慢目录只保留 SLOWEST_KEEP 个（小顶堆，低于门槛的记录不加锁直接丢弃），
+ * 错误明细只保留前 ERRORS_KEEP 条，计数不受影响。按顶层目录汇总的耗时只有根目录子项那么多条。
+ */
+public class ScanDiagnostics {
+
+    static final int SLOWEST_KEEP = 50;
+    static final int ERRORS_KEEP = 500;
+
+    public enum ErrorKind {
+        PERMISSION("权限不足"), OTHER("其他错误");
+
+        final String label;
+
+        ErrorKind(String label) {
+            this.label = label;
+        }
+    }
+
+    public record Listing(String path, long entries, long nanos) { }
+
+    public record ScanError(String path, ErrorKind kind, String message) { }
+
+    /** 某个顶层目录（根目录的直接子目录）下所有列举的耗时与目录数 */
+    public record TopLevel(String name, long nanos, long dirs) { }
+
+    private final PriorityQueue<Listing> slowest = new PriorityQueue<>(SLOWEST_KEEP + 1, Comparator.comparingLong(Listing::nanos));
+    // 堆满后的入选门槛：比它快的记录在加锁前就被丢弃，绝大多数目录只付出一次 volatile 读
+    private volatile long threshold;
+
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder listedDirs = new LongAdder();
+    private final Map<String, LongAdder[]> byTopLevel = new ConcurrentHashMap<>();
+
+    private final AtomicLong permissionErrors = new AtomicLong();
+    private final AtomicLong otherErrors = new AtomicLong();
+    private final AtomicInteger keptErrors = new AtomicInteger();
+    private final Queue<ScanError> errors = new ConcurrentLinkedQueue<>();
+
+    /** topLevel：所属的顶层目录名，根目录自身为 null */
+    void recordListing(String path, String topLevel, long entries, long nanos) {
+        totalNanos.add(nanos);
+        listedDirs.increment();
+        LongAdder[] acc = byTopLevel.computeIfAbsent(topLevel == null ? "" : topLevel, k -> new LongAdder[]{new LongAdder(), new LongAdder()});
+        acc[0].add(nanos);
+        acc[1].increment();
+
+        if (nanos <= threshold) return;
+        synchronized (slowest) {
+            slowest.add(new Listing(path, entries, nanos));
+            if (slowest.size() > SLOWEST_KEEP) slowest.poll();
+            if (slowest.size() == SLOWEST_KEEP) threshold = slowest.peek().nanos();
+        }
+    }
+
+    void recordError(String path, Throwable e) {
+        ErrorKind kind = e instanceof AccessDeniedException || e instanceof SecurityException ? ErrorKind.PERMISSION : ErrorKind.OTHER;
+        (kind == ErrorKind.PERMISSION ? permissionErrors : otherErrors).incrementAndGet();
+        if (keptErrors.incrementAndGet() <= ERRORS_KEEP) {
+            String message = e.getClass().getSimpleName() + (e.getMessage() != null && !e.getMessage().equals(path) ? ": " + e.getMessage() : "");
+            errors.add(new ScanError(path, kind, message));
+        }
+    }
+
+    /** 从慢到快 */
+    public List<Listing> getSlowest() {
+        List<Listing> list;
+        synchronized (slowest) {
+            list = new ArrayList<>(slowest);
+        }
+        list.sort(Comparator.comparingLong(Listing::nanos).reversed());
+        return list;
+    }
+
+    /** 按耗时从多到少；根目录自身的列举记在空名称下 */
+    public List<TopLevel> getTopLevels() {
+        List<TopLevel> list = new ArrayList<>(byTopLevel.size());
+        byTopLevel.forEach((name, acc) -> list.add(new TopLevel(name, acc[0].sum(), acc[1].sum())));
+        list.sort(Comparator.comparingLong(TopLevel::nanos).reversed());
+        return list;
+    }
+
+    public List<ScanError> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getListedDirs() {
+        return listedDirs.sum();
+    }
+
+    public long getPermissionErrors() {
+        return permissionErrors.get();
+    }
+
+    public long getOtherErrors() {
+        return otherErrors.get();
+    }
+}
@@ -0,0 +1,133 @@
+package diskanalyzer;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 扫描进度与剩余时间的估算。
+ * <p>
+ * 两个来源：
+ * 1. 同一根目录上一次扫描的快照——根节点的条目数和总大小，扫描耗时主要花在逐条目的系统调用上，条目数是最好的参照；
+ * 2. 根目录所在文件系统的已用空间——只有根目录正好是挂载点时才接近真实总量，否则只是上限。
+ * <p>
+ * create() 会做少量 I/O（读快照头、查询 FileStore），应在后台线程调用；update() 是纯计算。
+ */
+public class ScanEstimator {
+
+    public enum Confidence {
+        HIGH("高"), MEDIUM("中"), LOW("低");
+
+        private final String label;
+
+        Confidence(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    /** fraction 为 -1 表示无从估算；etaMillis 为 -1 表示剩余时间暂不可知 */
+    public record Estimate(double fraction, long etaMillis, Confidence confidence) { }
+
+    private static final double MAX_RUNNING_FRACTION = 0.99;
+    private static final long STALE_SNAPSHOT_MILLIS = 30L * 24 * 3600 * 1000;
+    private static final long ETA_WARMUP_MILLIS = 2000;
+    private static final double RATE_SMOOTHING = 0.1;
+
+    private final long previousEntries;
+    private final long previousBytes;
+    private final boolean previousFresh;
+    private final long storeUsedBytes;
+    private final boolean storeIsRoot;
+
+    private double lastFraction;
+    private long lastElapsed;
+    private double smoothedRate; // 每毫秒完成的比例
+
+    private ScanEstimator(long previousEntries, long previousBytes, boolean previousFresh, long storeUsedBytes, boolean storeIsRoot) {
+        this.previousEntries = previousEntries;
+        this.previousBytes = previousBytes;
+        this.previousFresh = previousFresh;
+        this.storeUsedBytes = storeUsedBytes;
+        this.storeIsRoot = storeIsRoot;
+    }
+
+    public static ScanEstimator create(Path root) {
+        long prevEntries = 0, prevBytes = 0;
+        boolean fresh = false;
+        Path snapshot = SnapshotIO.latestFile(root.toString());
+        if (Files.exists(snapshot)) {
+            try {
+                FileNode previous = SnapshotIO.peekRoot(snapshot);
+                prevEntries = previous.entryCount;
+                prevBytes = previous.size;
+                fresh = System.currentTimeMillis() - Files.getLastModifiedTime(snapshot).toMillis() < STALE_SNAPSHOT_MILLIS;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        long used = 0;
+        boolean isRoot = false;
+        try {
+            FileStore store = Files.getFileStore(root);
+            used = store.getTotalSpace() - store.getUnallocatedSpace();
+            Path parent = root.toAbsolutePath().getParent();
+            isRoot = parent == null || !Files.getFileStore(parent).equals(store);
+        } catch (IOException | SecurityException e) {
+            // 取不到文件系统信息时只依赖历史快照
+        }
+        return new ScanEstimator(prevEntries, prevBytes, fresh, used, isRoot);
+    }
+
+    /**
+     * @param entries 已扫描的条目数（文件 + 子目录，不含根目录自身），与快照中根节点的 entryCount 同口径
+     * @param bytes   已扫描的文件总大小
+     */
+    public Estimate update(long entries, long bytes, long elapsedMillis) {
+        double fraction;
+        Confidence confidence;
+        if (previousEntries > 0 && previousBytes > 0) {
+            double byEntries = (double) entries / previousEntries;
+            double byBytes = (double) bytes / previousBytes;
+            fraction = 0.7 * byEntries + 0.3 * byBytes;
+            // 两个口径走得一致，说明目录结构和上次差不多
+            confidence = previousFresh && Math.abs(byEntries - byBytes) < 0.15 ? Confidence.HIGH : Confidence.MEDIUM;
+        } else if (storeUsedBytes > 0) {
+            fraction = (double) bytes / storeUsedBytes;
+            confidence = storeIsRoot ? Confidence.MEDIUM : Confidence.LOW;
+        } else {
+            return new Estimate(-1, -1, Confidence.LOW);
+        }
+
+        // 进度只增不减；真实总量超出估计时停在 99%，直到扫描结束
+        fraction = Math.max(lastFraction, Math.min(MAX_RUNNING_FRACTION, fraction));
+
+        long dt = elapsedMillis - lastElapsed;
+        if (dt > 0) {
+            double rate = (fraction - lastFraction) / dt;
+            smoothedRate = smoothedRate == 0 ? rate : smoothedRate + RATE_SMOOTHING * (rate - smoothedRate);
+            lastElapsed = elapsedMillis;
+        }
+        lastFraction = fraction;
+
+        long eta = -1;
+        if (elapsedMillis >= ETA_WARMUP_MILLIS && fraction > 0) {
+            // 平滑速率和全程平均速率取较慢者，避免缓存命中的一段把剩余时间估得过短
+            double rate = Math.min(smoothedRate, fraction / elapsedMillis);
+            if (rate > 0) eta = (long) ((1 - fraction) / rate);
+        }
+        return new Estimate(fraction, eta, confidence);
+    }
+
+    public static String formatEta(long millis) {
+        long seconds = Math.max(1, millis / 1000);
+        if (seconds < 60) return seconds + " 秒";
+        if (seconds < 3600) return (seconds / 60) + " 分 " + (seconds % 60) + " 秒";
+        return (seconds / 3600) + " 小时 " + (seconds % 3600 / 60) + " 分";
+    }
+}
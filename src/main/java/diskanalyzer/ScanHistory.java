@@ -0,0 +1,360 @@
+package diskanalyzer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.IsoFields;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 同一根目录的扫描历史：一份完整快照 (keyframe) 加上后续每次扫描相对前一次的增量。
+ * <p>
+ * 增量只记录发生变化的目录：未变化的子节点只写名字 (KEEP)，变化的目录递归打补丁 (PATCH)，
+ * 新增或类型改变的条目整棵写出 (FULL)。应用增量时未变化的子树直接复用上一时刻的节点对象，
+ * 因此重建一个时间点的开销与变化量成正比。
+ * <p>
+ * 每 {@link #KEYFRAME_INTERVAL} 次扫描写一份新的完整快照，任一时间点最多需要「一份快照 + 若干增量」即可重建。
+ * 超过 {@link #COMPACT_AFTER_DAYS} 天的增量按周合并，只保留每周最后一个时间点。
+ */
+public class ScanHistory {
+
+    private static final int MAGIC = 0x44534844; // "DSHD"
+    private static final int KEYFRAME_INTERVAL = 16;
+    private static final int COMPACT_AFTER_DAYS = 30;
+
+    private static final int TAG_KEEP = 0;
+    private static final int TAG_PATCH = 1;
+    private static final int TAG_FULL = 2;
+
+    private static final Object LOCK = new Object();
+
+    /** 索引中的一个时间点 */
+    public static class Entry {
+        final long timestamp;
+        final boolean full;
+        final String file;
+        final long rootSize;
+
+        Entry(long timestamp, boolean full, String file, long rootSize) {
+            this.timestamp = timestamp;
+            this.full = full;
+            this.file = file;
+            this.rootSize = rootSize;
+        }
+
+        public long getTimestamp() { return timestamp; }
+        public long getRootSize() { return rootSize; }
+    }
+
+    /** 某个目录在某一时间点的大小，用于趋势图 */
+    public record Point(long timestamp, long size) { }
+
+    private final Path dir;
+    private final String rootPath;
+
+    private ScanHistory(String rootPath) {
+        this.rootPath = rootPath;
+        this.dir = SnapshotIO.dataDir().resolve("history").resolve(SnapshotIO.rootKey(rootPath));
+    }
+
+    public static ScanHistory forRoot(String rootPath) {
+        return new ScanHistory(rootPath);
+    }
+
+    public boolean isEmpty() {
+        synchronized (LOCK) {
+            return readIndex().isEmpty();
+        }
+    }
+
+    public List<Entry> entries() {
+        synchronized (LOCK) {
+            return readIndex();
+        }
+    }
+
+    /**
+     * 记录一次新的扫描结果，随后顺带做一次压缩。
+     * root 在写入期间不能被修改：写坏的增量或快照会被之后的每次回放沿用，
+     * 报告视图中的树应先用 {@link FileNode#frozenCopy()} 复制一份再传入。
+     */
+    public void append(FileNode root, long timestamp) throws IOException {
+        synchronized (LOCK) {
+            Files.createDirectories(dir);
+            List<Entry> index = readIndex();
+
+            int sinceKeyframe = 0;
+            for (int i = index.size() - 1; i >= 0 && !index.get(i).full; i--) sinceKeyframe++;
+
+            String file = timestamp + (index.isEmpty() || sinceKeyframe + 1 >= KEYFRAME_INTERVAL ? ".full" : ".delta");
+            if (file.endsWith(".full")) {
+                writeFull(dir.resolve(file), root);
+            } else {
+                FileNode last = reconstruct(index, index.size() - 1);
+                writeDelta(dir.resolve(file), last, root);
+            }
+            index.add(new Entry(timestamp, file.endsWith(".full"), file, root.size));
+            writeIndex(index);
+
+            compact(index, timestamp);
+        }
+    }
+
+    /**
+     * 重建第 i 个时间点的完整树（含正确的 parent 引用），可直接交给报告视图。
+     */
+    public FileNode load(int i) throws IOException {
+        synchronized (LOCK) {
+            FileNode root = reconstruct(readIndex(), i);
+            relink(root, null);
+            return root;
+        }
+    }
+
+    /**
+     * 某个目录随时间的大小变化。顺序回放整条历史，每步只应用增量，不会重复读完整快照。
+     */
+    public List<Point> sizeSeries(String path) throws IOException {
+        synchronized (LOCK) {
+            List<Entry> index = readIndex();
+            String[] parts = relativeParts(path);
+            List<Point> series = new ArrayList<>(index.size());
+            FileNode current = null;
+            for (Entry e : index) {
+                current = e.full ? readFull(dir.resolve(e.file)) : readDelta(dir.resolve(e.file), current);
+                FileNode node = find(current, parts);
+                series.add(new Point(e.timestamp, node == null ? 0 : node.size));
+            }
+            return series;
+        }
+    }
+
+    // --- 重建与压缩 ---
+
+    private FileNode reconstruct(List<Entry> index, int target) throws IOException {
+        int start = target;
+        while (start > 0 && !index.get(start).full) start--;
+        FileNode current = readFull(dir.resolve(index.get(start).file));
+        for (int i = start + 1; i <= target; i++) {
+            current = readDelta(dir.resolve(index.get(i).file), current);
+        }
+        return current;
+    }
+
+    /**
+     * 把早于 COMPACT_AFTER_DAYS 天、位于同一 ISO 周内的连续增量合并成一个增量，只保留该周最后的时间点。
+     * 完整快照不参与合并，增量链因此始终有效。
+     */
+    private void compact(List<Entry> index, long now) throws IOException {
+        long cutoff = now - COMPACT_AFTER_DAYS * 24L * 3600 * 1000;
+
+        // 先只看索引：找到第一对可以合并的相邻增量，没有就不必回放
+        int first = -1;
+        for (int i = 1; i < index.size() && first < 0; i++) {
+            Entry a = index.get(i - 1), b = index.get(i);
+            if (!a.full && !b.full && b.timestamp < cutoff && week(a.timestamp) == week(b.timestamp)) first = i - 1;
+        }
+        if (first < 0) return;
+        int start = first;
+        while (!index.get(start).full) start--;
+
+        List<Entry> result = new ArrayList<>(index.subList(0, start));
+        List<String> obsolete = new ArrayList<>();
+
+        FileNode current = null;     // 当前回放到的树
+        FileNode groupBase = null;   // 合并组开始之前的树
+        List<Entry> group = new ArrayList<>();
+        boolean changed = false;
+
+        for (Entry e : index.subList(start, index.size())) {
+            boolean mergeable = !e.full && e.timestamp < cutoff;
+            if (!group.isEmpty() && (!mergeable || week(e.timestamp) != week(group.get(0).timestamp))) {
+                changed |= flushGroup(group, groupBase, current, result, obsolete);
+                group.clear();
+            }
+            FileNode before = current;
+            current = e.full ? readFull(dir.resolve(e.file)) : readDelta(dir.resolve(e.file), current);
+            if (mergeable) {
+                if (group.isEmpty()) groupBase = before;
+                group.add(e);
+            } else {
+                result.add(e);
+            }
+        }
+        if (!group.isEmpty()) changed |= flushGroup(group, groupBase, current, result, obsolete);
+
+        if (changed) {
+            writeIndex(result);
+            for (String f : obsolete) Files.deleteIfExists(dir.resolve(f));
+        }
+    }
+
+    private boolean flushGroup(List<Entry> group, FileNode base, FileNode end,
+                               List<Entry> result, List<String> obsolete) throws IOException {
+        Entry last = group.get(group.size() - 1);
+        if (group.size() == 1) {
+            result.add(last);
+            return false;
+        }
+        String file = last.timestamp + ".merged.delta";
+        writeDelta(dir.resolve(file), base, end);
+        result.add(new Entry(last.timestamp, false, file, last.rootSize));
+        for (Entry e : group) {
+            if (!e.file.equals(file)) obsolete.add(e.file);
+        }
+        return true;
+    }
+
+    private static long week(long timestamp) {
+        var date = Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDate();
+        return date.get(IsoFields.WEEK_BASED_YEAR) * 100L + date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+    }
+
+    // --- 文件格式 ---
+
+    private static void writeFull(Path file, FileNode root) throws IOException {
+        try (DataOutputStream out = openOut(file)) {
+            SnapshotIO.writeNode(out, root);
+        }
+    }
+
+    private FileNode readFull(Path file) throws IOException {
+        try (DataInputStream in = openIn(file)) {
+            return SnapshotIO.readNode(in, null, rootPath);
+        }
+    }
+
+    private static void writeDelta(Path file, FileNode before, FileNode after) throws IOException {
+        try (DataOutputStream out = openOut(file)) {
+            writePatch(out, before, after);
+        }
+    }
+
+    private FileNode readDelta(Path file, FileNode before) throws IOException {
+        try (DataInputStream in = openIn(file)) {
+            return readPatch(in, before, null, rootPath);
+        }
+    }
+
+    private static void writePatch(DataOutputStream out, FileNode before, FileNode after) throws IOException {
+        SnapshotIO.writeHeader(out, after);
+        if (!after.isDir) return;
+
+        Map<String, FileNode> old = new HashMap<>();
+        for (FileNode c : before.children) old.put(c.name, c);
+
+        out.writeInt(after.children.size());
+        for (FileNode child : after.children) {
+            FileNode prev = old.get(child.name);
+            if (prev != null && prev.isDir == child.isDir && prev.isOther == child.isOther
+                    && prev.digest == child.digest && prev.size == child.size && prev.entryCount == child.entryCount) {
+                out.writeByte(TAG_KEEP);
+                out.writeUTF(child.name);
+            } else if (prev != null && prev.isDir && child.isDir) {
+                out.writeByte(TAG_PATCH);
+                out.writeUTF(child.name);
+                writePatch(out, prev, child);
+            } else {
+                out.writeByte(TAG_FULL);
+                SnapshotIO.writeNode(out, child);
+            }
+        }
+    }
+
+    private static FileNode readPatch(DataInputStream in, FileNode before, FileNode parent, String path) throws IOException {
+        FileNode node = SnapshotIO.readHeader(in, parent, path);
+        if (!node.isDir) return node;
+
+        Map<String, FileNode> old = new HashMap<>();
+        for (FileNode c : before.children) old.put(c.name, c);
+
+        int count = in.readInt();
+        node.children = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int tag = in.readByte();
+            switch (tag) {
+                // 结构共享：未变化的子树直接复用，parent 引用在 load() 时统一修正
+                case TAG_KEEP -> node.children.add(old.get(in.readUTF()));
+                case TAG_PATCH -> node.children.add(readPatch(in, old.get(in.readUTF()), node, null));
+                case TAG_FULL -> node.children.add(SnapshotIO.readNode(in, node, null));
+                default -> throw new IOException("损坏的增量记录: tag=" + tag);
+            }
+        }
+        return node;
+    }
+
+    private static DataOutputStream openOut(Path file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(file)), 1 << 16));
+        out.writeInt(MAGIC);
+        return out;
+    }
+
+    private static DataInputStream openIn(Path file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file)), 1 << 16));
+        if (in.readInt() != MAGIC) throw new IOException("不是有效的历史文件: " + file);
+        return in;
+    }
+
+    // 索引是纯文本，每行一个时间点：时间戳、类型 (F/D)、文件名、根目录大小
+    private List<Entry> readIndex() {
+        Path indexFile = dir.resolve("index.txt");
+        List<Entry> list = new ArrayList<>();
+        if (!Files.exists(indexFile)) return list;
+        try {
+            for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+                String[] f = line.split("\t");
+                if (f.length < 4) continue;
+                list.add(new Entry(Long.parseLong(f[0]), f[1].equals("F"), f[2], Long.parseLong(f[3])));
+            }
+        } catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+        }
+        return list;
+    }
+
+    private void writeIndex(List<Entry> index) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Entry e : index) {
+            sb.append(e.timestamp).append('\t').append(e.full ? "F" : "D").append('\t')
+              .append(e.file).append('\t').append(e.rootSize).append('\n');
+        }
+        Path tmp = dir.resolve("index.txt.tmp");
+        Files.writeString(tmp, sb, StandardCharsets.UTF_8);
+        Files.move(tmp, dir.resolve("index.txt"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // --- 树工具 ---
+
+    private String[] relativeParts(String path) {
+        if (path.equals(rootPath)) return new String[0];
+        String rel = path.startsWith(rootPath) ? path.substring(rootPath.length()) : path;
+        return Arrays.stream(rel.split(java.util.regex.Pattern.quote(File.separator)))
+                .filter(p -> !p.isEmpty()).toArray(String[]::new);
+    }
+
+    private static FileNode find(FileNode root, String[] parts) {
+        FileNode node = root;
+        for (String part : parts) {
+            FileNode next = null;
+            for (FileNode c : node.children) {
+                if (!c.isOther && c.name.equals(part)) { next = c; break; }
+            }
+            if (next == null) return null;
+            node = next;
+        }
+        return node;
+    }
+
+    private static void relink(FileNode node, FileNode parent) {
+        node.parent = parent;
+        for (FileNode c : node.children) relink(c, node);
+    }
+}
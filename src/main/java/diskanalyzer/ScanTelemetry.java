@@ -0,0 +1,217 @@
+package diskanalyzer;
+
+import jdk.jfr.*;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * 扫描遥测：供标准 JVM 工具观察扫描，不额外写日志。
+ * <ul>
+ *   <li>JFR 事件：整次扫描、单个目录的列举、慢的 stat 调用、目录截断和按预算折叠。
+ *       未开启录制时事件对象会被 JIT 消除，只剩一次 enabled 检查；
+ *       列举和 stat 事件带默认阈值，可在 .jfc 配置中调整。</li>
+ *   <li>JMX：DiskScanner 的全局计数器和当前扫描的预算、诊断计数，注册为 {@value #OBJECT_NAME}，
+ *       jconsole / VisualVM 或任何 JMX 采集器都能直接读取。</li>
+ * </ul>
+ * 例：<code>java -XX:StartFlightRecording=filename=scan.jfr -cp target/classes diskanalyzer.ScanAgent /data</code>
+ */
+public final class ScanTelemetry {
+
+    static final String OBJECT_NAME = "diskanalyzer:type=ScanStats";
+
+    // 最近一次开始的扫描；MXBean 从中读取预算和诊断计数
+    private static volatile ScanContext activeContext;
+    private static volatile long scanStartMillis;
+    private static volatile long scanEndMillis;
+    private static volatile boolean registered;
+
+    private ScanTelemetry() {
+    }
+
+    @Name("diskanalyzer.Scan")
+    @Label("Disk Scan")
+    @Category({"Disk Analyzer"})
+    @Description("一次完整的目录扫描")
+    static final class ScanEvent extends Event {
+        @Label("Root") String root;
+        @Label("Files") long files;
+        @Label("Directories") long directories;
+        @Label("Bytes") @DataAmount long bytes;
+        @Label("Collapsed Directories") long collapsedDirs;
+        @Label("Permission Errors") long permissionErrors;
+        @Label("Other Errors") long otherErrors;
+    }
+
+    @Name("diskanalyzer.DirectoryListing")
+    @Label("Directory Listing")
+    @Category({"Disk Analyzer"})
+    @Description("列举一个目录：打开目录并逐项读取属性，不含子目录")
+    @Threshold("5 ms")
+    static final class DirectoryListingEvent extends Event {
+        @Label("Path") String path;
+        @Label("Entries") long entries;
+    }
+
+    @Name("diskanalyzer.SlowStat")
+    @Label("Slow Stat")
+    @Category({"Disk Analyzer"})
+    @Description("读取单个条目属性的耗时超过阈值")
+    @Threshold("20 ms")
+    static final class SlowStatEvent extends Event {
+        @Label("Path") String path;
+    }
+
+    @Name("diskanalyzer.Truncation")
+    @Label("Directory Truncation")
+    @Category({"Disk Analyzer"})
+    @Description("目录只保留前若干个子节点，其余归并为 [Other Files]")
+    static final class TruncationEvent extends Event {
+        @Label("Path") String path;
+        @Label("Kept Children") int kept;
+        @Label("Folded Entries") long foldedEntries;
+    }
+
+    @Name("diskanalyzer.Collapse")
+    @Label("Budget Collapse")
+    @Category({"Disk Analyzer"})
+    @Description("保留节点数超过内存预算高水位，折叠最小的已完成目录")
+    static final class CollapseEvent extends Event {
+        @Label("Path") String path;
+        @Label("Collapsed Directories") int collapsedDirs;
+        @Label("Released Nodes") long releasedNodes;
+        @Label("Live Nodes") long liveNodes;
+    }
+
+    /** 扫描计数器的 JMX 视图；所有值都是只读的即时读数 */
+    public interface ScanStatsMXBean {
+        long getFilesScanned();
+
+        long getDirectoriesScanned();
+
+        long getBytesScanned();
+
+        String getCurrentPath();
+
+        boolean isScanning();
+
+        long getElapsedMillis();
+
+        long getLiveNodes();
+
+        long getBudgetNodes();
+
+        long getCollapsedDirectories();
+
+        long getListedDirectories();
+
+        long getPermissionErrors();
+
+        long getOtherErrors();
+    }
+
+    private static final class ScanStats implements ScanStatsMXBean {
+        @Override
+        public long getFilesScanned() {
+            return DiskScanner.scannedFileCount.get();
+        }
+
+        @Override
+        public long getDirectoriesScanned() {
+            return DiskScanner.scannedDirCount.get();
+        }
+
+        @Override
+        public long getBytesScanned() {
+            return DiskScanner.scannedTotalSize.get();
+        }
+
+        @Override
+        public String getCurrentPath() {
+            return DiskScanner.currentScanningPath.get();
+        }
+
+        @Override
+        public boolean isScanning() {
+            return scanStartMillis != 0 && scanEndMillis == 0;
+        }
+
+        @Override
+        public long getElapsedMillis() {
+            long start = scanStartMillis;
+            if (start == 0) return 0;
+            long end = scanEndMillis;
+            return (end != 0 ? end : System.currentTimeMillis()) - start;
+        }
+
+        @Override
+        public long getLiveNodes() {
+            ScanContext ctx = activeContext;
+            return ctx == null ? 0 : ctx.liveNodes.get();
+        }
+
+        @Override
+        public long getBudgetNodes() {
+            ScanContext ctx = activeContext;
+            return ctx == null ? 0 : ctx.budgetNodes;
+        }
+
+        @Override
+        public long getCollapsedDirectories() {
+            ScanContext ctx = activeContext;
+            return ctx == null ? 0 : ctx.collapsedDirs.get();
+        }
+
+        @Override
+        public long getListedDirectories() {
+            ScanContext ctx = activeContext;
+            return ctx == null ? 0 : ctx.diagnostics.getListedDirs();
+        }
+
+        @Override
+        public long getPermissionErrors() {
+            ScanContext ctx = activeContext;
+            return ctx == null ? 0 : ctx.diagnostics.getPermissionErrors();
+        }
+
+        @Override
+        public long getOtherErrors() {
+            ScanContext ctx = activeContext;
+            return ctx == null ? 0 : ctx.diagnostics.getOtherErrors();
+        }
+    }
+
+    /** 注册 MXBean；重复调用无副作用，失败只打印（没有 JMX 也不影响扫描） */
+    static synchronized void register() {
+        if (registered) return;
+        registered = true;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new ScanStats(), new ObjectName(OBJECT_NAME));
+        } catch (Exception | LinkageError e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** 根目录扫描开始：记下上下文供 MXBean 读取 */
+    static void scanStarted(ScanContext ctx) {
+        register();
+        activeContext = ctx;
+        scanStartMillis = System.currentTimeMillis();
+        scanEndMillis = 0;
+    }
+
+    static void scanFinished(ScanEvent event, FileNode root, ScanContext ctx) {
+        scanEndMillis = System.currentTimeMillis();
+        event.end();
+        if (event.shouldCommit()) {
+            event.root = root.path;
+            event.files = DiskScanner.scannedFileCount.get();
+            event.directories = DiskScanner.scannedDirCount.get();
+            event.bytes = root.size;
+            event.collapsedDirs = ctx.collapsedDirs.get();
+            event.permissionErrors = ctx.diagnostics.getPermissionErrors();
+            event.otherErrors = ctx.diagnostics.getOtherErrors();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package diskanalyzer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 对比同一根目录的两次扫描结果，生成「大小变化树」。
+ * <p>
+ * 每一层按名称归并连接 (merge-join) 两侧的子节点；两侧指纹、大小、条目数都相同的子树直接跳过，
+ * 所以耗时只与发生变化的部分成正比。
+ * <p>
+ * 结果仍是 FileNode 树，可以直接交给 NativeReportView：delta 为带符号的净变化，
+ * size 为变化量的绝对值（目录为子节点变化量之和），用于饼图比例和按绝对变化排序。
+ */
+public class SnapshotDiff {
+
+    private static final Comparator<FileNode> BY_NAME = Comparator.comparing(n -> n.name);
+
+    /**
+     * @return 变化树的根；两次扫描完全一致时返回一个没有子节点、delta 为 0 的根
+     */
+    public static FileNode compare(FileNode before, FileNode after) {
+        FileNode root = diff(before, after, null);
+        if (root == null) {
+            root = new FileNode(after.name, after.path, true);
+        }
+        return root;
+    }
+
+    private static boolean unchanged(FileNode a, FileNode b) {
+        return a.digest == b.digest && a.size == b.size && a.entryCount == b.entryCount && a.isDir == b.isDir;
+    }
+
+    private static FileNode diff(FileNode a, FileNode b, FileNode parent) {
+        if (a != null && b != null && unchanged(a, b)) return null;
+
+        FileNode ref = b != null ? b : a;
+        FileNode node = new FileNode(ref.name, ref.path, ref.isDir);
+        node.isOther = ref.isOther;
+        node.parent = parent;
+        node.delta = (b != null ? b.size : 0) - (a != null ? a.size : 0);
+
+        List<FileNode> left = a != null && a.isDir ? sortedByName(a.children) : List.of();
+        List<FileNode> right = b != null && b.isDir ? sortedByName(b.children) : List.of();
+
+        // 归并连接：两侧都已按名称排序
+        int i = 0, j = 0;
+        long gross = 0;
+        while (i < left.size() || j < right.size()) {
+            FileNode l = i < left.size() ? left.get(i) : null;
+            FileNode r = j < right.size() ? right.get(j) : null;
+            int cmp = l == null ? 1 : r == null ? -1 : l.name.compareTo(r.name);
+
+            FileNode child;
+            if (cmp == 0) {
+                child = diff(l, r, node);
+                i++;
+                j++;
+            } else if (cmp < 0) {
+                child = diff(l, null, node);
+                i++;
+            } else {
+                child = diff(null, r, node);
+                j++;
+            }
+            if (child != null) {
+                node.children.add(child);
+                gross += child.size;
+            }
+        }
+
+        if (node.children.isEmpty()) {
+            if (node.delta == 0) return null;
+            node.size = Math.abs(node.delta);
+        } else {
+            node.size = gross;
+            node.children.sort((x, y) -> Long.compare(y.size, x.size));
+        }
+        return node;
+    }
+
+    private static List<FileNode> sortedByName(List<FileNode> children) {
+        List<FileNode> copy = new ArrayList<>(children);
+        copy.sort(BY_NAME);
+        return copy;
+    }
+}
@@ -0,0 +1,165 @@
+package diskanalyzer;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 扫描结果的二进制快照：保存到 ~/.diskanalyzer/snapshots/，用于和下一次扫描做对比。
+ * 每个根目录保留 latest 与 previous 两份，新扫描完成时 latest 轮换为 previous。
+ */
+public class SnapshotIO {
+
+    private static final int MAGIC = 0x44534E50; // "DSNP"
+    private static final int VERSION = 1;
+
+    private static final int FLAG_DIR = 1;
+    private static final int FLAG_OTHER = 2;
+    private static final int FLAG_COLLAPSED = 4;
+    private static final int FLAG_SYMLINK = 8;
+
+    public static Path dataDir() {
+        return Path.of(System.getProperty("user.home"), ".diskanalyzer");
+    }
+
+    // 同一根目录的快照文件名前缀：路径的 64 位 FNV-1a 哈希
+    public static String rootKey(String rootPath) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < rootPath.length(); i++) {
+            h ^= rootPath.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return Long.toHexString(h);
+    }
+
+    public static Path latestFile(String rootPath) {
+        return dataDir().resolve("snapshots").resolve(rootKey(rootPath) + ".latest.snap");
+    }
+
+    public static Path previousFile(String rootPath) {
+        return dataDir().resolve("snapshots").resolve(rootKey(rootPath) + ".previous.snap");
+    }
+
+    /**
+     * 新扫描完成后调用：先把 latest 轮换为 previous（同目录 rename，瞬间完成），再由调用方在后台写入新的 latest。
+     */
+    public static void rotate(String rootPath) throws IOException {
+        Path latest = latestFile(rootPath);
+        if (Files.exists(latest)) {
+            Files.move(latest, previousFile(rootPath), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static void save(FileNode root, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(tmp)), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(root.path);
+            writeNode(out, root);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static FileNode load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file)), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("不是有效的快照文件: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("不支持的快照版本: " + version);
+            String rootPath = in.readUTF();
+            return readNode(in, null, rootPath);
+        }
+    }
+
+    /**
+     * 只读取快照的根节点（大小、条目数等），不解压后面的整棵树；用于估算扫描进度。
+     */
+    public static FileNode peekRoot(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file)), 4096))) {
+            if (in.readInt() != MAGIC) throw new IOException("不是有效的快照文件: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("不支持的快照版本: " + version);
+            String rootPath = in.readUTF();
+            return readHeader(in, null, rootPath);
+        }
+    }
+
+    static void writeNode(DataOutputStream out, FileNode node) throws IOException {
+        writeHeader(out, node);
+        if (node.isDir) {
+            out.writeInt(node.children.size());
+            for (FileNode child : node.children) writeNode(out, child);
+        }
+    }
+
+    // 节点自身的字段（不含子节点），增量历史 (ScanHistory) 也复用这一编码
+    static void writeHeader(DataOutputStream out, FileNode node) throws IOException {
+        out.writeByte((node.isDir ? FLAG_DIR : 0) | (node.isOther ? FLAG_OTHER : 0) | (node.isCollapsed ? FLAG_COLLAPSED : 0)
+                | (node.isSymlink ? FLAG_SYMLINK : 0));
+        out.writeUTF(node.name);
+        out.writeLong(node.size);
+        out.writeLong(node.entryCount);
+        out.writeLong(node.digest);
+        out.writeInt(node.modifiedMinutes);
+        out.writeInt(node.accessMinutes);
+        if (node.isDir) {
+            out.writeInt(node.scanMinutes);
+            int buckets = node.ageBytes == null ? 0 : node.ageBytes.length;
+            out.writeByte(buckets);
+            for (int i = 0; i < buckets; i++) out.writeLong(node.ageBytes[i]);
+        }
+    }
+
+    /**
+     * 读取一个节点（及其子树）。path 为 null 时由父节点路径和名称拼出。
+     */
+    static FileNode readNode(DataInputStream in, FileNode parent, String path) throws IOException {
+        FileNode node = readHeader(in, parent, path);
+        if (node.isDir) {
+            int count = in.readInt();
+            node.children = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) node.children.add(readNode(in, node, null));
+        }
+        return node;
+    }
+
+    static FileNode readHeader(DataInputStream in, FileNode parent, String path) throws IOException {
+        int flags = in.readByte();
+        String name = in.readUTF();
+        boolean isDir = (flags & FLAG_DIR) != 0;
+        boolean isOther = (flags & FLAG_OTHER) != 0;
+        if (path == null) path = isOther ? parent.path : childPath(parent.path, name);
+
+        FileNode node = new FileNode(name, path, isDir);
+        node.isOther = isOther;
+        node.isCollapsed = (flags & FLAG_COLLAPSED) != 0;
+        node.isSymlink = (flags & FLAG_SYMLINK) != 0;
+        node.parent = parent;
+        node.size = in.readLong();
+        node.entryCount = in.readLong();
+        node.digest = in.readLong();
+        node.modifiedMinutes = in.readInt();
+        node.accessMinutes = in.readInt();
+        if (isDir) {
+            node.scanMinutes = in.readInt();
+            int buckets = in.readByte();
+            if (buckets > 0) {
+                node.ageBytes = new long[buckets];
+                for (int i = 0; i < buckets; i++) node.ageBytes[i] = in.readLong();
+            }
+        }
+        return node;
+    }
+
+    static String childPath(String parentPath, String name) {
+        return parentPath.endsWith(File.separator) ? parentPath + name : parentPath + File.separator + name;
+    }
+}
@@ -0,0 +1,258 @@
+package diskanalyzer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 暂存删除：把目标在同一文件系统内 rename 到暂存目录（与大小无关，瞬间完成），撤销窗口过后再由低优先级线程慢慢清除。
+ * <p>
+ * 用过的暂存目录登记在 ~/.diskanalyzer/staging-dirs.txt，程序在撤销窗口内退出时，残留内容会在下次启动时清除。
+ * 每个条目的目录名带着建立它的进程号和进程启动时刻，启动时只清除所属进程已经退出的条目，
+ * 同时运行的另一个实例还在撤销窗口内的条目不受影响。
+ */
+public class StagingArea {
+
+    public static final long UNDO_WINDOW_SECONDS = 10;
+
+    private static final String STAGING_DIR_NAME = ".diskanalyzer-staging";
+
+    // 单个低优先级线程：清除按顺序进行，把物理 I/O 摊开，不和前台扫描抢磁盘
+    private static final ScheduledExecutorService PURGER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "staging-purge");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private static final Object REGISTRY_LOCK = new Object();
+    // 本次运行开始的时刻：只用于不带进程标记的旧条目，早于它建立的才算遗留
+    private static final long STARTED_MILLIS = System.currentTimeMillis();
+
+    // 条目目录名前缀 item-p<进程号>-s<进程启动时刻毫秒>-；启动时刻用来识别进程号被复用的情况
+    private static final String HOLDER_PREFIX = "item-";
+    private static final long PID = ProcessHandle.current().pid();
+    private static final long PROCESS_START_MILLIS = startMillis(ProcessHandle.current());
+
+    /** 一个已移入暂存区、尚未清除的条目 */
+    public static final class Staged {
+        final Path original;
+        final Path holder;   // 暂存区中为本条目单独建立的目录
+        final Path staged;
+        private ScheduledFuture<?> purge;
+        private boolean undone;
+        // 清除任务已经开始删除：此后不能再撤销（purge 字段此时已置空，不能靠它判断）
+        private boolean purging;
+
+        private Staged(Path original, Path holder, Path staged) {
+            this.original = original;
+            this.holder = holder;
+            this.staged = staged;
+        }
+
+        /** 撤销窗口结束后清除；onPurged 在清除线程上调用 */
+        public synchronized void schedulePurge(Runnable onPurged) {
+            if (undone) return;
+            purge = PURGER.schedule(() -> {
+                synchronized (this) {
+                    if (undone) return;
+                    purge = null;
+                    purging = true;
+                }
+                deleteRecursively(holder);
+                if (onPurged != null) onPurged.run();
+            }, UNDO_WINDOW_SECONDS, TimeUnit.SECONDS);
+        }
+
+        /**
+         * 把条目移回原位置。清除已经开始时返回 false。
+         */
+        public synchronized boolean undo() throws IOException {
+            if (undone) return true;
+            if (purging) return false;
+            if (purge != null && !purge.cancel(false)) return false;
+            Files.move(staged, original, StandardCopyOption.ATOMIC_MOVE);
+            undone = true;
+            try {
+                Files.deleteIfExists(holder);
+            } catch (IOException ignored) {
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 把 target 移入它所在文件系统的暂存目录。无法原子 rename 时（跨设备、权限不足等）抛出 IOException，
+     * 调用方应改用普通删除。
+     */
+    public static Staged stage(Path target) throws IOException {
+        Path stagingDir = stagingDirFor(target);
+        Files.createDirectories(stagingDir);
+        register(stagingDir);
+
+        Path holder = Files.createTempDirectory(stagingDir, HOLDER_PREFIX + "p" + PID + "-s" + PROCESS_START_MILLIS + "-");
+        Path staged = holder.resolve(target.getFileName().toString());
+        try {
+            Files.move(target, staged, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(holder);
+            throw e;
+        }
+        return new Staged(target, holder, staged);
+    }
+
+    /**
+     * 选择与 target 同一文件系统的暂存目录：优先 ~/.diskanalyzer/staging，
+     * 否则放在该文件系统的挂载点下，挂载点不可写时退到 target 的父目录。
+     */
+    static Path stagingDirFor(Path target) throws IOException {
+        target = target.toAbsolutePath();
+        FileStore store = Files.getFileStore(target);
+
+        Path home = SnapshotIO.dataDir();
+        try {
+            Files.createDirectories(home);
+            if (Files.getFileStore(home).equals(store)) return home.resolve("staging");
+        } catch (IOException ignored) {
+        }
+
+        Path mountRoot = target.getParent();
+        if (mountRoot == null) throw new IOException("不能暂存文件系统根目录: " + target);
+        for (Path p = mountRoot.getParent(); p != null; p = p.getParent()) {
+            try {
+                if (!Files.getFileStore(p).equals(store)) break;
+            } catch (IOException e) {
+                break;
+            }
+            mountRoot = p;
+        }
+        if (Files.isWritable(mountRoot)) return mountRoot.resolve(STAGING_DIR_NAME);
+        return target.getParent().resolve(STAGING_DIR_NAME);
+    }
+
+    private static Path registryFile() {
+        return SnapshotIO.dataDir().resolve("staging-dirs.txt");
+    }
+
+    private static void register(Path stagingDir) throws IOException {
+        synchronized (REGISTRY_LOCK) {
+            Set<String> dirs = readRegistry();
+            if (dirs.add(stagingDir.toString())) {
+                Files.createDirectories(registryFile().getParent());
+                Files.write(registryFile(), dirs, StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    private static Set<String> readRegistry() throws IOException {
+        Path file = registryFile();
+        if (!Files.exists(file)) return new LinkedHashSet<>();
+        return new LinkedHashSet<>(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 启动时调用：清除已退出的进程遗留在各暂存目录中的条目（它们的撤销窗口早已过去）。
+     */
+    public static void purgeLeftovers() {
+        PURGER.execute(() -> {
+            List<Path> dirs = new ArrayList<>();
+            synchronized (REGISTRY_LOCK) {
+                try {
+                    for (String line : readRegistry()) {
+                        if (!line.isBlank()) dirs.add(Path.of(line));
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+            }
+            for (Path dir : dirs) {
+                if (!Files.isDirectory(dir)) continue;
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, HOLDER_PREFIX + "*")) {
+                    for (Path holder : stream) {
+                        if (isAbandoned(holder)) deleteRecursively(holder);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    // 条目所属的进程已经退出（或进程号已被别的进程复用）时才算遗留
+    private static boolean isAbandoned(Path holder) throws IOException {
+        String name = holder.getFileName().toString();
+        long[] owner = parseOwner(name);
+        if (owner == null) {
+            // 旧版本建立的条目没有进程标记，沿用按时间判断
+            return Files.getLastModifiedTime(holder).toMillis() < STARTED_MILLIS;
+        }
+        if (owner[0] == PID && owner[1] == PROCESS_START_MILLIS) return false; // 本进程的条目由各自的清除任务处理
+        Optional<ProcessHandle> process = ProcessHandle.of(owner[0]);
+        if (process.isEmpty() || !process.get().isAlive()) return true;
+        long start = startMillis(process.get());
+        // 拿不到启动时刻时保守处理，当作原进程仍在运行
+        return start != 0 && owner[1] != 0 && Math.abs(start - owner[1]) > 1000;
+    }
+
+    /** 从 item-p<pid>-s<start>-... 中取出 {pid, start}，不是这个格式时返回 null */
+    private static long[] parseOwner(String name) {
+        if (!name.startsWith(HOLDER_PREFIX + "p")) return null;
+        int dash = name.indexOf("-s", HOLDER_PREFIX.length() + 1);
+        int end = dash < 0 ? -1 : name.indexOf('-', dash + 2);
+        if (end < 0) return null;
+        try {
+            return new long[]{
+                    Long.parseLong(name.substring(HOLDER_PREFIX.length() + 1, dash)),
+                    Long.parseLong(name.substring(dash + 2, end))};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long startMillis(ProcessHandle process) {
+        return process.info().startInstant().map(i -> i.toEpochMilli()).orElse(0L);
+    }
+
+    private static void deleteRecursively(Path root) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException ignored) {
+                        // 删不掉的留在暂存区，下次启动再试
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                    try {
+                        Files.deleteIfExists(dir);
+                    } catch (IOException ignored) {
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package diskanalyzer;
+
+import javafx.scene.Scene;
+
+import java.time.Instant;
+
+/**
+ * 启动阶段计时：每个阶段记录距上一阶段和距 JVM 启动的耗时，到主界面第一帧可交互为止。
+ * <p>
+ * 通过 System.Logger 输出；默认是 DEBUG 级别，用 -Ddiskanalyzer.startupTrace=true 启动时改为 INFO，直接出现在控制台。
+ */
+public class StartupTrace {
+
+    private static final System.Logger LOG = System.getLogger("diskanalyzer.startup");
+    private static final System.Logger.Level LEVEL =
+            Boolean.getBoolean("diskanalyzer.startupTrace") ? System.Logger.Level.INFO : System.Logger.Level.DEBUG;
+
+    private static final long JVM_START_MILLIS = ProcessHandle.current().info().startInstant()
+            .map(Instant::toEpochMilli).orElse(System.currentTimeMillis());
+    private static long lastMillis = JVM_START_MILLIS;
+    private static boolean firstFrameSeen = false;
+
+    public static synchronized void mark(String phase) {
+        long now = System.currentTimeMillis();
+        LOG.log(LEVEL, "[startup] {0}: +{1} ms (累计 {2} ms)", phase, now - lastMillis, now - JVM_START_MILLIS);
+        lastMillis = now;
+    }
+
+    /**
+     * 在主界面 Scene 第一次完成布局、交给渲染线程的那个脉冲里记录「首帧」，作为启动结束的标志。
+     * 只看这个 Scene 自己的脉冲：启动动画等其他窗口的脉冲不算。
+     */
+    public static void markFirstFrame(Scene scene) {
+        scene.addPostLayoutPulseListener(new Runnable() {
+            @Override
+            public void run() {
+                if (scene.getWindow() == null || !scene.getWindow().isShowing()) return;
+                scene.removePostLayoutPulseListener(this);
+                synchronized (StartupTrace.class) {
+                    if (firstFrameSeen) return;
+                    firstFrameSeen = true;
+                }
+                mark("首帧");
+            }
+        });
+    }
+}
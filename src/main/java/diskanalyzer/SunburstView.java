@@ -0,0 +1,579 @@
+package diskanalyzer;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+import javafx.util.Duration;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * 基于 Canvas 的多层旭日图：以当前目录为圆心，同时展示多层子目录。
+ * <p>
+ * 每个目录的「层表」（按大小排序的子节点及其占比）计算一次后按节点缓存，钻取到已计算过的子树时直接复用；
+ * 某一圈上窄于 {@link #MIN_ARC_PX} 像素的扇环合并成该圈的一个「其余」扇环，绘制量只取决于画布周长而不是文件数量。
+ * 层表和要画出的子树在 FX 线程上收集成一份副本，扇环的组装放在后台线程，组装好的几何按根目录缓存。
+ * 钻取到当前已画出的子目录时，它在旧几何中的各圈扇环按其角度范围放大后整体内移一圈，只有新的最外圈需要重新组装。
+ */
+public class SunburstView extends Region {
+
+    private static final int MAX_RINGS = 5;
+    private static final double MIN_ARC_PX = 2.0;   // 扇环在中线处的弧长小于该值即合并
+    private static final double HOLE_RATIO = 0.22;  // 圆心区域占半径的比例
+
+    private static final ExecutorService GEOMETRY_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "sunburst-geometry");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** 目录的层表：子节点按大小降序排列，fractions[i] 为第 i 个子节点在父节点中的占比 */
+    private static final class Level {
+        final long size;
+        final FileNode[] children;
+        final double[] fractions;
+
+        Level(FileNode node) {
+            this.size = node.size;
+            FileNode[] sorted = node.children.toArray(new FileNode[0]);
+            Arrays.sort(sorted, (a, b) -> Long.compare(b.size, a.size));
+            this.children = sorted;
+            this.fractions = new double[sorted.length];
+            double total = Math.max(1, node.size);
+            for (int i = 0; i < sorted.length; i++) fractions[i] = Math.max(0, sorted[i].size) / total;
+        }
+    }
+
+    /** 组装后的扇环：扁平数组，按圈分组（同一圈内按起始角有序，便于二分命中） */
+    private static final class Geometry {
+        final FileNode root;
+        final double radius;
+        final long rootSize;
+        final long rootEntries;
+        int count;
+        double[] start = new double[256], extent = new double[256]; // 0..1 的圆周占比
+        double[] widest = new double[256]; // 合并扇环中最宽一项的占比；普通扇环等于 extent
+        byte[] ring = new byte[256];
+        int[] top = new int[256];
+        FileNode[] nodes = new FileNode[256]; // 合并扇环为 null
+        int[] mergedCount = new int[256];
+        int[][] byRing = new int[MAX_RINGS][];
+
+        Geometry(FileNode root, double radius, long rootSize, long rootEntries) {
+            this.root = root;
+            this.radius = radius;
+            this.rootSize = rootSize;
+            this.rootEntries = rootEntries;
+        }
+
+        void add(FileNode node, double s, double e, double w, int r, int topIndex, int merged) {
+            if (count == start.length) {
+                int n = count * 2;
+                start = Arrays.copyOf(start, n); extent = Arrays.copyOf(extent, n); widest = Arrays.copyOf(widest, n);
+                ring = Arrays.copyOf(ring, n); top = Arrays.copyOf(top, n);
+                nodes = Arrays.copyOf(nodes, n); mergedCount = Arrays.copyOf(mergedCount, n);
+            }
+            start[count] = s; extent[count] = e; widest[count] = w; ring[count] = (byte) r;
+            top[count] = topIndex; nodes[count] = node; mergedCount[count] = merged;
+            count++;
+        }
+
+        // 深度优先输出时同一圈的扇环天然按角度有序，只需按圈分桶
+        void buildIndex() {
+            int[] sizes = new int[MAX_RINGS];
+            for (int i = 0; i < count; i++) sizes[ring[i]]++;
+            for (int r = 0; r < MAX_RINGS; r++) byRing[r] = new int[sizes[r]];
+            int[] fill = new int[MAX_RINGS];
+            for (int i = 0; i < count; i++) byRing[ring[i]][fill[ring[i]]++] = i;
+        }
+
+        int hit(int r, double fraction) {
+            if (r < 0 || r >= MAX_RINGS) return -1;
+            int[] list = byRing[r];
+            int lo = 0, hi = list.length - 1, found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (start[list[mid]] <= fraction) { found = mid; lo = mid + 1; }
+                else hi = mid - 1;
+            }
+            if (found < 0) return -1;
+            int i = list[found];
+            return fraction < start[i] + extent[i] ? i : -1;
+        }
+    }
+
+    private final Canvas baseCanvas = new Canvas();
+    private final Canvas overlayCanvas = new Canvas();
+
+    // 层表和几何引用的节点经 parent 可达整棵树，每个缓存条目都会让它所在的树常驻内存，两个缓存都有上限。
+    // 层表按节点缓存：钻取、返回、调整窗口大小时都不必重新排序子节点；只在 FX 线程上访问
+    private static final int LEVEL_CACHE_CAPACITY = 512;
+    private final Map<FileNode, Level> levels = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FileNode, Level> eldest) {
+            return size() > LEVEL_CACHE_CAPACITY;
+        }
+    };
+    // 组装好的几何按根节点缓存最近几份
+    private static final int GEOMETRY_CACHE_CAPACITY = 8;
+    private final Map<FileNode, Geometry> geometries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FileNode, Geometry> eldest) {
+            return size() > GEOMETRY_CACHE_CAPACITY;
+        }
+    };
+
+    private FileNode root;
+    private List<FileNode> items = List.of();
+    private Color[] itemColors = new Color[0];
+    private Geometry geometry;
+    private int hoverIndex = -1;
+    private long requestId = 0;
+
+    private Consumer<TreemapView.HoverEvent> onHover;
+    private Consumer<FileNode> onOpen;
+    private Consumer<TreemapView.HoverEvent> onMenu;
+    private Runnable onCenterClicked;
+
+    private final PauseTransition resizeDebounce = new PauseTransition(Duration.millis(120));
+
+    public SunburstView() {
+        getChildren().addAll(baseCanvas, overlayCanvas);
+        overlayCanvas.setMouseTransparent(true);
+
+        resizeDebounce.setOnFinished(e -> requestGeometry());
+        widthProperty().addListener((obs, o, n) -> resizeDebounce.playFromStart());
+        heightProperty().addListener((obs, o, n) -> resizeDebounce.playFromStart());
+
+        setOnMouseMoved(e -> {
+            int hit = hitTest(e.getX(), e.getY());
+            if (hit != hoverIndex) {
+                hoverIndex = hit;
+                drawOverlay();
+            }
+            FileNode node = hit >= 0 ? geometry.nodes[hit] : null;
+            if (onHover != null) onHover.accept(new TreemapView.HoverEvent(node, e.getScreenX(), e.getScreenY()));
+        });
+        setOnMouseExited(e -> {
+            hoverIndex = -1;
+            drawOverlay();
+            if (onHover != null) onHover.accept(new TreemapView.HoverEvent(null, e.getScreenX(), e.getScreenY()));
+        });
+        setOnMouseClicked(e -> {
+            if (e.getButton() != MouseButton.PRIMARY) return;
+            double dx = e.getX() - getWidth() / 2, dy = e.getY() - getHeight() / 2;
+            if (geometry != null && Math.hypot(dx, dy) < geometry.radius * HOLE_RATIO) {
+                if (onCenterClicked != null) onCenterClicked.run();
+                return;
+            }
+            int hit = hitTest(e.getX(), e.getY());
+            if (hit >= 0 && geometry.nodes[hit] != null && onOpen != null) onOpen.accept(geometry.nodes[hit]);
+        });
+        setOnContextMenuRequested(e -> {
+            int hit = hitTest(e.getX(), e.getY());
+            if (hit >= 0 && geometry.nodes[hit] != null && onMenu != null) {
+                onMenu.accept(new TreemapView.HoverEvent(geometry.nodes[hit], e.getScreenX(), e.getScreenY()));
+            }
+        });
+    }
+
+    public void setOnHover(Consumer<TreemapView.HoverEvent> onHover) { this.onHover = onHover; }
+    public void setOnOpen(Consumer<FileNode> onOpen) { this.onOpen = onOpen; }
+    public void setOnMenu(Consumer<TreemapView.HoverEvent> onMenu) { this.onMenu = onMenu; }
+    public void setOnCenterClicked(Runnable onCenterClicked) { this.onCenterClicked = onCenterClicked; }
+
+    public void show(FileNode root, List<FileNode> items, Color[] itemColors) {
+        this.root = root;
+        this.items = List.copyOf(items);
+        this.itemColors = itemColors;
+        requestGeometry();
+    }
+
+    /** 高亮最内圈的第 itemIndex 个条目（来自列表悬停），-1 取消 */
+    public void highlightItem(int itemIndex) {
+        int idx = -1;
+        if (geometry != null && itemIndex >= 0) {
+            for (int i : geometry.byRing[0]) {
+                if (geometry.nodes[i] != null && geometry.top[i] == itemIndex) { idx = i; break; }
+            }
+        }
+        if (idx != hoverIndex) {
+            hoverIndex = idx;
+            drawOverlay();
+        }
+    }
+
+    @Override
+    protected void layoutChildren() {
+        baseCanvas.setWidth(getWidth());
+        baseCanvas.setHeight(getHeight());
+        overlayCanvas.setWidth(getWidth());
+        overlayCanvas.setHeight(getHeight());
+    }
+
+    private double radius() {
+        return Math.max(0, Math.min(getWidth(), getHeight()) / 2 - 10);
+    }
+
+    private void requestGeometry() {
+        double radius = radius();
+        if (root == null || radius <= 0) return;
+
+        Geometry cached = geometries.get(root);
+        if (cached != null && cached.radius == radius
+                && cached.rootSize == root.size && cached.rootEntries == root.entryCount) {
+            apply(cached);
+            return;
+        }
+
+        long id = ++requestId;
+        FileNode r = root;
+        long rootSize = root.size, rootEntries = root.entryCount;
+        Reuse reuse = planReuse(radius);
+        Ring ring0 = reuse == null ? firstRing(items, radius) : null;
+        GEOMETRY_EXECUTOR.execute(() -> {
+            Geometry g;
+            try {
+                g = reuse != null
+                        ? rescale(reuse, r, rootSize, rootEntries, radius)
+                        : computeGeometry(ring0, r, rootSize, rootEntries, radius);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+                return;
+            }
+            Platform.runLater(() -> {
+                geometries.put(r, g);
+                if (id == requestId) apply(g);
+            });
+        });
+    }
+
+    private void apply(Geometry g) {
+        geometry = g;
+        hoverIndex = -1;
+        drawBase();
+        drawOverlay();
+    }
+
+    // --- 几何输入 (FX 线程) ---
+
+    /** 一圈的输入：层表加上其中会被画出的子目录的下一圈。在 FX 线程上从树中复制，后台线程只读它 */
+    private static final class Ring {
+        final FileNode[] children;
+        final double[] fractions;
+        final int[] tops;    // 仅最内圈：每个条目在调用方列表中的下标，用于取色
+        final Ring[] next;   // next[i] 为第 i 个子节点的下一圈；画不出、不是目录或已到最外圈时为 null
+
+        Ring(FileNode[] children, double[] fractions, int[] tops) {
+            this.children = children;
+            this.fractions = fractions;
+            this.tops = tops;
+            this.next = new Ring[children.length];
+        }
+    }
+
+    private Level level(FileNode node) {
+        Level l = levels.get(node);
+        // 节点大小变化（删除、刷新）后层表失效
+        if (l == null || l.size != node.size || l.children.length != node.children.size()) {
+            l = new Level(node);
+            levels.put(node, l);
+        }
+        return l;
+    }
+
+    // 最内圈使用调用方给出的条目（聚合视图下并非真实子节点）
+    private Ring firstRing(List<FileNode> ring0, double radius) {
+        double total = 0;
+        for (FileNode n : ring0) total += Math.max(0, n.size);
+        if (total <= 0) return new Ring(new FileNode[0], new double[0], new int[0]);
+
+        Integer[] order = new Integer[ring0.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(ring0.get(b).size, ring0.get(a).size));
+
+        FileNode[] nodes = new FileNode[order.length];
+        double[] fractions = new double[order.length];
+        int[] tops = new int[order.length];
+        for (int k = 0; k < order.length; k++) {
+            nodes[k] = ring0.get(order[k]);
+            fractions[k] = Math.max(0, nodes[k].size) / total;
+            tops[k] = order[k];
+        }
+        Ring ring = new Ring(nodes, fractions, tops);
+        collectNext(ring, 1.0, 0, radius);
+        return ring;
+    }
+
+    // 与 emitRing 同样的合并规则：只为不会被并入「其余」的子目录准备下一圈，复制量取决于画布周长
+    private void collectNext(Ring in, double span, int ring, double radius) {
+        if (ring + 1 >= MAX_RINGS) return;
+        double minFraction = minFraction(ring, radius);
+        for (int i = 0; i < in.children.length; i++) {
+            double extent = in.fractions[i] * span;
+            FileNode child = in.children[i];
+            if (extent <= 0 || extent < minFraction || !child.isDir || child.children.isEmpty()) continue;
+            Level l = level(child);
+            Ring next = new Ring(l.children, l.fractions, null);
+            collectNext(next, extent, ring + 1, radius);
+            in.next[i] = next;
+        }
+    }
+
+    /**
+     * 钻取时可复用的旧几何：新根目录在旧几何最内圈的扇环 [first, end) 区段（其后代，深度优先连续排列），
+     * 各扇环在新视图中的顶层颜色下标，以及旧几何最外圈的目录在新视图中要补出的最外圈。
+     */
+    private static final class Reuse {
+        final Geometry from;
+        final int first, end;
+        final double start, span;  // 新根目录在旧几何中的角度范围
+        final int[] tops;          // 区段内偏移 -> 新最内圈扇环的颜色下标
+        final Ring[] outer;        // 区段内偏移 -> 该扇环在新最外圈的子节点，没有则为 null
+
+        Reuse(Geometry from, int first, int end, double start, double span) {
+            this.from = from;
+            this.first = first;
+            this.end = end;
+            this.start = start;
+            this.span = span;
+            this.tops = new int[end - first];
+            this.outer = new Ring[end - first];
+        }
+    }
+
+    /**
+     * 新根目录在当前几何的最内圈上画出过，且放大后每个扇环的合并结果都不变时，返回复用计划；否则返回 null，整体重新组装。
+     * 放大后原来画出的扇环可能窄于更内一圈的阈值、原来合并的扇环可能变得足够宽，这两种情况都不能直接复用。
+     */
+    private Reuse planReuse(double radius) {
+        Geometry from = geometry;
+        if (from == null || from.radius != radius || from.root == null
+                || from.root.size != from.rootSize || from.root.entryCount != from.rootEntries) return null;
+        int c = -1;
+        for (int i : from.byRing[0]) {
+            if (from.nodes[i] == root) { c = i; break; }
+        }
+        if (c < 0) return null;
+
+        // 最内圈必须正好是新根目录的子节点（聚合视图的条目不是）
+        Map<FileNode, Integer> topOf = new IdentityHashMap<>();
+        long total = 0;
+        for (int i = 0; i < items.size(); i++) {
+            FileNode n = items.get(i);
+            topOf.put(n, i);
+            total += Math.max(0, n.size);
+        }
+        if (total != root.size) return null;
+
+        int end = c + 1;
+        while (end < from.count && from.ring[end] > 0) end++;
+        Reuse reuse = new Reuse(from, c + 1, end, from.start[c], from.extent[c]);
+        for (int i = c + 1; i < end; i++) {
+            int r = from.ring[i] - 1;
+            double minFraction = minFraction(r, radius);
+            FileNode node = from.nodes[i];
+            if (node != null ? from.extent[i] / reuse.span < minFraction : from.widest[i] / reuse.span >= minFraction) return null;
+            if (r == 0) {
+                Integer top = node != null ? topOf.get(node) : Integer.valueOf(-1);
+                if (top == null) return null;
+                reuse.tops[i - reuse.first] = top;
+            }
+            if (r == MAX_RINGS - 2 && node != null && node.isDir && !node.children.isEmpty()) {
+                Level l = level(node);
+                reuse.outer[i - reuse.first] = new Ring(l.children, l.fractions, null);
+            }
+        }
+        return reuse;
+    }
+
+    private static double minFraction(int ring, double radius) {
+        double ringWidth = radius * (1 - HOLE_RATIO) / MAX_RINGS;
+        double midRadius = radius * HOLE_RATIO + ringWidth * (ring + 0.5);
+        return MIN_ARC_PX / (2 * Math.PI * midRadius);
+    }
+
+    // --- 几何 (后台线程) ---
+
+    private static Geometry computeGeometry(Ring ring0, FileNode root, long rootSize, long rootEntries, double radius) {
+        Geometry g = new Geometry(root, radius, rootSize, rootEntries);
+        emitRing(g, ring0, -1, 0, 1.0, 0, radius);
+        g.buildIndex();
+        return g;
+    }
+
+    // 按 planReuse 的计划：旧区段放大并内移一圈，旧最外圈的目录在新最外圈补出子节点；输出顺序仍是深度优先
+    private static Geometry rescale(Reuse u, FileNode root, long rootSize, long rootEntries, double radius) {
+        Geometry from = u.from;
+        Geometry g = new Geometry(root, radius, rootSize, rootEntries);
+        int top = -1;
+        for (int i = u.first; i < u.end; i++) {
+            int r = from.ring[i] - 1;
+            if (r == 0) top = u.tops[i - u.first];
+            double s = (from.start[i] - u.start) / u.span;
+            double e = from.extent[i] / u.span;
+            g.add(from.nodes[i], s, e, from.widest[i] / u.span, r, top, from.mergedCount[i]);
+            Ring outer = u.outer[i - u.first];
+            if (outer != null) emitRing(g, outer, top, s, e, r + 1, radius);
+        }
+        g.buildIndex();
+        return g;
+    }
+
+    /**
+     * 在第 ring 圈输出 [start, start + span) 范围内的子节点，并递归到下一圈。
+     * topIndex < 0 表示最内圈，每个子节点各自确定顶层颜色下标。
+     */
+    private static void emitRing(Geometry g, Ring in, int topIndex, double start, double span, int ring, double radius) {
+        double minFraction = minFraction(ring, radius);
+
+        double cursor = start;
+        double mergedStart = -1, mergedExtent = 0, mergedWidest = 0;
+        int merged = 0;
+        for (int i = 0; i < in.children.length; i++) {
+            double extent = in.fractions[i] * span;
+            if (extent <= 0) continue;
+            int t = topIndex >= 0 ? topIndex : in.tops[i];
+            if (extent < minFraction) {
+                // 太窄：并入本圈的「其余」扇环（子节点按大小降序，之后的只会更窄）
+                if (mergedStart < 0) {
+                    mergedStart = cursor;
+                    mergedWidest = extent;
+                }
+                mergedExtent += extent;
+                merged++;
+            } else {
+                g.add(in.children[i], cursor, extent, extent, ring, t, 0);
+                if (in.next[i] != null) emitRing(g, in.next[i], t, cursor, extent, ring + 1, radius);
+            }
+            cursor += extent;
+        }
+        if (merged > 0) {
+            g.add(null, mergedStart, mergedExtent, mergedWidest, ring, topIndex >= 0 ? topIndex : -1, merged);
+        }
+    }
+
+    // --- 命中与绘制 (FX 线程) ---
+
+    private int hitTest(double px, double py) {
+        if (geometry == null) return -1;
+        double dx = px - getWidth() / 2, dy = py - getHeight() / 2;
+        double dist = Math.hypot(dx, dy);
+        double inner = geometry.radius * HOLE_RATIO;
+        double ringWidth = geometry.radius * (1 - HOLE_RATIO) / MAX_RINGS;
+        if (dist < inner || dist >= geometry.radius) return -1;
+        int ring = (int) ((dist - inner) / ringWidth);
+        // 从 12 点方向顺时针计量
+        double angle = Math.atan2(dx, -dy);
+        if (angle < 0) angle += 2 * Math.PI;
+        return geometry.hit(ring, angle / (2 * Math.PI));
+    }
+
+    private void drawBase() {
+        GraphicsContext gc = baseCanvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, baseCanvas.getWidth(), baseCanvas.getHeight());
+        if (geometry == null) return;
+
+        double cx = getWidth() / 2, cy = getHeight() / 2;
+        double inner = geometry.radius * HOLE_RATIO;
+        double ringWidth = geometry.radius * (1 - HOLE_RATIO) / MAX_RINGS;
+
+        Color[][] shades = new Color[itemColors.length][];
+        Color mergedColor = Color.web("#52525B");
+        gc.setStroke(Color.rgb(0, 0, 0, 0.5));
+        gc.setLineWidth(1);
+        for (int i = 0; i < geometry.count; i++) {
+            int top = geometry.top[i];
+            int r = geometry.ring[i];
+            Color fill;
+            if (geometry.nodes[i] == null || top < 0 || top >= itemColors.length) {
+                fill = mergedColor;
+            } else {
+                if (shades[top] == null) {
+                    shades[top] = new Color[MAX_RINGS];
+                    Color base = itemColors[top] != null ? itemColors[top] : Color.web("#D9E878");
+                    for (int k = 0; k < MAX_RINGS; k++) shades[top][k] = base.deriveColor(0, 1 - k * 0.12, 1 - k * 0.1, 1);
+                }
+                fill = shades[top][r];
+            }
+            fillSector(gc, cx, cy, inner + r * ringWidth, inner + (r + 1) * ringWidth,
+                    geometry.start[i], geometry.extent[i], fill);
+        }
+
+        // 圆心：当前目录
+        gc.setFill(Color.rgb(0, 0, 0, 0.6));
+        gc.fillOval(cx - inner, cy - inner, inner * 2, inner * 2);
+        if (root != null) {
+            gc.setFill(Color.WHITE);
+            gc.setFont(Font.font(13));
+            gc.setTextAlign(TextAlignment.CENTER);
+            gc.setTextBaseline(VPos.CENTER);
+            String name = root.name.length() > 18 ? root.name.substring(0, 17) + "…" : root.name;
+            gc.fillText(name, cx, cy - 9);
+            gc.fillText(FileNode.formatSize(root.size), cx, cy + 9);
+        }
+    }
+
+    private static void fillSector(GraphicsContext gc, double cx, double cy, double r0, double r1,
+                                   double start, double extent, Color fill) {
+        gc.setFill(fill);
+        annulusPath(gc, cx, cy, r0, r1, start, extent);
+        gc.fill();
+        if (extent < 0.999999 && extent * 2 * Math.PI * r1 > 3) gc.stroke();
+    }
+
+    /**
+     * 环形扇区 [r0, r1] 的路径。整圈拆成两个半圈：不能用实心圆，按深度优先绘制时外层的整圈会盖住内层和圆心。
+     */
+    private static void annulusPath(GraphicsContext gc, double cx, double cy, double r0, double r1,
+                                    double start, double extent) {
+        gc.beginPath();
+        if (extent >= 0.999999) {
+            appendSegment(gc, cx, cy, r0, r1, start, 0.5);
+            appendSegment(gc, cx, cy, r0, r1, start + 0.5, 0.5);
+        } else {
+            appendSegment(gc, cx, cy, r0, r1, start, extent);
+        }
+    }
+
+    private static void appendSegment(GraphicsContext gc, double cx, double cy, double r0, double r1,
+                                      double start, double extent) {
+        // Canvas 角度为逆时针、0 度指向 3 点方向；这里换算成从 12 点顺时针
+        double startDeg = 90 - start * 360;
+        double extentDeg = -extent * 360;
+        // 每段从外弧起点单独开始，两段之间不连线
+        double a = Math.toRadians(startDeg);
+        gc.moveTo(cx + r1 * Math.cos(a), cy - r1 * Math.sin(a));
+        gc.arc(cx, cy, r1, r1, startDeg, extentDeg);
+        gc.arc(cx, cy, r0, r0, startDeg + extentDeg, -extentDeg);
+        gc.closePath();
+    }
+
+    private void drawOverlay() {
+        GraphicsContext gc = overlayCanvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, overlayCanvas.getWidth(), overlayCanvas.getHeight());
+        if (geometry == null || hoverIndex < 0 || hoverIndex >= geometry.count) return;
+        double cx = getWidth() / 2, cy = getHeight() / 2;
+        double inner = geometry.radius * HOLE_RATIO;
+        double ringWidth = geometry.radius * (1 - HOLE_RATIO) / MAX_RINGS;
+        int r = geometry.ring[hoverIndex];
+        // 只高亮悬停的这一段环，不连带圆心到它之间的内层
+        annulusPath(gc, cx, cy, inner + r * ringWidth, inner + (r + 1) * ringWidth,
+                geometry.start[hoverIndex], geometry.extent[hoverIndex]);
+        gc.setFill(Color.rgb(255, 255, 255, 0.25));
+        gc.setStroke(Color.WHITE);
+        gc.setLineWidth(2);
+        gc.fill();
+        gc.stroke();
+    }
+}
@@ -0,0 +1,77 @@
+package diskanalyzer;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.util.Arrays;
+
+/**
+ * 壁纸取色的基准测试：生成一张 3840x2160 的合成壁纸（渐变底色上叠几块不同颜色的色块和噪点），
+ * 预热后多次计时 {@link ThemeEngine#extractDominantColor}，并检查每次得到的种子色完全相同。不启动 JavaFX 工具包。
+ * <pre>
+ *   java --module-path &lt;javafx jars&gt;:target/classes -m diskanalyzer.diskanalyzer/diskanalyzer.ThemeBenchmark [runs]
+ * </pre>
+ * 没有显示环境时加 -Dprism.order=sw，免得渲染管线初始化时打印找不到 OpenGL 库的错误。
+ * 打印最快、中位数、平均和最慢耗时；结果不一致时打印 FAIL 并以 1 退出。
+ */
+public class ThemeBenchmark {
+
+    private static final int WIDTH = 3840;
+    private static final int HEIGHT = 2160;
+    private static final int WARMUP_RUNS = 20;
+
+    public static void main(String[] args) {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        WritableImage image = wallpaper();
+
+        Color expected = ThemeEngine.extractDominantColor(image);
+        for (int i = 1; i < WARMUP_RUNS; i++) ThemeEngine.extractDominantColor(image);
+
+        long[] nanos = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            Color seed = ThemeEngine.extractDominantColor(image);
+            nanos[i] = System.nanoTime() - start;
+            if (!seed.equals(expected)) {
+                System.out.println("FAIL: 第 " + (i + 1) + " 次得到 " + ThemeEngine.toHex(seed) + "，首次为 " + ThemeEngine.toHex(expected));
+                System.exit(1);
+            }
+        }
+
+        Arrays.sort(nanos);
+        long total = 0;
+        for (long n : nanos) total += n;
+        System.out.printf("%dx%d，%d 次（预热 %d 次），处理器 %d 个：种子色 %s%n",
+                WIDTH, HEIGHT, runs, WARMUP_RUNS, Runtime.getRuntime().availableProcessors(), ThemeEngine.toHex(expected));
+        System.out.printf("最快 %.1f ms，中位数 %.1f ms，平均 %.1f ms，最慢 %.1f ms%n",
+                nanos[0] / 1e6, nanos[runs / 2] / 1e6, total / (double) runs / 1e6, nanos[runs - 1] / 1e6);
+    }
+
+    // 暗蓝到青的渐变底色，叠几块暖色和灰色色块，再加固定种子的噪点，保证每次生成的图片相同
+    private static WritableImage wallpaper() {
+        WritableImage image = new WritableImage(WIDTH, HEIGHT);
+        PixelWriter writer = image.getPixelWriter();
+        int[] row = new int[WIDTH];
+        long noise = 42;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int r = 20 + 40 * x / WIDTH;
+                int g = 40 + 120 * y / HEIGHT;
+                int b = 90 + 100 * (WIDTH - x) / WIDTH;
+                if (x > WIDTH / 2 && y > HEIGHT / 3 && y < HEIGHT * 2 / 3) { r = 230; g = 120; b = 40; }
+                else if (x < WIDTH / 5 && y > HEIGHT * 3 / 4) { r = 128; g = 128; b = 128; }
+                noise = noise * 6364136223846793005L + 1442695040888963407L;
+                int d = (int) (noise >>> 59) - 16;
+                row[x] = 0xFF000000 | clamp(r + d) << 16 | clamp(g + d) << 8 | clamp(b + d);
+            }
+            writer.setPixels(0, y, WIDTH, 1, PixelFormat.getIntArgbInstance(), row, 0, WIDTH);
+        }
+        return image;
+    }
+
+    private static int clamp(int v) {
+        return Math.max(0, Math.min(255, v));
+    }
+}
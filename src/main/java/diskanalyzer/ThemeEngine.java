@@ -1,10 +1,14 @@
 package diskanalyzer;
 
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritablePixelFormat;
 import javafx.scene.paint.Color;
 
+import java.nio.IntBuffer;
 import java.util.*;
+import java.util.stream.IntStream;
 
 public class ThemeEngine {
 
@@ -44,38 +48,171 @@ public class ThemeEngine {
         public List<String> chartColors = new ArrayList<>();
     }
 
+    // K-Means 参数：聚类数、最多迭代次数、降采样后的目标像素数
+    private static final int KMEANS_K = 8;
+    private static final int KMEANS_MAX_ITERATIONS = 16;
+    private static final int KMEANS_TARGET_SAMPLES = 16_384;
+    private static final int KMEANS_CHUNK = 2048;
+
     /**
      * 1. 提取壁纸主色 (Seed Color)
+     * <p>
+     * 按行批量读取 ARGB 像素并降采样，在 RGB 空间做 K-Means 聚类（k-means++ 固定种子初始化，结果确定），
+     * 再按「簇的占比 × 彩度」挑选种子色，避免像素级打分被少量高饱和噪点带偏。
      */
     public static Color extractDominantColor(Image image) {
-        if (image == null) return Color.web("#D9E878");
+        Color fallback = Color.web("#D9E878");
+        if (image == null) return fallback;
+
+        int[] samples = samplePixels(image);
+        if (samples.length == 0) return fallback;
+
+        int k = Math.min(KMEANS_K, samples.length);
+        int[] centroids = kMeans(samples, k);
+        long[] counts = new long[k];
+        for (int px : samples) counts[nearest(px, centroids, k)]++;
+
+        Color best = null;
+        double bestScore = 0;
+        for (int c = 0; c < k; c++) {
+            if (counts[c] == 0) continue;
+            Color color = Color.rgb((centroids[c] >> 16) & 0xFF, (centroids[c] >> 8) & 0xFF, centroids[c] & 0xFF);
+            double bri = color.getBrightness();
+            if (bri < 0.1 || bri > 0.95) continue;
+            double chroma = chroma(centroids[c]);
+            if (chroma < 0.08) continue; // 接近灰色的簇不适合作为种子
+            double share = counts[c] / (double) samples.length;
+            double score = Math.sqrt(share) * (0.15 + chroma) * (1.0 - Math.abs(bri - 0.6) * 0.5);
+            if (score > bestScore) {
+                bestScore = score;
+                best = color;
+            }
+        }
+        return best != null ? best : fallback;
+    }
 
+    // 逐行用 getPixels 批量读入 int[]，按固定步长在行内和行间降采样，跳过接近透明的像素
+    private static int[] samplePixels(Image image) {
         PixelReader reader = image.getPixelReader();
         int width = (int) image.getWidth();
         int height = (int) image.getHeight();
+        if (reader == null || width <= 0 || height <= 0) return new int[0];
+
+        int stride = Math.max(1, (int) Math.ceil(Math.sqrt((double) width * height / KMEANS_TARGET_SAMPLES)));
+        int[] row = new int[width];
+        int[] out = new int[((height + stride - 1) / stride) * ((width + stride - 1) / stride)];
+        int n = 0;
+        WritablePixelFormat<IntBuffer> format = PixelFormat.getIntArgbInstance();
+        for (int y = stride / 2; y < height; y += stride) {
+            reader.getPixels(0, y, width, 1, format, row, 0, width);
+            for (int x = stride / 2; x < width; x += stride) {
+                int argb = row[x];
+                if ((argb >>> 24) < 128) continue;
+                out[n++] = argb & 0xFFFFFF;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
 
-        int step = Math.max(1, width * height / 2000);
-
-        Color bestColor = Color.web("#D9E878");
-        double maxScore = -1.0;
-
-        for (int i = 0; i < width * height; i += step) {
-            int x = i % width;
-            int y = i / width;
-            Color c = reader.getColor(x, y);
-
-            double sat = c.getSaturation();
-            double bri = c.getBrightness();
+    /**
+     * 并行 K-Means：分配步骤按块并行，每块累加各簇的分量和（long 整数求和，与合并顺序无关），
+     * 因此结果与线程数、调度无关。返回 k 个 0xRRGGBB 质心。
+     */
+    static int[] kMeans(int[] samples, int k) {
+        int[] centroids = initCentroids(samples, k);
+        int chunks = (samples.length + KMEANS_CHUNK - 1) / KMEANS_CHUNK;
+
+        for (int iter = 0; iter < KMEANS_MAX_ITERATIONS; iter++) {
+            final int[] current = centroids;
+            long[] sums = IntStream.range(0, chunks).parallel()
+                    .mapToObj(chunk -> {
+                        long[] acc = new long[k * 4];
+                        int end = Math.min(samples.length, (chunk + 1) * KMEANS_CHUNK);
+                        for (int i = chunk * KMEANS_CHUNK; i < end; i++) {
+                            int px = samples[i];
+                            int c = nearest(px, current, k) * 4;
+                            acc[c] += (px >> 16) & 0xFF;
+                            acc[c + 1] += (px >> 8) & 0xFF;
+                            acc[c + 2] += px & 0xFF;
+                            acc[c + 3]++;
+                        }
+                        return acc;
+                    })
+                    .reduce(new long[k * 4], (a, b) -> {
+                        long[] r = new long[k * 4];
+                        for (int i = 0; i < r.length; i++) r[i] = a[i] + b[i];
+                        return r;
+                    });
+
+            int[] next = new int[k];
+            boolean changed = false;
+            for (int c = 0; c < k; c++) {
+                long count = sums[c * 4 + 3];
+                // 空簇保留原质心
+                next[c] = count == 0 ? current[c]
+                        : (int) ((sums[c * 4] + count / 2) / count) << 16
+                        | (int) ((sums[c * 4 + 1] + count / 2) / count) << 8
+                        | (int) ((sums[c * 4 + 2] + count / 2) / count);
+                if (next[c] != current[c]) changed = true;
+            }
+            centroids = next;
+            if (!changed) break;
+        }
+        return centroids;
+    }
 
-            if (bri < 0.1 || bri > 0.95 || sat < 0.1) continue;
+    // k-means++ 初始化，随机数种子固定，同一张图总得到同样的结果
+    private static int[] initCentroids(int[] samples, int k) {
+        SplittableRandom random = new SplittableRandom(0x5EEDL);
+        int[] centroids = new int[k];
+        centroids[0] = samples[random.nextInt(samples.length)];
+        long[] dist = new long[samples.length];
+        Arrays.fill(dist, Long.MAX_VALUE);
+        for (int c = 1; c < k; c++) {
+            long total = 0;
+            for (int i = 0; i < samples.length; i++) {
+                long d = distance(samples[i], centroids[c - 1]);
+                if (d < dist[i]) dist[i] = d;
+                total += dist[i];
+            }
+            if (total == 0) {
+                centroids[c] = centroids[c - 1];
+                continue;
+            }
+            long target = (long) (random.nextDouble() * total);
+            int pick = samples.length - 1;
+            for (int i = 0; i < samples.length; i++) {
+                target -= dist[i];
+                if (target < 0) { pick = i; break; }
+            }
+            centroids[c] = samples[pick];
+        }
+        return centroids;
+    }
 
-            double score = sat * 3.0 + (1.0 - Math.abs(bri - 0.6));
-            if (score > maxScore) {
-                maxScore = score;
-                bestColor = c;
+    private static int nearest(int px, int[] centroids, int k) {
+        int best = 0;
+        long bestDist = Long.MAX_VALUE;
+        for (int c = 0; c < k; c++) {
+            long d = distance(px, centroids[c]);
+            if (d < bestDist) {
+                bestDist = d;
+                best = c;
             }
         }
-        return bestColor;
+        return best;
+    }
+
+    private static long distance(int a, int b) {
+        int dr = ((a >> 16) & 0xFF) - ((b >> 16) & 0xFF);
+        int dg = ((a >> 8) & 0xFF) - ((b >> 8) & 0xFF);
+        int db = (a & 0xFF) - (b & 0xFF);
+        return dr * dr + dg * dg + db * db;
+    }
+
+    private static double chroma(int rgb) {
+        int r = (rgb >> 16) & 0xFF, g = (rgb >> 8) & 0xFF, b = rgb & 0xFF;
+        return (Math.max(r, Math.max(g, b)) - Math.min(r, Math.min(g, b))) / 255.0;
     }
 
     /**
@@ -0,0 +1,107 @@
+package diskanalyzer;
+
+import javafx.scene.Scene;
+import javafx.scene.paint.Color;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 把配色方案编译成一张样式表（data URI），挂在 Scene 上。
+ * <p>
+ * 调色板变量写在 .root 上，图表颜色生成为 .chart-color-N 样式类；节点只切换样式类，
+ * 不再各自拼接内联 style 字符串。换主题时只替换这一张样式表，场景图不需要重建。
+ * 最近用过的几个配色方案的编译结果保留在内存中，JavaFX 也会按 URL 缓存解析结果，切回刚用过的主题几乎没有开销。
+ */
+public class ThemeStylesheet {
+
+    // 每张样式表是几 KB 的字符串，每换一次壁纸、风格或明暗就多一张，只保留最近几张
+    private static final int CAPACITY = 4;
+    private static final Map<ThemeEngine.Palette, String> COMPILED = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ThemeEngine.Palette, String> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+    // 当前挂在场景上的配色样式表；它可能已被挤出 COMPILED，换主题时按它移除
+    private static String applied;
+
+    public static String chartClass(int index) {
+        return "chart-color-" + index;
+    }
+
+    /** 把 scene 上旧的配色样式表换成 p 对应的那张，全局样式表保持不动 */
+    public static void apply(Scene scene, ThemeEngine.Palette p) {
+        if (scene == null || p == null) return;
+        String uri = uriOf(p);
+        List<String> sheets = scene.getStylesheets();
+        if (sheets.contains(uri)) return;
+        synchronized (ThemeStylesheet.class) {
+            if (applied != null) sheets.remove(applied);
+            applied = uri;
+        }
+        sheets.add(uri);
+    }
+
+    public static synchronized String uriOf(ThemeEngine.Palette p) {
+        String uri = COMPILED.get(p);
+        if (uri == null) {
+            uri = "data:text/css;base64," + Base64.getEncoder().encodeToString(compile(p).getBytes(StandardCharsets.UTF_8));
+            COMPILED.put(p, uri);
+        }
+        return uri;
+    }
+
+    private static String compile(ThemeEngine.Palette p) {
+        StringBuilder css = new StringBuilder(2048);
+        css.append(".root {")
+                .append(" -fx-primary: ").append(hex(p.primary)).append(';')
+                .append(" -fx-on-primary: ").append(hex(p.onPrimary)).append(';')
+                .append(" -fx-primary-container: ").append(hex(p.primaryContainer)).append(';')
+                .append(" -fx-on-primary-container: ").append(hex(p.onPrimaryContainer)).append(';')
+                .append(" -fx-secondary: ").append(hex(p.secondary)).append(';')
+                .append(" -fx-on-secondary: ").append(hex(p.onSecondary)).append(';')
+                .append(" -fx-secondary-container: ").append(hex(p.secondaryContainer)).append(';')
+                .append(" -fx-tertiary: ").append(hex(p.tertiary)).append(';')
+                .append(" -fx-on-tertiary: ").append(hex(p.onTertiary)).append(';')
+                .append(" -fx-bg-base: ").append(hex(p.background)).append(';')
+                .append(" -fx-on-background: ").append(hex(p.onBackground)).append(';')
+                .append(" -fx-bg-surface: ").append(rgba(p.surface, 0.85)).append(';')
+                .append(" -fx-bg-surface-solid: ").append(hex(p.surface)).append(';')
+                .append(" -fx-on-surface: ").append(hex(p.onSurface)).append(';')
+                .append(" -fx-surface-variant: ").append(hex(p.surfaceVariant)).append(';')
+                .append(" -fx-on-surface-variant: ").append(hex(p.onSurfaceVariant)).append(';')
+                .append(" -fx-outline: ").append(hex(p.outline)).append(';')
+                .append(" -fx-outline-variant: ").append(hex(p.outlineVariant)).append(';')
+                .append(" -fx-selection-bg: ").append(rgba(p.primary, 0.15)).append(';')
+                .append(" }\n");
+
+        // 弹出的对话框：表面更不透明，文字用调色板给出的文字色
+        css.append(".glass-dialog, .details-window {")
+                .append(" -fx-bg-surface: ").append(rgba(p.surface, 0.95)).append(';')
+                .append(" -fx-text-primary: ").append(hex(p.textPrimary)).append(';')
+                .append(" -fx-text-secondary: ").append(hex(p.textSecondary)).append(';')
+                .append(" -fx-color-border: rgba(255,255,255,0.1);")
+                .append(" }\n");
+
+        // 饼图扇区和列表圆点共用同一组颜色类
+        for (int i = 0; i < p.chartColors.size(); i++) {
+            String color = p.chartColors.get(i);
+            css.append('.').append(chartClass(i))
+                    .append(" { -fx-pie-color: ").append(color).append("; -fx-fill: ").append(color).append("; }\n");
+        }
+        return css.toString();
+    }
+
+    private static String hex(Color c) {
+        return ThemeEngine.toHex(c);
+    }
+
+    private static String rgba(Color c, double alpha) {
+        return String.format(Locale.ROOT, "rgba(%d, %d, %d, %.2f)", (int)(c.getRed()*255), (int)(c.getGreen()*255), (int)(c.getBlue()*255), alpha);
+    }
+}
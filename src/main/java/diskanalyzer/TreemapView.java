@@ -0,0 +1,440 @@
+package diskanalyzer;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+import javafx.util.Duration;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * 基于单个 Canvas 的嵌套矩形树图 (Squarified Treemap)。
+ * <p>
+ * 布局所需的数据在 FX 线程上复制，再交给后台线程计算，结果按目录缓存最近几份；矩形以扁平数组保存，绘制时不产生任何场景图节点。
+ * 鼠标命中通过均匀网格空间索引查找，几万个矩形时悬停和点击依然是常数级开销。
+ */
+public class TreemapView extends Region {
+
+    private static final double MIN_SIDE = 4;       // 小于这个像素宽/高的矩形不再继续细分
+    private static final double HEADER = 16;        // 目录标题栏高度
+    private static final double PAD = 2;            // 嵌套层之间的内边距
+    private static final int MAX_DEPTH = 12;
+    private static final int GRID_CELL = 32;        // 空间索引网格尺寸（像素）
+
+    private static final ExecutorService LAYOUT_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "treemap-layout");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Canvas baseCanvas = new Canvas();
+    private final Canvas overlayCanvas = new Canvas();
+
+    // 最近显示过的几个目录的布局，返回上一级时不必重算。布局引用的节点经 parent 可达整棵树，
+    // 每个条目都会让它所在的树常驻内存，所以只保留少量条目
+    private static final int CACHE_CAPACITY = 8;
+    private final Map<FileNode, Layout> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FileNode, Layout> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+
+    private FileNode root;
+    private List<FileNode> items = List.of();
+    private Color[] itemColors = new Color[0];
+    private Layout layout;
+    private int hoverIndex = -1;
+    private long requestId = 0;
+
+    private Consumer<HoverEvent> onHover;
+    private Consumer<FileNode> onOpen;
+    private Consumer<HoverEvent> onMenu;
+
+    private final PauseTransition resizeDebounce = new PauseTransition(Duration.millis(120));
+
+    /** 悬停 / 右键事件：node 为 null 表示移出 */
+    public record HoverEvent(FileNode node, double screenX, double screenY) { }
+
+    /** 一次布局的结果：扁平数组 + 网格索引 */
+    private static final class Layout {
+        final double width, height;
+        final long rootSize;
+        final long rootEntries;
+        int count;
+        float[] x = new float[256], y = new float[256], w = new float[256], h = new float[256];
+        byte[] depth = new byte[256];
+        int[] top = new int[256];           // 所属顶层条目的下标，用于取色
+        FileNode[] nodes = new FileNode[256];
+
+        int cols, rows;
+        int[] cellStart;
+        int[] cellItems;
+
+        Layout(double width, double height, long rootSize, long rootEntries) {
+            this.width = width;
+            this.height = height;
+            this.rootSize = rootSize;
+            this.rootEntries = rootEntries;
+        }
+
+        int add(FileNode node, double rx, double ry, double rw, double rh, int d, int topIndex) {
+            if (count == x.length) {
+                int n = count * 2;
+                x = Arrays.copyOf(x, n); y = Arrays.copyOf(y, n);
+                w = Arrays.copyOf(w, n); h = Arrays.copyOf(h, n);
+                depth = Arrays.copyOf(depth, n); top = Arrays.copyOf(top, n);
+                nodes = Arrays.copyOf(nodes, n);
+            }
+            x[count] = (float) rx; y[count] = (float) ry;
+            w[count] = (float) rw; h[count] = (float) rh;
+            depth[count] = (byte) d; top[count] = topIndex;
+            nodes[count] = node;
+            return count++;
+        }
+
+        // 两遍构建 CSR 形式的网格索引：先数每格有多少矩形，再填充
+        void buildIndex() {
+            cols = Math.max(1, (int) Math.ceil(width / GRID_CELL));
+            rows = Math.max(1, (int) Math.ceil(height / GRID_CELL));
+            cellStart = new int[cols * rows + 1];
+            for (int i = 0; i < count; i++) {
+                forEachCell(i, c -> cellStart[c + 1]++);
+            }
+            for (int c = 0; c < cols * rows; c++) cellStart[c + 1] += cellStart[c];
+            cellItems = new int[cellStart[cols * rows]];
+            int[] fill = Arrays.copyOf(cellStart, cols * rows);
+            for (int i = 0; i < count; i++) {
+                final int idx = i;
+                forEachCell(i, c -> cellItems[fill[c]++] = idx);
+            }
+        }
+
+        private void forEachCell(int i, java.util.function.IntConsumer action) {
+            int c0 = clamp((int) (x[i] / GRID_CELL), cols), c1 = clamp((int) ((x[i] + w[i]) / GRID_CELL), cols);
+            int r0 = clamp((int) (y[i] / GRID_CELL), rows), r1 = clamp((int) ((y[i] + h[i]) / GRID_CELL), rows);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) action.accept(r * cols + c);
+            }
+        }
+
+        private static int clamp(int v, int n) {
+            return Math.max(0, Math.min(n - 1, v));
+        }
+
+        // 命中测试：只检查鼠标所在网格内的矩形，取最深的一个
+        int hit(double px, double py) {
+            if (cellStart == null || px < 0 || py < 0 || px >= width || py >= height) return -1;
+            int cell = clamp((int) (py / GRID_CELL), rows) * cols + clamp((int) (px / GRID_CELL), cols);
+            int best = -1;
+            for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                int i = cellItems[k];
+                if (px >= x[i] && px < x[i] + w[i] && py >= y[i] && py < y[i] + h[i]
+                        && (best < 0 || depth[i] > depth[best])) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+    }
+
+    public TreemapView() {
+        getChildren().addAll(baseCanvas, overlayCanvas);
+        overlayCanvas.setMouseTransparent(true);
+
+        resizeDebounce.setOnFinished(e -> requestLayoutCompute());
+        widthProperty().addListener((obs, o, n) -> resizeDebounce.playFromStart());
+        heightProperty().addListener((obs, o, n) -> resizeDebounce.playFromStart());
+
+        setOnMouseMoved(e -> {
+            int hit = layout == null ? -1 : layout.hit(e.getX(), e.getY());
+            if (hit != hoverIndex) {
+                hoverIndex = hit;
+                drawOverlay();
+            }
+            if (onHover != null) onHover.accept(new HoverEvent(hit < 0 ? null : layout.nodes[hit], e.getScreenX(), e.getScreenY()));
+        });
+        setOnMouseExited(e -> {
+            hoverIndex = -1;
+            drawOverlay();
+            if (onHover != null) onHover.accept(new HoverEvent(null, e.getScreenX(), e.getScreenY()));
+        });
+        setOnMouseClicked(e -> {
+            if (e.getButton() != MouseButton.PRIMARY || layout == null || onOpen == null) return;
+            int hit = layout.hit(e.getX(), e.getY());
+            if (hit >= 0) onOpen.accept(layout.nodes[hit]);
+        });
+        setOnContextMenuRequested(e -> {
+            if (layout == null || onMenu == null) return;
+            int hit = layout.hit(e.getX(), e.getY());
+            if (hit >= 0) onMenu.accept(new HoverEvent(layout.nodes[hit], e.getScreenX(), e.getScreenY()));
+        });
+    }
+
+    public void setOnHover(Consumer<HoverEvent> onHover) { this.onHover = onHover; }
+    public void setOnOpen(Consumer<FileNode> onOpen) { this.onOpen = onOpen; }
+    public void setOnMenu(Consumer<HoverEvent> onMenu) { this.onMenu = onMenu; }
+
+    /**
+     * 显示一组条目。root 用作缓存键：目录视图传目录本身，聚合视图传一个临时节点。
+     */
+    public void show(FileNode root, List<FileNode> items, Color[] itemColors) {
+        this.root = root;
+        this.items = List.copyOf(items);
+        this.itemColors = itemColors;
+        requestLayoutCompute();
+    }
+
+    /** 高亮指定条目（来自列表悬停），-1 取消 */
+    public void highlightItem(int itemIndex) {
+        int idx = -1;
+        if (layout != null && itemIndex >= 0) {
+            for (int i = 0; i < layout.count; i++) {
+                if (layout.depth[i] == 0 && layout.top[i] == itemIndex) { idx = i; break; }
+            }
+        }
+        if (idx != hoverIndex) {
+            hoverIndex = idx;
+            drawOverlay();
+        }
+    }
+
+    @Override
+    protected void layoutChildren() {
+        baseCanvas.setWidth(getWidth());
+        baseCanvas.setHeight(getHeight());
+        overlayCanvas.setWidth(getWidth());
+        overlayCanvas.setHeight(getHeight());
+    }
+
+    private void requestLayoutCompute() {
+        double width = getWidth(), height = getHeight();
+        if (root == null || width <= 0 || height <= 0) return;
+
+        Layout cached = cache.get(root);
+        if (cached != null && cached.width == width && cached.height == height
+                && cached.rootSize == root.size && cached.rootEntries == root.entryCount) {
+            apply(cached);
+            return;
+        }
+
+        long id = ++requestId;
+        FileNode r = root;
+        long rootSize = root.size, rootEntries = root.entryCount;
+        Item[] snapshot = snapshot(items, width, height);
+        LAYOUT_EXECUTOR.execute(() -> {
+            Layout computed;
+            try {
+                computed = computeLayout(snapshot, rootSize, rootEntries, width, height);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+                return;
+            }
+            Platform.runLater(() -> {
+                cache.put(r, computed);
+                if (id == requestId) apply(computed);
+            });
+        });
+    }
+
+    private void apply(Layout l) {
+        layout = l;
+        hoverIndex = -1;
+        drawBase();
+        drawOverlay();
+    }
+
+    // --- 布局输入 (FX 线程) ---
+
+    /** 布局用到的节点数据，在 FX 线程上复制；后台线程不读正在被删除、刷新修改的树 */
+    private static final class Item {
+        final FileNode node;
+        final long size;
+        final Item[] children;     // 按大小降序，只含可能画得出来的子节点；文件或不再细分时为 null
+        final long childTotal;     // 全部子节点（含被略去的）的大小之和，保证比例尺与完整布局一致
+
+        Item(FileNode node, Item[] children, long childTotal) {
+            this.node = node;
+            this.size = node.size;
+            this.children = children;
+            this.childTotal = childTotal;
+        }
+    }
+
+    private static Item[] snapshot(List<FileNode> items, double width, double height) {
+        long total = 0;
+        for (FileNode n : items) total += Math.max(0, n.size);
+        // 面积小于 MIN_SIDE² 的矩形必有一边小于 MIN_SIDE，不会被画出或细分；嵌套层的比例尺只会更小，再留 4 倍余量
+        double minSize = total * MIN_SIDE * MIN_SIDE / (width * height) / 4;
+        Item[] result = new Item[items.size()];
+        for (int i = 0; i < result.length; i++) result[i] = copy(items.get(i), minSize, 1);
+        return result;
+    }
+
+    private static Item copy(FileNode node, double minSize, int depth) {
+        if (!node.isDir || node.children.isEmpty() || depth > MAX_DEPTH) return new Item(node, null, 0);
+        List<Item> kept = new ArrayList<>();
+        long childTotal = 0;
+        for (FileNode child : node.children) {
+            childTotal += Math.max(0, child.size);
+            if (child.size >= minSize) kept.add(copy(child, minSize, depth + 1));
+        }
+        kept.sort((a, b) -> Long.compare(b.size, a.size));
+        return new Item(node, kept.toArray(new Item[0]), childTotal);
+    }
+
+    // --- 布局 (后台线程) ---
+
+    private static Layout computeLayout(Item[] items, long rootSize, long rootEntries, double width, double height) {
+        Layout l = new Layout(width, height, rootSize, rootEntries);
+        Integer[] order = new Integer[items.length];
+        long total = 0;
+        for (int i = 0; i < items.length; i++) {
+            order[i] = i;
+            total += Math.max(0, items[i].size);
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(items[b].size, items[a].size));
+
+        Item[] ordered = new Item[items.length];
+        for (int i = 0; i < order.length; i++) ordered[i] = items[order[i]];
+        squarify(ordered, total, 0, 0, width, height, (item, k, rx, ry, rw, rh) -> {
+            int topIndex = order[k];
+            l.add(item.node, rx, ry, rw, rh, 0, topIndex);
+            nest(l, item, rx, ry, rw, rh, 1, topIndex);
+        });
+        l.buildIndex();
+        return l;
+    }
+
+    private static void nest(Layout l, Item item, double x, double y, double w, double h, int depth, int topIndex) {
+        if (item.children == null || item.children.length == 0 || depth > MAX_DEPTH) return;
+        double ix = x + PAD, iy = y + HEADER, iw = w - 2 * PAD, ih = h - HEADER - PAD;
+        if (iw < MIN_SIDE || ih < MIN_SIDE) return;
+
+        squarify(item.children, item.childTotal, ix, iy, iw, ih, (child, k, rx, ry, rw, rh) -> {
+            if (rw < MIN_SIDE || rh < MIN_SIDE) return;
+            l.add(child.node, rx, ry, rw, rh, depth, topIndex);
+            nest(l, child, rx, ry, rw, rh, depth + 1, topIndex);
+        });
+    }
+
+    private interface RectSink {
+        void accept(Item item, int index, double x, double y, double w, double h);
+    }
+
+    /**
+     * Squarified 布局 (Bruls, Huizing, van Wijk)：按大小降序逐个加入当前行，
+     * 只要最差长宽比不变坏就继续，否则把当前行固定在短边上，剩余区域继续排。
+     * total 可以大于 nodes 之和（略去的小条目），剩余面积留空。
+     */
+    private static void squarify(Item[] nodes, double total, double x, double y, double w, double h, RectSink sink) {
+        if (total <= 0 || w <= 0 || h <= 0) return;
+        double scale = w * h / total;
+
+        int start = 0;
+        while (start < nodes.length) {
+            double side = Math.min(w, h);
+            int end = start;
+            double rowSum = 0;
+            double worst = Double.MAX_VALUE;
+            while (end < nodes.length) {
+                double a = Math.max(0, nodes[end].size) * scale;
+                double candidate = worstRatio(nodes, start, end + 1, rowSum + a, scale, side);
+                if (end > start && candidate > worst) break;
+                worst = candidate;
+                rowSum += a;
+                end++;
+            }
+            if (rowSum <= 0) break;
+
+            // 固定这一行
+            double thickness = rowSum / side;
+            double offset = 0;
+            for (int i = start; i < end; i++) {
+                double len = Math.max(0, nodes[i].size) * scale / thickness;
+                if (w >= h) sink.accept(nodes[i], i, x, y + offset, thickness, len);
+                else sink.accept(nodes[i], i, x + offset, y, len, thickness);
+                offset += len;
+            }
+            if (w >= h) { x += thickness; w -= thickness; }
+            else { y += thickness; h -= thickness; }
+            start = end;
+        }
+    }
+
+    private static double worstRatio(Item[] nodes, int from, int to, double sum, double scale, double side) {
+        double max = 0, min = Double.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            double a = Math.max(0, nodes[i].size) * scale;
+            max = Math.max(max, a);
+            min = Math.min(min, a);
+        }
+        if (min <= 0) return Double.MAX_VALUE;
+        double s2 = side * side, sum2 = sum * sum;
+        return Math.max(s2 * max / sum2, sum2 / (s2 * min));
+    }
+
+    // --- 绘制 (FX 线程) ---
+
+    private void drawBase() {
+        GraphicsContext gc = baseCanvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, baseCanvas.getWidth(), baseCanvas.getHeight());
+        if (layout == null) return;
+
+        gc.setFont(Font.font(11));
+        gc.setTextBaseline(VPos.TOP);
+        gc.setTextAlign(TextAlignment.LEFT);
+        gc.setLineWidth(1);
+
+        // 同一顶层条目按深度逐级变暗，预先算好，避免在循环中创建 Color
+        Color[][] shades = new Color[itemColors.length][];
+        for (int i = 0; i < layout.count; i++) {
+            int top = layout.top[i];
+            int d = layout.depth[i];
+            Color base = top < itemColors.length && itemColors[top] != null ? itemColors[top] : Color.web("#D9E878");
+            if (top < shades.length) {
+                if (shades[top] == null) {
+                    shades[top] = new Color[MAX_DEPTH + 2];
+                    for (int k = 0; k < shades[top].length; k++) shades[top][k] = base.deriveColor(0, 1, Math.pow(0.82, k), 1);
+                }
+                gc.setFill(shades[top][Math.min(d, shades[top].length - 1)]);
+            } else {
+                gc.setFill(base);
+            }
+            double x = layout.x[i], y = layout.y[i], w = layout.w[i], h = layout.h[i];
+            gc.fillRect(x, y, w, h);
+            gc.setStroke(Color.rgb(0, 0, 0, 0.45));
+            gc.strokeRect(x + 0.5, y + 0.5, w - 1, h - 1);
+
+            if (w > 48 && h > HEADER) {
+                gc.setFill(Color.rgb(0, 0, 0, 0.75));
+                String text = layout.nodes[i].name;
+                int maxChars = (int) ((w - 8) / 7);
+                if (text.length() > maxChars) text = text.substring(0, Math.max(1, maxChars - 1)) + "…";
+                gc.fillText(text, x + 4, y + 2);
+            }
+        }
+    }
+
+    private void drawOverlay() {
+        GraphicsContext gc = overlayCanvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, overlayCanvas.getWidth(), overlayCanvas.getHeight());
+        if (layout == null || hoverIndex < 0 || hoverIndex >= layout.count) return;
+        int i = hoverIndex;
+        gc.setFill(Color.rgb(255, 255, 255, 0.18));
+        gc.fillRect(layout.x[i], layout.y[i], layout.w[i], layout.h[i]);
+        gc.setStroke(Color.WHITE);
+        gc.setLineWidth(2);
+        gc.strokeRect(layout.x[i] + 1, layout.y[i] + 1, layout.w[i] - 2, layout.h[i] - 2);
+    }
+}
@@ -0,0 +1,203 @@
+package diskanalyzer;
+
+import javafx.application.Platform;
+import javafx.css.PseudoClass;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * 卷概览：列出所有挂载的文件系统及其总量 / 已用 / 可用空间，不遍历任何目录。
+ * <p>
+ * 挂载表本身在 FX 线程直接读取（不触碰磁盘），每个卷的容量查询各自在后台进行，
+ * 一个挂起的网络盘不会拖住其他行。首页以列表形式展示（点击即扫描该卷），
+ * 扫描期间以紧凑的横条形式留在顶部，并高亮正在扫描的卷。
+ */
+public class VolumeOverview extends VBox {
+
+    // 伪文件系统和只读镜像：既没有可分析的用户数据，又会让列表变得很长
+    private static final Set<String> PSEUDO_TYPES = Set.of(
+            "proc", "sysfs", "devpts", "devtmpfs", "tmpfs", "cgroup", "cgroup2", "securityfs", "pstore",
+            "bpf", "debugfs", "tracefs", "mqueue", "hugetlbfs", "configfs", "fusectl", "autofs",
+            "binfmt_misc", "rpc_pipefs", "nsfs", "squashfs", "efivarfs", "selinuxfs", "ramfs", "devfs");
+
+    private static final PseudoClass CURRENT_PSEUDO_CLASS = PseudoClass.getPseudoClass("current");
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "volume-stat");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** 一个挂载点；容量字段由后台查询填充。Windows 上 store 为 null、type 为空，随容量一起在后台取得 */
+    public record Volume(Path mount, String name, String type, FileStore store) { }
+
+    /** 后台查询的结果；label / type 不为 null 时替换挂载表中的名称和类型 */
+    private record Space(long total, long used, long free, String label, String type) { }
+
+    private final boolean compact;
+    private final Pane rowsBox;
+
+    /**
+     * @param compact 紧凑模式（扫描时的顶部横条）
+     * @param current 需要高亮的路径（正在扫描的目录），可为 null
+     * @param onPick  点击某个卷时的回调，为 null 时不可点击
+     */
+    public VolumeOverview(boolean compact, Path current, Consumer<Path> onPick) {
+        this.compact = compact;
+        getStyleClass().add(compact ? "volume-bar" : "volume-overview");
+
+        if (compact) {
+            HBox chips = new HBox(10);
+            chips.setAlignment(Pos.CENTER_LEFT);
+            ScrollPane scroll = new ScrollPane(chips);
+            scroll.setFitToHeight(true);
+            scroll.setVbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
+            scroll.setHbarPolicy(ScrollPane.ScrollBarPolicy.AS_NEEDED);
+            scroll.getStyleClass().add("edge-to-edge");
+            scroll.setStyle("-fx-background-color: transparent; -fx-background: transparent;");
+            rowsBox = chips;
+            getChildren().add(scroll);
+        } else {
+            VBox rows = new VBox(6);
+            rowsBox = rows;
+            getChildren().add(rows);
+        }
+
+        List<Volume> volumes = list();
+        Volume highlight = current != null ? containing(volumes, current) : null;
+        for (Volume v : volumes) addVolume(v, v == highlight, onPick);
+    }
+
+    /**
+     * 读取挂载表。Windows 上只枚举盘符，卷标和类型要访问驱动器，留给后台的容量查询；
+     * 其他系统从 FileStore 的描述中取出挂载点。这里不查询容量，不会因为网络盘或空光驱而阻塞。
+     */
+    public static List<Volume> list() {
+        Map<Path, Volume> byMount = new TreeMap<>();
+        if (File.separatorChar == '\\') {
+            for (Path root : FileSystems.getDefault().getRootDirectories()) {
+                byMount.put(root, new Volume(root, root.toString(), "", null));
+            }
+        } else {
+            for (FileStore store : FileSystems.getDefault().getFileStores()) {
+                if (PSEUDO_TYPES.contains(store.type())) continue;
+                // UnixFileStore.toString() 形如 "/mnt/data (/dev/sdb1)"
+                String desc = store.toString();
+                int paren = desc.lastIndexOf(" (");
+                if (paren <= 0) continue;
+                Path mount = Path.of(desc.substring(0, paren));
+                byMount.putIfAbsent(mount, new Volume(mount, mount.toString(), store.type(), store));
+            }
+        }
+        return new ArrayList<>(byMount.values());
+    }
+
+    static Volume containing(List<Volume> volumes, Path path) {
+        Path abs = path.toAbsolutePath();
+        Volume best = null;
+        for (Volume v : volumes) {
+            if (abs.startsWith(v.mount()) && (best == null || v.mount().getNameCount() > best.mount().getNameCount())) best = v;
+        }
+        return best;
+    }
+
+    private void addVolume(Volume v, boolean isCurrent, Consumer<Path> onPick) {
+        Label name = new Label(v.name());
+        name.getStyleClass().add("volume-name");
+        Label detail = new Label("…");
+        detail.getStyleClass().add("volume-detail");
+        ProgressBar bar = new ProgressBar(0);
+        bar.getStyleClass().add("volume-usage");
+
+        Label type = null;
+        Region item;
+        if (compact) {
+            bar.setPrefWidth(120);
+            bar.setPrefHeight(4);
+            VBox chip = new VBox(3, name, bar, detail);
+            chip.setPadding(new Insets(6, 10, 6, 10));
+            item = chip;
+        } else {
+            type = new Label(v.type());
+            type.getStyleClass().add("volume-detail");
+            VBox title = new VBox(2, name, type);
+            title.setMinWidth(140);
+            bar.setPrefWidth(160);
+            bar.setPrefHeight(6);
+            Region spacer = new Region();
+            HBox.setHgrow(spacer, Priority.ALWAYS);
+            HBox row = new HBox(12, title, bar, spacer, detail);
+            row.setAlignment(Pos.CENTER_LEFT);
+            row.setPadding(new Insets(8, 12, 8, 12));
+            item = row;
+        }
+        item.getStyleClass().add(compact ? "volume-chip" : "volume-row");
+        item.pseudoClassStateChanged(CURRENT_PSEUDO_CLASS, isCurrent);
+        Tooltip tooltip = new Tooltip(v.type().isEmpty() ? v.mount().toString() : v.mount() + "  (" + v.type() + ")");
+        Tooltip.install(item, tooltip);
+        Label typeLabel = type;
+        if (onPick != null) item.setOnMouseClicked(e -> onPick.accept(v.mount()));
+        rowsBox.getChildren().add(item);
+
+        CompletableFuture.supplyAsync(() -> space(v), EXECUTOR).whenComplete((space, err) -> Platform.runLater(() -> {
+            if (err != null || space == null || space.total() <= 0) {
+                // 取不到容量或容量为 0（绑定挂载的单个文件、已断开的网络盘、空光驱）：不值得扫描
+                rowsBox.getChildren().remove(item);
+                return;
+            }
+            if (space.label() != null) name.setText(space.label());
+            if (space.type() != null) {
+                if (typeLabel != null) typeLabel.setText(space.type());
+                tooltip.setText(v.mount() + "  (" + space.type() + ")");
+            }
+            double usedFraction = (double) space.used() / space.total();
+            bar.setProgress(usedFraction);
+            String percent = String.format("%.0f%%", usedFraction * 100);
+            detail.setText(compact
+                    ? percent + " · 可用 " + FileNode.formatSize(space.free())
+                    : "已用 " + FileNode.formatSize(space.used()) + " / 共 " + FileNode.formatSize(space.total())
+                        + " · 可用 " + FileNode.formatSize(space.free()) + " · " + percent);
+        }));
+    }
+
+    // 在后台线程上运行：Windows 的盘符到这里才取 FileStore，顺带取得卷标和类型
+    private static Space space(Volume v) {
+        if (!Files.isDirectory(v.mount())) return null;
+        try {
+            FileStore store = v.store();
+            String label = null, type = null;
+            if (store == null) {
+                store = Files.getFileStore(v.mount());
+                if (!store.name().isEmpty()) label = v.mount() + " " + store.name();
+                type = store.type();
+            }
+            long total = store.getTotalSpace();
+            long free = store.getUsableSpace();
+            long used = total - store.getUnallocatedSpace();
+            return new Space(total, used, free, label, type);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -4,6 +4,8 @@ module diskanalyzer.diskanalyzer {
     requires javafx.fxml;
     requires javafx.graphics; // DirectoryChooser 实际上依赖 graphics 模块
     requires java.desktop;
+    requires java.management; // 扫描计数器的 JMX MXBean
+    requires jdk.jfr;         // 扫描的 JFR 事件
 
     // 开放你的包给 JavaFX 调用（必须！）
     // 这里的 'com.example' 必须改成你 MainApp.java 所在的实际包名